@@ -0,0 +1,122 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of FaceUri parsing, string conversion, equality, and hash lookups
+ * for every authority form
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FaceUriBenchmark {
+  @Param({"ipv4", "ipv6", "v4mapped", "ether", "hostname", "empty"})
+  public String form;
+
+  static final Map<String, String> URIS = new HashMap<String, String>();
+  static {
+    URIS.put("ipv4", "udp4://192.0.2.1:6363");
+    URIS.put("ipv6", "udp6://[2001:db8:3f9:0:3025:ccc5:eeeb:86d3]:6363");
+    URIS.put("v4mapped", "wsclient://[::ffff:76.90.11.239]:56366");
+    URIS.put("ether", "ether://[08:00:27:01:dd:01]");
+    URIS.put("hostname", "tcp://router.example.net:6363/path");
+    URIS.put("empty", "unix:///var/run/nfd.sock");
+  }
+
+  static final int TABLE_SIZE = 1024;
+
+  private String m_text;
+  private FaceUri m_uri;
+  private FaceUri m_equalUri;
+  private FaceUri m_target;
+  private Map<FaceUri, Integer> m_table;
+
+  @Setup
+  public void
+  setup() {
+    m_text = URIS.get(form);
+    m_uri = new FaceUri(m_text);
+    m_equalUri = new FaceUri(new String(m_text));
+    m_target = new FaceUri();
+
+    m_table = new HashMap<FaceUri, Integer>();
+    for (int i = 0; i < TABLE_SIZE; ++i) {
+      m_table.put(new FaceUri("udp4://10.0." + (i / 256) + "." + (i % 256) + ":6363"), i);
+    }
+    m_table.put(new FaceUri(m_text), -1);
+  }
+
+  @Benchmark
+  public boolean
+  parse() {
+    return m_target.parse(m_text);
+  }
+
+  @Benchmark
+  public FaceUri
+  construct() {
+    return new FaceUri(m_text);
+  }
+
+  @Benchmark
+  public String
+  convertToString() {
+    return m_uri.toString();
+  }
+
+  @Benchmark
+  public boolean
+  equalsDistinctInstance() {
+    return m_uri.equals(m_equalUri);
+  }
+
+  @Benchmark
+  public Integer
+  hashLookup() {
+    return m_table.get(m_equalUri);
+  }
+
+  @Benchmark
+  public Integer
+  parseAndHashLookup() {
+    return m_table.get(new FaceUri(m_text));
+  }
+}
@@ -0,0 +1,87 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of FaceUri canonization for literal addresses and for host names
+ * resolved by a deterministic stub resolver (with and without resolver cache)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FaceUriCanonizeBenchmark {
+  @Param({
+    "udp4://192.0.2.1:6363",
+    "udp4://192.0.2.1",
+    "udp://192.0.2.1:6363",
+    "udp6://[2001:db8::1]:6363",
+    "udp6://[2001:db8:0::01]:6363",
+    "udp://router.example.net",
+    "udp6://router.example.net:6363",
+  })
+  public String uri;
+
+  @Param({"cached", "uncached"})
+  public String cache;
+
+  private FaceUri m_uri;
+  private FaceUri.CanonizeProvider m_provider;
+
+  @Setup
+  public void
+  setup() {
+    int cacheSize = cache.equals("cached") ? ResolverCache.DEFAULT_MAX_SIZE : 0;
+    m_provider = new FaceUri.UdpCanonizeProvider(
+      new ResolverCache(new StubHostResolver(), cacheSize, 1, 1, 0, TimeUnit.HOURS, MoreExecutors.directExecutor()));
+    m_uri = new FaceUri(uri);
+  }
+
+  @Benchmark
+  public boolean
+  isCanonical() {
+    return m_provider.isCanonical(m_uri);
+  }
+
+  @Benchmark
+  public FaceUri
+  canonize() throws FaceUri.CanonizeError {
+    return m_provider.canonize(m_uri);
+  }
+}
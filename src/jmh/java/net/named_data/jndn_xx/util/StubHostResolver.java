@@ -0,0 +1,66 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.common.net.InetAddresses;
+
+/**
+ * Deterministic in-memory HostResolver, so canonization benchmarks do not depend on network
+ */
+public class StubHostResolver implements HostResolver {
+  public StubHostResolver()
+  {
+    add("router.example.net", "192.0.2.1", "2001:db8::1");
+    add("hub.example.net", "198.51.100.7");
+    add("v6only.example.net", "2001:db8::7");
+  }
+
+  public void
+  add(String host, String... addresses) {
+    InetAddress[] resolved = new InetAddress[addresses.length];
+    for (int i = 0; i < addresses.length; ++i) {
+      resolved[i] = InetAddresses.forString(addresses[i]);
+    }
+    m_hosts.put(host, resolved);
+  }
+
+  @Override
+  public InetAddress[]
+  resolve(String host) throws UnknownHostException {
+    if (InetAddresses.isInetAddress(host)) {
+      return new InetAddress[]{ InetAddresses.forString(host) };
+    }
+
+    InetAddress[] addresses = m_hosts.get(host);
+    if (addresses == null) {
+      throw new UnknownHostException(host);
+    }
+    return addresses.clone();
+  }
+
+  private final Map<String, InetAddress[]> m_hosts = new HashMap<String, InetAddress[]>();
+}
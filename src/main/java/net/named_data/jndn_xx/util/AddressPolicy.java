@@ -0,0 +1,385 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+
+/**
+ * Compiled allow/deny policy over IPv4 and IPv6 CIDR prefixes
+ * <p>
+ * The longest prefix that contains an address decides whether the address is allowed; when
+ * the same prefix is both allowed and denied, it is denied.  Addresses not covered by any
+ * prefix get the default decision.
+ * <p>
+ * Prefixes are compiled into one path-compressed binary (Patricia) trie per address family,
+ * stored in flat arrays with at most two nodes per prefix.  A lookup visits at most one node
+ * per address bit and does not allocate.  The policy is immutable, so it can be shared by
+ * any number of threads and replaced atomically (see IpHostCanonizeProvider.setAddressPolicy).
+ */
+public final class AddressPolicy {
+  /**
+   * Builder of AddressPolicy
+   */
+  public static class Builder {
+    /**
+     * Allow addresses in prefix
+     * @param cidr IPv4 or IPv6 prefix, e.g., 192.0.2.0/24 or 2001:db8::/32; an address
+     *             without length is a host prefix
+     * @throws IllegalArgumentException if cidr is not a valid prefix
+     */
+    public Builder
+    allow(String cidr) {
+      add(cidr, ALLOW);
+      return this;
+    }
+
+    /**
+     * Deny addresses in prefix
+     * @see Builder#allow(String)
+     */
+    public Builder
+    deny(String cidr) {
+      add(cidr, DENY);
+      return this;
+    }
+
+    /**
+     * Set decision for addresses that are not covered by any prefix (allowed by default)
+     */
+    public Builder
+    setDefaultAllowed(boolean isAllowed) {
+      m_isDefaultAllowed = isAllowed;
+      return this;
+    }
+
+    public AddressPolicy
+    build() {
+      return new AddressPolicy(new Trie(m_ipv4, 32), new Trie(m_ipv6, 128), m_isDefaultAllowed);
+    }
+
+    private void
+    add(String cidr, byte action) {
+      int slash = cidr.indexOf('/');
+      int end = slash >= 0 ? slash : cidr.length();
+
+      int length;
+      boolean isV6;
+      long hi = 0;
+      long lo = 0;
+      long v4 = InetLiterals.parseIpv4(cidr, 0, end);
+      if (v4 >= 0) {
+        isV6 = false;
+        hi = v4 << 32;
+        length = 32;
+      }
+      else {
+        long[] address = new long[2];
+        if (!InetLiterals.parseIpv6(cidr, 0, end, address)) {
+          throw new IllegalArgumentException("Invalid address in prefix: " + cidr);
+        }
+        isV6 = true;
+        hi = address[0];
+        lo = address[1];
+        length = 128;
+      }
+
+      if (slash >= 0) {
+        int maxLength = length;
+        length = parseLength(cidr, slash + 1);
+        if (length < 0 || length > maxLength) {
+          throw new IllegalArgumentException("Invalid prefix length: " + cidr);
+        }
+      }
+
+      // host bits beyond the prefix length are ignored
+      hi &= getMask(length);
+      lo &= getMask(length - 64);
+      if (isV6) {
+        m_ipv6 = insert(m_ipv6, hi, lo, length, action);
+      }
+      else {
+        m_ipv4 = insert(m_ipv4, hi, lo, length, action);
+      }
+    }
+
+    private static int
+    parseLength(String cidr, int start) {
+      if (start == cidr.length() || cidr.length() - start > 3) {
+        return -1;
+      }
+      int length = 0;
+      for (int pos = start; pos < cidr.length(); ++pos) {
+        char c = cidr.charAt(pos);
+        if (c < '0' || c > '9') {
+          return -1;
+        }
+        length = length * 10 + (c - '0');
+      }
+      return length;
+    }
+
+    private Node m_ipv4 = null;
+    private Node m_ipv6 = null;
+    private boolean m_isDefaultAllowed = true;
+  }
+
+  /**
+   * @return true if IPv4 or IPv6 address is allowed by the policy
+   */
+  public boolean
+  isAllowed(InetAddress address) {
+    byte[] bytes = address.getAddress();
+    if (address instanceof Inet4Address) {
+      return isAllowedIpv4((bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF));
+    }
+    else if (address instanceof Inet6Address) {
+      return isAllowedIpv6(toLong(bytes, 0), toLong(bytes, 8));
+    }
+    return m_isDefaultAllowed;
+  }
+
+  /**
+   * @param address IPv4 address in network byte order packed into an int
+   * @return true if address is allowed by the policy
+   */
+  public boolean
+  isAllowedIpv4(int address) {
+    return isAllowed(m_ipv4.lookup((long)address << 32, 0));
+  }
+
+  /**
+   * @param hi first 8 bytes of IPv6 address in network byte order
+   * @param lo last 8 bytes of IPv6 address in network byte order
+   * @return true if address is allowed by the policy
+   */
+  public boolean
+  isAllowedIpv6(long hi, long lo) {
+    return isAllowed(m_ipv6.lookup(hi, lo));
+  }
+
+  public boolean
+  isDefaultAllowed() {
+    return m_isDefaultAllowed;
+  }
+
+  /**
+   * @return number of trie nodes, for both families
+   */
+  public int
+  getNodeCount() {
+    return m_ipv4.m_length.length + m_ipv6.m_length.length;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private AddressPolicy(Trie ipv4, Trie ipv6, boolean isDefaultAllowed)
+  {
+    m_ipv4 = ipv4;
+    m_ipv6 = ipv6;
+    m_isDefaultAllowed = isDefaultAllowed;
+  }
+
+  private boolean
+  isAllowed(byte action) {
+    return action == NONE ? m_isDefaultAllowed : action == ALLOW;
+  }
+
+  /**
+   * Node of the trie while it is being built
+   */
+  private static class Node {
+    Node(long hi, long lo, int length, byte action)
+    {
+      m_hi = hi;
+      m_lo = lo;
+      m_length = length;
+      m_action = action;
+    }
+
+    final long m_hi;
+    final long m_lo;
+    final int m_length;
+    byte m_action;
+    final Node[] m_children = new Node[2];
+  }
+
+  /**
+   * Insert prefix into path-compressed subtrie rooted at node
+   * @return new root of the subtrie
+   */
+  private static Node
+  insert(Node node, long hi, long lo, int length, byte action) {
+    if (node == null) {
+      return new Node(hi, lo, length, action);
+    }
+
+    int common = getCommonLength(node.m_hi, node.m_lo, hi, lo, Math.min(node.m_length, length));
+    if (common < node.m_length) {
+      // prefix diverges inside node's label: split it
+      Node parent = new Node(hi & getMask(common), lo & getMask(common - 64), common, NONE);
+      parent.m_children[getBit(node.m_hi, node.m_lo, common)] = node;
+      if (common == length) {
+        parent.m_action = action;
+      }
+      else {
+        parent.m_children[getBit(hi, lo, common)] = new Node(hi, lo, length, action);
+      }
+      return parent;
+    }
+
+    if (length == node.m_length) {
+      if (node.m_action != DENY) {
+        node.m_action = action;
+      }
+      return node;
+    }
+
+    int bit = getBit(hi, lo, node.m_length);
+    node.m_children[bit] = insert(node.m_children[bit], hi, lo, length, action);
+    return node;
+  }
+
+  /**
+   * Trie flattened into arrays; node 0 is the root, child index 0 means no child
+   */
+  private static final class Trie {
+    Trie(Node root, int maxLength)
+    {
+      int size = count(root);
+      m_hi = new long[size];
+      m_lo = new long[size];
+      m_length = new int[size];
+      m_action = new byte[size];
+      m_children = new int[size * 2];
+      m_maxLength = maxLength;
+      if (root != null) {
+        flatten(root, 0, 1);
+      }
+    }
+
+    /**
+     * @return action of the longest matching prefix, or NONE
+     */
+    byte
+    lookup(long hi, long lo) {
+      byte action = NONE;
+      int node = m_length.length > 0 ? 0 : -1;
+      while (node >= 0) {
+        int length = m_length[node];
+        long hiMask = getMask(length);
+        long loMask = getMask(length - 64);
+        if (((hi ^ m_hi[node]) & hiMask) != 0 || ((lo ^ m_lo[node]) & loMask) != 0) {
+          break;
+        }
+        if (m_action[node] != NONE) {
+          action = m_action[node];
+        }
+        if (length == m_maxLength) {
+          break;
+        }
+        int child = m_children[2 * node + getBit(hi, lo, length)];
+        node = child != 0 ? child : -1;
+      }
+      return action;
+    }
+
+    private static int
+    count(Node node) {
+      return node == null ? 0 : 1 + count(node.m_children[0]) + count(node.m_children[1]);
+    }
+
+    /**
+     * Store subtrie rooted at node into index, using indices from next for its descendants
+     * @return next unused index
+     */
+    private int
+    flatten(Node node, int index, int next) {
+      m_hi[index] = node.m_hi;
+      m_lo[index] = node.m_lo;
+      m_length[index] = node.m_length;
+      m_action[index] = node.m_action;
+      for (int bit = 0; bit < 2; ++bit) {
+        Node child = node.m_children[bit];
+        if (child != null) {
+          int childIndex = next;
+          m_children[2 * index + bit] = childIndex;
+          next = flatten(child, childIndex, next + 1);
+        }
+      }
+      return next;
+    }
+
+    private final long[] m_hi;
+    private final long[] m_lo;
+    final int[] m_length;
+    private final byte[] m_action;
+    private final int[] m_children;
+    private final int m_maxLength;
+  }
+
+  /**
+   * @return mask of the top length bits of a 64-bit word (length is clamped to 0..64)
+   */
+  private static long
+  getMask(int length) {
+    if (length <= 0) {
+      return 0;
+    }
+    return length >= 64 ? -1L : -1L << (64 - length);
+  }
+
+  private static int
+  getBit(long hi, long lo, int position) {
+    return position < 64 ? (int)(hi >>> (63 - position)) & 1 : (int)(lo >>> (127 - position)) & 1;
+  }
+
+  /**
+   * @return length of the common prefix of two 128-bit values, at most maxLength
+   */
+  private static int
+  getCommonLength(long hi1, long lo1, long hi2, long lo2, int maxLength) {
+    long diff = hi1 ^ hi2;
+    int common = diff != 0 ? Long.numberOfLeadingZeros(diff) : 64 + Long.numberOfLeadingZeros(lo1 ^ lo2);
+    return Math.min(common, maxLength);
+  }
+
+  private static long
+  toLong(byte[] bytes, int offset) {
+    long value = 0;
+    for (int i = offset; i < offset + 8; ++i) {
+      value = value << 8 | (bytes[i] & 0xFF);
+    }
+    return value;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final byte NONE = 0;
+  private static final byte ALLOW = 1;
+  private static final byte DENY = 2;
+
+  private final Trie m_ipv4;
+  private final Trie m_ipv6;
+  private final boolean m_isDefaultAllowed;
+}
@@ -0,0 +1,119 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import java.util.Arrays;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Read-only CharSequence view of single-byte (ASCII or ISO-8859-1) characters in a byte array
+ */
+final class AsciiChars implements CharSequence {
+  AsciiChars(byte[] bytes, int offset, int length)
+  {
+    if (offset < 0 || length < 0 || offset + length > bytes.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    m_bytes = bytes;
+    m_offset = offset;
+    m_length = length;
+  }
+
+  /**
+   * Make an independent copy of the character sequence
+   * @return AsciiChars that owns a copy of single-byte characters, or String if
+   * the sequence contains other characters
+   */
+  static CharSequence
+  copyOf(CharSequence chars) {
+    if (chars instanceof String) {
+      return chars;
+    }
+    if (chars instanceof AsciiChars) {
+      AsciiChars ascii = (AsciiChars)chars;
+      return new AsciiChars(Arrays.copyOfRange(ascii.m_bytes, ascii.m_offset, ascii.m_offset + ascii.m_length),
+                            0, ascii.m_length);
+    }
+    if (chars instanceof ByteBufferChars) {
+      return new AsciiChars(((ByteBufferChars)chars).toByteArray(), 0, chars.length());
+    }
+
+    byte[] bytes = new byte[chars.length()];
+    for (int i = 0; i < bytes.length; ++i) {
+      char c = chars.charAt(i);
+      if (c > 0xFF) {
+        return chars.toString();
+      }
+      bytes[i] = (byte)c;
+    }
+    return new AsciiChars(bytes, 0, bytes.length);
+  }
+
+  @Override
+  public int
+  length() {
+    return m_length;
+  }
+
+  @Override
+  public char
+  charAt(int index) {
+    if (index < 0 || index >= m_length) {
+      throw new IndexOutOfBoundsException();
+    }
+    return (char)(m_bytes[m_offset + index] & 0xFF);
+  }
+
+  @Override
+  public CharSequence
+  subSequence(int start, int end) {
+    checkRange(start, end);
+    return new AsciiChars(m_bytes, m_offset + start, end - start);
+  }
+
+  /**
+   * @return String with characters in [start, end)
+   */
+  String
+  substring(int start, int end) {
+    checkRange(start, end);
+    return new String(m_bytes, m_offset + start, end - start, Charsets.ISO_8859_1);
+  }
+
+  @Override
+  public String
+  toString() {
+    return new String(m_bytes, m_offset, m_length, Charsets.ISO_8859_1);
+  }
+
+  private void
+  checkRange(int start, int end) {
+    if (start < 0 || end > m_length || start > end) {
+      throw new IndexOutOfBoundsException();
+    }
+  }
+
+  private final byte[] m_bytes;
+  private final int m_offset;
+  private final int m_length;
+}
@@ -0,0 +1,60 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import java.net.InetAddress;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * HostResolver that can resolve host names without blocking the calling thread
+ * <p>
+ * ResolverCache and canonization providers use resolveAsync() when the configured resolver
+ * implements this interface, so in-flight resolutions do not occupy any thread.
+ */
+public interface AsyncHostResolver extends HostResolver {
+  /**
+   * Asynchronously resolve host name into IPv4 and/or IPv6 addresses
+   * <p>
+   * Listeners of the returned future may be invoked on the resolver's own thread and
+   * must not block.
+   * <p>
+   * @param host host name or IP address literal
+   * @return future that completes with non-empty array of resolved addresses,
+   * or fails with UnknownHostException if host cannot be resolved
+   */
+  public ListenableFuture<InetAddress[]>
+  resolveAsync(String host);
+
+  /**
+   * Asynchronously resolve host name into addresses of one family
+   * <p>
+   * Only the requested family is queried, so a slow or broken family does not delay the result.
+   * <p>
+   * @param host host name or IP address literal
+   * @param family Inet4Address.class or Inet6Address.class
+   * @return future that completes with non-empty array of resolved addresses of the family,
+   * or fails with UnknownHostException if host has no address of the family
+   */
+  public ListenableFuture<InetAddress[]>
+  resolveAsync(String host, Class<? extends InetAddress> family);
+}
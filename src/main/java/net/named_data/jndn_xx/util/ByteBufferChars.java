@@ -0,0 +1,88 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import java.nio.ByteBuffer;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Read-only CharSequence view of single-byte characters between buffer's position and limit
+ * <p>
+ * Uses absolute reads, so the buffer's position is not changed.
+ */
+final class ByteBufferChars implements CharSequence {
+  ByteBufferChars(ByteBuffer buffer)
+  {
+    m_buffer = buffer;
+    m_offset = buffer.position();
+    m_length = buffer.remaining();
+  }
+
+  @Override
+  public int
+  length() {
+    return m_length;
+  }
+
+  @Override
+  public char
+  charAt(int index) {
+    if (index < 0 || index >= m_length) {
+      throw new IndexOutOfBoundsException();
+    }
+    return (char)(m_buffer.get(m_offset + index) & 0xFF);
+  }
+
+  @Override
+  public CharSequence
+  subSequence(int start, int end) {
+    if (start < 0 || end > m_length || start > end) {
+      throw new IndexOutOfBoundsException();
+    }
+    ByteBuffer slice = m_buffer.duplicate();
+    slice.limit(m_offset + end).position(m_offset + start);
+    return new ByteBufferChars(slice);
+  }
+
+  /**
+   * @return copy of the viewed bytes
+   */
+  byte[]
+  toByteArray() {
+    byte[] bytes = new byte[m_length];
+    ByteBuffer source = m_buffer.duplicate();
+    source.limit(m_offset + m_length).position(m_offset);
+    source.get(bytes);
+    return bytes;
+  }
+
+  @Override
+  public String
+  toString() {
+    return new String(toByteArray(), Charsets.ISO_8859_1);
+  }
+
+  private final ByteBuffer m_buffer;
+  private final int m_offset;
+  private final int m_length;
+}
@@ -0,0 +1,409 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Index from remote endpoint (IP address and port) to face id
+ * <p>
+ * Keys are kept packed in a primitive open-addressing table: an IPv4 endpoint is one long
+ * plus the port, an IPv6 endpoint is two longs plus the port.  Lookups do not allocate and
+ * do not lock, so they can run on the packet path concurrently with writers; writers are
+ * serialized among themselves.
+ * <p>
+ * The index does not look at the scheme, so a separate index should be used per transport
+ * (e.g., one for udp and one for tcp faces).
+ */
+public class EndpointIndex {
+  /**
+   * Returned by lookups when there is no face for the endpoint
+   */
+  public static final long NOT_FOUND = -1;
+
+  public EndpointIndex()
+  {
+    this(16);
+  }
+
+  /**
+   * @param expectedSize number of endpoints the index can hold without growing
+   */
+  public EndpointIndex(int expectedSize)
+  {
+    if (expectedSize < 0) {
+      throw new IllegalArgumentException("Expected size must not be negative");
+    }
+    m_table = new AtomicLongArray(getCapacity(expectedSize) * SLOT_SIZE);
+  }
+
+  /**
+   * @return number of endpoints in the index
+   */
+  public int
+  size() {
+    return m_size;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Get face id for remote FaceUri with IP address literal and port
+   * @return face id, or NOT_FOUND if FaceUri is not in the index or has no address literal and port
+   */
+  public long
+  get(FaceUri uri) {
+    int port = uri.getPortNumber();
+    switch (uri.getAddressKind()) {
+      case FaceUri.ADDRESS_IPV4:
+        return find(m_table, 0, uri.getAddressLo(), port);
+      case FaceUri.ADDRESS_IPV6:
+        return find(m_table, uri.getAddressHi(), uri.getAddressLo(), port | FLAG_V6);
+      default:
+        return NOT_FOUND;
+    }
+  }
+
+  /**
+   * Get face id for remote socket address
+   * <p>
+   * This is a convenience method that copies the address bytes; use getIpv4 or getIpv6 on
+   * a path that must not allocate.
+   * @return face id, or NOT_FOUND if endpoint is not in the index or address is not resolved
+   */
+  public long
+  get(InetSocketAddress endpoint) {
+    InetAddress address = endpoint.getAddress();
+    if (address instanceof Inet4Address) {
+      return getIpv4(toIpv4(address.getAddress()), endpoint.getPort());
+    }
+    else if (address instanceof Inet6Address) {
+      byte[] bytes = address.getAddress();
+      return getIpv6(toLong(bytes, 0), toLong(bytes, 8), endpoint.getPort());
+    }
+    return NOT_FOUND;
+  }
+
+  /**
+   * @param address IPv4 address in network byte order packed into an int
+   * @return face id, or NOT_FOUND
+   */
+  public long
+  getIpv4(int address, int port) {
+    return find(m_table, 0, address & 0xFFFFFFFFL, checkPort(port));
+  }
+
+  /**
+   * @param hi first 8 bytes of IPv6 address in network byte order
+   * @param lo last 8 bytes of IPv6 address in network byte order
+   * @return face id, or NOT_FOUND
+   */
+  public long
+  getIpv6(long hi, long lo, int port) {
+    return find(m_table, hi, lo, checkPort(port) | FLAG_V6);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Associate remote FaceUri with face id, replacing any previous association
+   * @param faceId non-negative face id
+   * @return previous face id for the endpoint, or NOT_FOUND
+   * @throws IllegalArgumentException if FaceUri host is not an IP address literal or has no port
+   */
+  public long
+  put(FaceUri uri, long faceId) {
+    int kind = uri.getAddressKind();
+    int port = uri.getPortNumber();
+    if (kind != FaceUri.ADDRESS_IPV4 && kind != FaceUri.ADDRESS_IPV6) {
+      throw new IllegalArgumentException("FaceUri host is not an IP address literal: " + uri);
+    }
+    if (port < 0) {
+      throw new IllegalArgumentException("FaceUri has no valid port: " + uri);
+    }
+    return insert(kind == FaceUri.ADDRESS_IPV6 ? uri.getAddressHi() : 0, uri.getAddressLo(),
+                  kind == FaceUri.ADDRESS_IPV6 ? port | FLAG_V6 : port, faceId);
+  }
+
+  /**
+   * @param address IPv4 address in network byte order packed into an int
+   * @param faceId non-negative face id
+   * @return previous face id for the endpoint, or NOT_FOUND
+   */
+  public long
+  putIpv4(int address, int port, long faceId) {
+    return insert(0, address & 0xFFFFFFFFL, requirePort(port), faceId);
+  }
+
+  /**
+   * @param hi first 8 bytes of IPv6 address in network byte order
+   * @param lo last 8 bytes of IPv6 address in network byte order
+   * @param faceId non-negative face id
+   * @return previous face id for the endpoint, or NOT_FOUND
+   */
+  public long
+  putIpv6(long hi, long lo, int port, long faceId) {
+    return insert(hi, lo, requirePort(port) | FLAG_V6, faceId);
+  }
+
+  /**
+   * Remove remote FaceUri from the index
+   * @return removed face id, or NOT_FOUND
+   */
+  public long
+  remove(FaceUri uri) {
+    int port = uri.getPortNumber();
+    switch (uri.getAddressKind()) {
+      case FaceUri.ADDRESS_IPV4:
+        return delete(0, uri.getAddressLo(), port);
+      case FaceUri.ADDRESS_IPV6:
+        return delete(uri.getAddressHi(), uri.getAddressLo(), port | FLAG_V6);
+      default:
+        return NOT_FOUND;
+    }
+  }
+
+  /**
+   * @return removed face id, or NOT_FOUND
+   */
+  public long
+  removeIpv4(int address, int port) {
+    return delete(0, address & 0xFFFFFFFFL, checkPort(port));
+  }
+
+  /**
+   * @return removed face id, or NOT_FOUND
+   */
+  public long
+  removeIpv6(long hi, long lo, int port) {
+    return delete(hi, lo, checkPort(port) | FLAG_V6);
+  }
+
+  /**
+   * Remove all endpoints from the index
+   */
+  public synchronized void
+  clear() {
+    m_table = new AtomicLongArray(getCapacity(0) * SLOT_SIZE);
+    m_size = 0;
+    m_nUsed = 0;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Find value of the key in table; a slot's key is written before its meta word and is never
+   * changed afterwards, so a slot whose meta word matches can be read without locking
+   */
+  private static long
+  find(AtomicLongArray table, long k0, long k1, int key) {
+    if (key < 0) {
+      return NOT_FOUND;
+    }
+    long meta = key | FLAG_OCCUPIED;
+    int mask = table.length() / SLOT_SIZE - 1;
+    for (int i = hash(k0, k1, key) & mask; ; i = (i + 1) & mask) {
+      int base = i * SLOT_SIZE;
+      long m = table.get(base + META);
+      if (m == EMPTY) {
+        return NOT_FOUND;
+      }
+      if (m == meta && table.get(base + K1) == k1 && table.get(base + K0) == k0) {
+        return table.get(base + VALUE);
+      }
+    }
+  }
+
+  private synchronized long
+  insert(long k0, long k1, int key, long faceId) {
+    if (faceId < 0) {
+      throw new IllegalArgumentException("Face id must not be negative");
+    }
+
+    AtomicLongArray table = m_table;
+    long meta = key | FLAG_OCCUPIED;
+    int mask = table.length() / SLOT_SIZE - 1;
+    int i = hash(k0, k1, key) & mask;
+    for (; ; i = (i + 1) & mask) {
+      int base = i * SLOT_SIZE;
+      long m = table.get(base + META);
+      if (m == EMPTY) {
+        break;
+      }
+      if (m == meta && table.get(base + K1) == k1 && table.get(base + K0) == k0) {
+        return table.getAndSet(base + VALUE, faceId);
+      }
+    }
+
+    if ((m_nUsed + 1) * 3 > (mask + 1) * 2) {
+      table = rehash(m_size + 1);
+      mask = table.length() / SLOT_SIZE - 1;
+      for (i = hash(k0, k1, key) & mask; table.get(i * SLOT_SIZE + META) != EMPTY; i = (i + 1) & mask) {
+      }
+    }
+
+    int base = i * SLOT_SIZE;
+    table.lazySet(base + K0, k0);
+    table.lazySet(base + K1, k1);
+    table.lazySet(base + VALUE, faceId);
+    table.set(base + META, meta); // publishes key and value to readers
+    ++m_size;
+    ++m_nUsed;
+    return NOT_FOUND;
+  }
+
+  private synchronized long
+  delete(long k0, long k1, int key) {
+    if (key < 0) {
+      return NOT_FOUND;
+    }
+
+    AtomicLongArray table = m_table;
+    long meta = key | FLAG_OCCUPIED;
+    int mask = table.length() / SLOT_SIZE - 1;
+    for (int i = hash(k0, k1, key) & mask; ; i = (i + 1) & mask) {
+      int base = i * SLOT_SIZE;
+      long m = table.get(base + META);
+      if (m == EMPTY) {
+        return NOT_FOUND;
+      }
+      if (m == meta && table.get(base + K1) == k1 && table.get(base + K0) == k0) {
+        // tombstone keeps probe chains intact; it is reclaimed only by rehash, so readers
+        // never see a slot reused for another key
+        table.set(base + META, TOMBSTONE);
+        --m_size;
+        return table.get(base + VALUE);
+      }
+    }
+  }
+
+  /**
+   * Copy live entries into a new table sized for minSize entries and publish it
+   */
+  private AtomicLongArray
+  rehash(int minSize) {
+    AtomicLongArray old = m_table;
+    AtomicLongArray table = new AtomicLongArray(getCapacity(minSize) * SLOT_SIZE);
+    int mask = table.length() / SLOT_SIZE - 1;
+    for (int base = 0; base < old.length(); base += SLOT_SIZE) {
+      long meta = old.get(base + META);
+      if ((meta & FLAG_OCCUPIED) == 0) {
+        continue;
+      }
+      long k0 = old.get(base + K0);
+      long k1 = old.get(base + K1);
+      int i = hash(k0, k1, (int)(meta & KEY_MASK)) & mask;
+      while (table.get(i * SLOT_SIZE + META) != EMPTY) {
+        i = (i + 1) & mask;
+      }
+      int to = i * SLOT_SIZE;
+      table.lazySet(to + K0, k0);
+      table.lazySet(to + K1, k1);
+      table.lazySet(to + VALUE, old.get(base + VALUE));
+      table.lazySet(to + META, meta);
+    }
+    m_table = table; // volatile write publishes the whole table
+    m_nUsed = m_size;
+    return table;
+  }
+
+  /**
+   * @return power-of-two number of slots that keeps size entries at most half full
+   */
+  private static int
+  getCapacity(int size) {
+    int capacity = 16;
+    while (capacity < (long)size * 2) {
+      capacity <<= 1;
+    }
+    if (capacity > MAX_CAPACITY) {
+      throw new IllegalStateException("EndpointIndex cannot hold " + size + " endpoints");
+    }
+    return capacity;
+  }
+
+  private static int
+  hash(long k0, long k1, int key) {
+    long h = k0 * 0x9E3779B97F4A7C15L ^ k1 ^ ((long)key << 40);
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return (int)h;
+  }
+
+  /**
+   * @return port, or -1 if it is out of range (such endpoint cannot be in the index)
+   */
+  private static int
+  checkPort(int port) {
+    return port >= 0 && port <= 0xFFFF ? port : -1;
+  }
+
+  private static int
+  requirePort(int port) {
+    if (checkPort(port) < 0) {
+      throw new IllegalArgumentException("Port must be in range 0-65535");
+    }
+    return port;
+  }
+
+  private static int
+  toIpv4(byte[] bytes) {
+    return (bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF);
+  }
+
+  private static long
+  toLong(byte[] bytes, int offset) {
+    long value = 0;
+    for (int i = offset; i < offset + 8; ++i) {
+      value = value << 8 | (bytes[i] & 0xFF);
+    }
+    return value;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  // slot layout: {k0, k1, meta, value}, meta is 0 for empty slots
+  private static final int SLOT_SIZE = 4;
+  private static final int K0 = 0;
+  private static final int K1 = 1;
+  private static final int META = 2;
+  private static final int VALUE = 3;
+  private static final int MAX_CAPACITY = 1 << 28;
+
+  // meta word: bits 0-15 port, bit 16 IPv6, bit 17 occupied, bit 18 tombstone
+  private static final int FLAG_V6 = 1 << 16;
+  private static final long KEY_MASK = 0x1FFFF;
+  private static final long FLAG_OCCUPIED = 1 << 17;
+  private static final long EMPTY = 0;
+  private static final long TOMBSTONE = 1 << 18;
+
+  private volatile AtomicLongArray m_table;
+  private volatile int m_size = 0;
+  private int m_nUsed = 0; ///< occupied slots and tombstones in m_table, guarded by this
+}
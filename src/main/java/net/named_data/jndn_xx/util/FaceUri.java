@@ -21,18 +21,52 @@
 
 package net.named_data.jndn_xx.util;
 
+import java.io.IOException;
 import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Represents the underlying protocol and address used by Face
@@ -45,9 +79,90 @@ public class FaceUri implements Cloneable {
   }
 
   public static class CanonizeError extends Exception {
-    CanonizeError(String error) {
+    /**
+     * Category of canonization failure
+     */
+    public enum Reason {
+      /** no canonize provider is registered for the scheme */
+      UNSUPPORTED_SCHEME,
+      /** host cannot be resolved, or resolves to no address usable by the scheme */
+      CANNOT_RESOLVE,
+      /** resolved address is prohibited by the canonize provider */
+      PROHIBITED_ADDRESS,
+      /** canonization was not accepted by the executor */
+      REJECTED,
+      /** FaceUri is malformed for the scheme */
+      INVALID,
+      /** thread was interrupted while canonizing */
+      INTERRUPTED,
+      /** canonization did not complete before the deadline */
+      TIMEOUT,
+      OTHER
+    }
+
+    public CanonizeError(String error) {
+      this(error, Reason.OTHER);
+    }
+
+    public CanonizeError(String error, Reason reason) {
       super(error);
+      m_reason = reason;
+    }
+
+    public Reason
+    getReason() {
+      return m_reason;
+    }
+
+    private final Reason m_reason;
+  }
+
+  /**
+   * Outcome of canonizing one FaceUri in a batch
+   * @see FaceUri#canonizeAll(Collection)
+   */
+  public static class CanonizeResult {
+    CanonizeResult(FaceUri input, FaceUri canonical, CanonizeError error) {
+      m_input = input;
+      m_canonical = canonical;
+      m_error = error;
+    }
+
+    /**
+     * @return FaceUri that was canonized
+     */
+    public FaceUri
+    getInput() {
+      return m_input;
+    }
+
+    /**
+     * @return canonical FaceUri, or null if canonization failed
+     */
+    public FaceUri
+    getCanonical() {
+      return m_canonical;
+    }
+
+    /**
+     * @return reason of the failure, or null if canonization succeeded
+     */
+    public CanonizeError
+    getError() {
+      return m_error;
+    }
+
+    /**
+     * @return true if canonization succeeded
+     */
+    public boolean
+    isSuccess() {
+      return m_error == null;
     }
+
+    private final FaceUri m_input;
+    private final FaceUri m_canonical;
+    private final CanonizeError m_error;
   }
 
   //////////////////////////////////////////////////////////////////////////////
@@ -67,66 +182,429 @@ public class FaceUri implements Cloneable {
     }
   }
 
+  /**
+   * Construct FaceUri directly from already validated components, without parsing
+   * @param isV6 whether host is enclosed in [ ]
+   * @param port port text, "" if there is no port
+   * @param portNumber number of port text, -1 if there is no port
+   */
+  FaceUri(String scheme, String host, boolean isV6, String port, int portNumber, String path)
+  {
+    m_scheme = scheme;
+    m_schemeCode = getSchemeCode(scheme);
+    m_host = host;
+    m_isV6 = isV6;
+    decodeAddress(host, 0, host.length());
+    m_port = port;
+    m_portNumber = portNumber;
+    m_path = path;
+    resolveProvider();
+  }
+
   /**
    * Exception-safe parsing
+   * <p>
+   * Interned instances (see intern()) are not modified and parse returns false.
+   * <p>
    * @param uri FaceUri to parse
    * @return true if <pre>uri</pre> is successfully parsed
    */
   public boolean
   parse(String uri) {
+    if (!parseView(uri)) {
+      return false;
+    }
+    setSource(uri);
+    return true;
+  }
+
+  /**
+   * Exception-safe parsing from any character sequence
+   * <p>
+   * The sequence is scanned in place; on success the accepted characters are copied once, so
+   * the sequence can be modified afterwards.  Components are converted into strings only
+   * when requested.  Interned instances are not modified and parse returns false.
+   * <p>
+   * @param uri FaceUri to parse
+   * @return true if <pre>uri</pre> is successfully parsed
+   */
+  public boolean
+  parse(CharSequence uri) {
+    if (uri instanceof String) {
+      return parse((String)uri);
+    }
+    if (!parseView(uri)) {
+      return false;
+    }
+    setSource(AsciiChars.copyOf(uri));
+    return true;
+  }
+
+  /**
+   * Exception-safe parsing from ASCII bytes
+   * <p>
+   * The bytes are scanned in place; on success the accepted bytes are copied once, so
+   * the array can be reused afterwards.  Components are converted into strings only
+   * when requested.  Interned instances are not modified and parse returns false.
+   * <p>
+   * @param ascii array containing FaceUri
+   * @param offset offset of FaceUri in the array
+   * @param length length of FaceUri
+   * @return true if FaceUri is successfully parsed
+   */
+  public boolean
+  parse(byte[] ascii, int offset, int length) {
+    AsciiChars view = new AsciiChars(ascii, offset, length);
+    if (!parseView(view)) {
+      return false;
+    }
+    setSource(AsciiChars.copyOf(view));
+    return true;
+  }
+
+  /**
+   * Exception-safe parsing from ASCII bytes between buffer's position and limit
+   * <p>
+   * The buffer (heap, direct, or memory-mapped) is scanned in place and its position is not
+   * changed; on success the accepted bytes are copied once.  Components are converted into
+   * strings only when requested.  Interned instances are not modified and parse returns false.
+   * <p>
+   * @param ascii buffer containing FaceUri
+   * @return true if FaceUri is successfully parsed
+   */
+  public boolean
+  parse(ByteBuffer ascii) {
+    if (ascii.hasArray()) {
+      return parse(ascii.array(), ascii.arrayOffset() + ascii.position(), ascii.remaining());
+    }
+
+    ByteBufferChars view = new ByteBufferChars(ascii);
+    if (!parseView(view)) {
+      return false;
+    }
+    setSource(AsciiChars.copyOf(view));
+    return true;
+  }
+
+  /**
+   * Scan uri and record component boundaries, recording metrics if enabled;
+   * on success, the caller must call setSource.  Interned instances are left unchanged.
+   */
+  private boolean
+  parseView(CharSequence uri) {
+    if (m_isInterned) {
+      return false;
+    }
+
+    if (!FaceUriMetrics.s_isEnabled) {
+      return scan(uri);
+    }
+
+    long start = System.nanoTime();
+    boolean isSuccess = scan(uri);
+    FaceUriMetrics.recordParse(isSuccess, start);
+    return isSuccess;
+  }
+
+  private boolean
+  scan(CharSequence uri) {
+    m_hash = 0;
+    m_string = null;
+    m_socketAddress = null;
+    m_canonical = null;
+    m_source = null;
+    m_schemeCode = 0;
+    m_binding = null;
     m_scheme = "";
     m_host = "";
     m_isV6 = false;
+    m_addressKind = ADDRESS_NONE;
     m_port = "";
+    m_portNumber = -1;
     m_path = "";
 
-    Pattern protocolExp = Pattern.compile("(\\w+\\d?)://([^/]*)(\\/[^?]*)?");
-    Matcher protocolMatch = protocolExp.matcher(uri);
-    if (!protocolMatch.matches()) {
+    // scheme://authority[/path], scheme is \w+, authority has no '/', path has no '?'
+    final int length = uri.length();
+    int pos = 0;
+    while (pos < length && isWordChar(uri.charAt(pos))) {
+      ++pos;
+    }
+    if (pos == 0 || !startsWith(uri, pos, "://")) {
       return false;
     }
-    m_scheme = protocolMatch.group(1);
-    if (m_scheme == null)
-      m_scheme = "";
-    String authority = protocolMatch.group(2);
-    if (authority == null)
-      authority = "";
-    m_path = protocolMatch.group(3);
-    if (m_path == null)
-      m_path = "";
-
-    // pattern for IPv6 address enclosed in [ ], with optional port number
-    final Pattern v6Exp = Pattern.compile("^\\[([a-fA-F0-9:]+)\\](?:\\:(\\d+))?$");
-    // pattern for Ethernet address in standard hex-digits-and-colons notation
-    final Pattern etherExp = Pattern.compile("^\\[((?:[a-fA-F0-9]{1,2}\\:){5}(?:[a-fA-F0-9]{1,2}))\\]$");
-    // pattern for IPv4-mapped IPv6 address, with optional port number
-    final Pattern v4MappedV6Exp = Pattern.compile("^\\[::ffff:(\\d+(?:\\.\\d+){3})\\](?:\\:(\\d+))?$");
-    // pattern for IPv4/hostname/fd/ifname, with optional port number
-    final Pattern v4HostExp = Pattern.compile("^([^:]+)(?:\\:(\\d+))?$");
-
-    if (authority.equals("")) {
-      // UNIX, internal
-    } else {
-      Matcher match = v6Exp.matcher(authority);
-      m_isV6 = match.matches();
-      if (m_isV6 ||
-        (match = etherExp.matcher(authority)).matches() ||
-        (match = v4MappedV6Exp.matcher(authority)).matches() ||
-        (match = v4HostExp.matcher(authority)).matches()) {
-        m_host = match.group(1);
-        if (m_host == null)
-          m_host = "";
-        m_port = match.group(2);
-        if (m_port == null)
-          m_port = "";
-      } else {
-        return false;
+    final int schemeEnd = pos;
+    final int authorityStart = pos + 3;
+    int authorityEnd = indexOf(uri, '/', authorityStart);
+    if (authorityEnd < 0) {
+      authorityEnd = length;
+    }
+    else if (indexOf(uri, '?', authorityEnd) >= 0) {
+      return false;
+    }
+
+    if (authorityStart != authorityEnd && !parseAuthority(uri, authorityStart, authorityEnd)) {
+      return false;
+    }
+
+    m_schemeEnd = schemeEnd;
+    m_schemeCode = getSchemeCode(uri, schemeEnd);
+    m_scheme = null;
+    m_pathStart = authorityEnd;
+    m_path = authorityEnd == length ? "" : null;
+    return true;
+  }
+
+  /**
+   * Parse non-empty authority uri[start, end) and record host, port, and IPv6 flag
+   * <p>
+   * Accepts, in order of preference:
+   * <ul>
+   * <li>IPv6 address (or Ethernet address) enclosed in [ ], with optional port number</li>
+   * <li>IPv4-mapped IPv6 address, with optional port number</li>
+   * <li>IPv4 address, hostname, fd, or ifname, with optional port number</li>
+   * </ul>
+   * @return true if authority matches one of the accepted forms
+   */
+  private boolean
+  parseAuthority(CharSequence uri, int start, int end) {
+    if (uri.charAt(start) == '[') {
+      // [a-fA-F0-9:]+ enclosed in [ ]
+      int pos = start + 1;
+      while (pos < end && isHexDigitOrColon(uri.charAt(pos))) {
+        ++pos;
+      }
+      if (pos > start + 1 && pos < end && uri.charAt(pos) == ']') {
+        int port = parseOptionalPort(uri, pos + 1, end);
+        if (port != INVALID_PORT) {
+          m_isV6 = true;
+          setHostAndPort(uri, start + 1, pos, pos + 1, end, port);
+          return true;
+        }
+      }
+
+      // [::ffff:d+.d+.d+.d+]
+      if (startsWith(uri, start, "[::ffff:")) {
+        int hostStart = start + 8;
+        int hostEnd = skipDottedQuad(uri, hostStart, end);
+        if (hostEnd > 0 && hostEnd < end && uri.charAt(hostEnd) == ']') {
+          int port = parseOptionalPort(uri, hostEnd + 1, end);
+          if (port != INVALID_PORT) {
+            setHostAndPort(uri, hostStart, hostEnd, hostEnd + 1, end, port);
+            return true;
+          }
+        }
+      }
+    }
+
+    // [^:]+ with optional port number
+    int hostEnd = start;
+    while (hostEnd < end && uri.charAt(hostEnd) != ':') {
+      ++hostEnd;
+    }
+    if (hostEnd == start) {
+      return false;
+    }
+    int port = parseOptionalPort(uri, hostEnd, end);
+    if (port == INVALID_PORT) {
+      return false;
+    }
+    setHostAndPort(uri, start, hostEnd, hostEnd, end, port);
+    return true;
+  }
+
+  /**
+   * Set parsed FaceUri and resolve canonize provider of its scheme
+   */
+  private void
+  setSource(CharSequence source) {
+    m_source = source;
+    resolveProvider();
+  }
+
+  private void
+  resolveProvider() {
+    m_binding = s_registry.bind(this);
+  }
+
+  /**
+   * @return provider binding for the current registry; if providers or their policies changed
+   * since the FaceUri was bound, it is re-bound, so later calls take the fast path again
+   */
+  private ProviderBinding
+  getBinding() {
+    ProviderRegistry registry = s_registry;
+    ProviderBinding binding = m_binding;
+    if (binding == null || binding.m_registry != registry) {
+      m_binding = binding = registry.bind(this);
+    }
+    return binding;
+  }
+
+  /**
+   * Memoize that this FaceUri, just created by provider as a result of canonization, is canonical
+   */
+  void
+  setCanonical(CanonizeProvider provider) {
+    ProviderBinding binding = getBinding();
+    if (binding.m_provider == provider) {
+      m_canonical = binding.m_isCanonical;
+    }
+  }
+
+  private void
+  setHostAndPort(CharSequence uri, int hostStart, int hostEnd, int portPos, int end, int port) {
+    m_hostStart = hostStart;
+    m_hostEnd = hostEnd;
+    m_host = null;
+    decodeAddress(uri, hostStart, hostEnd);
+    if (portPos < end) {
+      m_portStart = portPos + 1;
+      m_portEnd = end;
+      m_port = null;
+      m_portNumber = port;
+    }
+  }
+
+  /**
+   * Decode IP address literal in host uri[start, end) into m_addressKind, m_addressHi, and m_addressLo
+   * (m_isV6 must be already set)
+   */
+  private void
+  decodeAddress(CharSequence uri, int start, int end) {
+    m_addressHi = 0;
+    m_addressLo = 0;
+    if (start == end) {
+      m_addressKind = ADDRESS_NONE;
+      return;
+    }
+
+    if (m_isV6) {
+      long[] address = new long[2];
+      if (InetLiterals.parseIpv6(uri, start, end, address)) {
+        m_addressKind = ADDRESS_IPV6;
+        m_addressHi = address[0];
+        m_addressLo = address[1];
+        return;
+      }
+    }
+    else {
+      long address = InetLiterals.parseIpv4(uri, start, end);
+      if (address >= 0) {
+        m_addressKind = ADDRESS_IPV4;
+        m_addressLo = address;
+        return;
+      }
+    }
+    m_addressKind = ADDRESS_HOST;
+  }
+
+  /**
+   * Parse optional port uri[start, end), which is either empty or ':' followed by one or more digits
+   * @return port number, -1 if uri[start, end) is empty, or INVALID_PORT if it is not a port
+   * or the port number exceeds 65535
+   */
+  private static int
+  parseOptionalPort(CharSequence uri, int start, int end) {
+    if (start == end) {
+      return -1;
+    }
+    if (uri.charAt(start) != ':' || start + 1 == end) {
+      return INVALID_PORT;
+    }
+    int port = 0;
+    for (int pos = start + 1; pos < end; ++pos) {
+      char c = uri.charAt(pos);
+      if (!isDigit(c)) {
+        return INVALID_PORT;
+      }
+      port = port * 10 + (c - '0');
+      if (port > MAX_PORT) {
+        return INVALID_PORT;
+      }
+    }
+    return port;
+  }
+
+  /**
+   * Skip over \d+(\.\d+){3} starting at uri[start]
+   * @return position after the last digit, or -1 if there is no match
+   */
+  private static int
+  skipDottedQuad(CharSequence uri, int start, int end) {
+    int pos = start;
+    for (int group = 0; group < 4; ++group) {
+      if (group > 0) {
+        if (pos >= end || uri.charAt(pos) != '.') {
+          return -1;
+        }
+        ++pos;
+      }
+      int groupStart = pos;
+      while (pos < end && isDigit(uri.charAt(pos))) {
+        ++pos;
+      }
+      if (pos == groupStart) {
+        return -1;
       }
     }
+    return pos;
+  }
 
+  private static boolean
+  startsWith(CharSequence s, int pos, String prefix) {
+    if (pos + prefix.length() > s.length()) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); ++i) {
+      if (s.charAt(pos + i) != prefix.charAt(i)) {
+        return false;
+      }
+    }
     return true;
   }
 
+  private static int
+  indexOf(CharSequence s, char c, int from) {
+    for (int pos = from; pos < s.length(); ++pos) {
+      if (s.charAt(pos) == c) {
+        return pos;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Convert source[start, end) into a string, reusing constant for well-known scheme
+   */
+  private String
+  materialize(int start, int end, boolean isScheme) {
+    if (start == end) {
+      return "";
+    }
+    if (isScheme && m_schemeCode != 0) {
+      return WELL_KNOWN_SCHEMES[m_schemeCode];
+    }
+    if (m_source instanceof String) {
+      return ((String)m_source).substring(start, end);
+    }
+    return ((AsciiChars)m_source).substring(start, end);
+  }
+
+  private static boolean
+  isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean
+  isWordChar(char c) {
+    return isDigit(c) || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+  }
+
+  private static boolean
+  isHexDigitOrColon(char c) {
+    return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F') || c == ':';
+  }
+
   //////////////////////////////////////////////////////////////////////////////
   // getters
 
@@ -136,7 +614,11 @@ public class FaceUri implements Cloneable {
    */
   public String
   getScheme() {
-    return m_scheme;
+    String scheme = m_scheme;
+    if (scheme == null) {
+      m_scheme = scheme = materialize(0, m_schemeEnd, true);
+    }
+    return scheme;
   }
 
   /**
@@ -145,7 +627,11 @@ public class FaceUri implements Cloneable {
    */
   public String
   getHost() {
-    return m_host;
+    String host = m_host;
+    if (host == null) {
+      m_host = host = materialize(m_hostStart, m_hostEnd, false);
+    }
+    return host;
   }
 
   /**
@@ -154,7 +640,20 @@ public class FaceUri implements Cloneable {
    */
   public String
   getPort() {
-    return m_port;
+    String port = m_port;
+    if (port == null) {
+      m_port = port = materialize(m_portStart, m_portEnd, false);
+    }
+    return port;
+  }
+
+  /**
+   * Get port as a number, which is parsed and range-checked once at parse time
+   * @return port number (return -1 when empty)
+   */
+  public int
+  getPortNumber() {
+    return m_portNumber;
   }
 
   /**
@@ -163,101 +662,1709 @@ public class FaceUri implements Cloneable {
    */
   public String
   getPath() {
-    return m_path;
+    String path = m_path;
+    if (path == null) {
+      m_path = path = materialize(m_pathStart, m_source.length(), false);
+    }
+    return path;
   }
 
   /**
    * Convert FaceUri instance to a string
+   * <p>
+   * The string is computed once and cached until FaceUri is parsed again.
+   * <p>
    * @return string represenation of FaceUri
    */
   public String
   toString() {
-    String out;
-    out = m_scheme + "://";
+    String string = m_string;
+    if (string == null) {
+      int length = m_source != null ? m_source.length() + 2 : 32;
+      m_string = string = appendTo(new StringBuilder(length)).toString();
+    }
+    return string;
+  }
+
+  /**
+   * Append string representation of FaceUri to out, without creating intermediate strings
+   * @param out builder to append to, e.g., a reused buffer
+   * @return out
+   */
+  public StringBuilder
+  appendTo(StringBuilder out) {
+    try {
+      appendTo((Appendable)out);
+    }
+    catch (IOException e) {
+      throw new AssertionError(e); // StringBuilder never throws
+    }
+    return out;
+  }
+
+  /**
+   * Append string representation of FaceUri to out, without creating intermediate strings
+   * <p>
+   * Components that have not been converted into strings are appended directly from the
+   * parsed FaceUri.
+   * <p>
+   * @param out Appendable to append to, e.g., a Writer
+   * @throws IOException if out throws IOException
+   */
+  public void
+  appendTo(Appendable out) throws IOException {
+    String string = m_string;
+    if (string != null) {
+      out.append(string);
+      return;
+    }
+
+    appendComponent(out, m_scheme, 0, m_schemeEnd);
+    out.append("://");
     if (m_isV6) {
-      out += "[" + m_host + "]";
+      out.append('[');
+      appendComponent(out, m_host, m_hostStart, m_hostEnd);
+      out.append(']');
     } else {
-      out += m_host;
+      appendComponent(out, m_host, m_hostStart, m_hostEnd);
     }
-    if (!m_port.equals("")) {
-      out += ":" + m_port;
+    if (m_portNumber >= 0) {
+      out.append(':');
+      appendComponent(out, m_port, m_portStart, m_portEnd);
+    }
+    appendComponent(out, m_path, m_pathStart, m_source != null ? m_source.length() : 0);
+  }
+
+  /**
+   * Append component, or source[start, end) if component is not yet materialized
+   */
+  private void
+  appendComponent(Appendable out, String component, int start, int end) throws IOException {
+    if (component != null) {
+      out.append(component);
+    }
+    else {
+      out.append(m_source, start, end);
     }
-    out += m_path;
-    return out;
   }
 
   //////////////////////////////////////////////////////////////////////////////
-  // comparator
+  // socket address
 
   /**
-   * Compare FaceUris
-   * @param rhs FaceUri to compare with
-   * @return true if <pre>this</pre> is equal to <pre>rhs</pre>
+   * Create FaceUri of an endpoint, e.g., the remote endpoint of an accepted connection
+   * <p>
+   * The FaceUri is assembled from the address and port directly, without formatting and parsing
+   * a string, and no resolution is performed.  If an IP canonize provider (e.g., udp or tcp) is
+   * registered for the scheme, the result is in canonical form: the base scheme is replaced with
+   * the scheme of the address family (e.g., udp with udp4 or udp6).
+   * <p>
+   * @param scheme scheme of the FaceUri
+   * @param endpoint resolved socket address, or unresolved socket address with IP address literal
+   * @return FaceUri scheme://address:port
+   * @throws Error if scheme is not valid, does not match address family of the endpoint, or
+   * the endpoint is unresolved and its host is not an IP address literal
    */
-  boolean
-  equals(FaceUri rhs) {
-    return (m_scheme == rhs.m_scheme &&
-      m_host == rhs.m_host &&
-      m_isV6 == rhs.m_isV6 &&
-      m_port == rhs.m_port &&
-      m_path == rhs.m_path);
+  static public FaceUri
+  fromSocketAddress(String scheme, InetSocketAddress endpoint) throws Error {
+    InetAddress address = endpoint.getAddress();
+    if (address == null) {
+      String literal = endpoint.getHostString();
+      if (!InetAddresses.isInetAddress(literal)) {
+        throw new Error("Unresolved socket address: " + literal);
+      }
+      address = InetAddresses.forString(literal);
+    }
+
+    byte[] bytes = address.getAddress();
+    boolean isV6 = bytes.length == 16;
+    String host;
+    if (isV6) {
+      host = InetLiterals.appendIpv6(new StringBuilder(39), getLong(bytes, 0), getLong(bytes, 8)).toString();
+    }
+    else {
+      host = InetLiterals.appendIpv4(new StringBuilder(15), getLong(bytes, 0) >>> 32).toString();
+    }
+
+    CanonizeProvider provider = s_registry.m_providers.get(scheme);
+    if (provider instanceof IpHostCanonizeProvider) {
+      IpHostCanonizeProvider ipProvider = (IpHostCanonizeProvider)provider;
+      String familyScheme = isV6 ? ipProvider.m_v6Scheme : ipProvider.m_v4Scheme;
+      if (!scheme.equals(familyScheme) && !scheme.equals(ipProvider.m_baseScheme)) {
+        throw new Error("Scheme " + scheme + " does not match address " + host);
+      }
+      scheme = familyScheme;
+    }
+    else if (!isValidScheme(scheme)) {
+      throw new Error("Invalid scheme: " + scheme);
+    }
+
+    int port = endpoint.getPort();
+    FaceUri uri = new FaceUri(scheme, host, isV6, String.valueOf(port), port, "");
+    if (provider instanceof IpHostCanonizeProvider && ((IpHostCanonizeProvider)provider).checkAddress(address)) {
+      uri.setCanonical(provider);
+    }
+    return uri;
   }
 
-  //////////////////////////////////////////////////////////////////////////////
-  // canonical FaceUri
+  /**
+   * Get socket address of this FaceUri, e.g., to open a socket
+   * <p>
+   * IP address literals are converted without resolution; host names are returned as unresolved
+   * socket addresses, so this method never blocks.  The result is cached until this FaceUri is
+   * parsed again.
+   * <p>
+   * @return socket address, or null if this FaceUri has no host or no port
+   */
+  public InetSocketAddress
+  toInetSocketAddress() {
+    InetSocketAddress endpoint = m_socketAddress;
+    if (endpoint == null) {
+      if (m_portNumber < 0 || m_addressKind == ADDRESS_NONE) {
+        return null;
+      }
+      InetAddress address = getLiteralAddress();
+      endpoint = address != null ? new InetSocketAddress(address, m_portNumber) :
+                                   InetSocketAddress.createUnresolved(getHost(), m_portNumber);
+      m_socketAddress = endpoint;
+    }
+    return endpoint;
+  }
 
   /**
-   * Check whether FaceUri of the scheme can be canonized
-   * @param scheme scheme to check
-   * @return true if FaceUri supports canonization for the scheme
+   * @return 8 bytes starting at offset as big-endian long; missing bytes are zeros
+   */
+  private static long
+  getLong(byte[] bytes, int offset) {
+    long value = 0;
+    for (int i = 0; i < 8; ++i) {
+      value = value << 8 | (offset + i < bytes.length ? bytes[offset + i] & 0xFF : 0);
+    }
+    return value;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  // comparator
+
+  /**
+   * Compare FaceUris
+   * @param rhs FaceUri to compare with
+   * @return true if <pre>this</pre> is equal to <pre>rhs</pre>
+   */
+  public boolean
+  equals(FaceUri rhs) {
+    if (this == rhs) {
+      return true;
+    }
+    if (rhs == null) {
+      return false;
+    }
+    if (m_hash != 0 && rhs.m_hash != 0 && m_hash != rhs.m_hash) {
+      return false;
+    }
+    return (m_isV6 == rhs.m_isV6 &&
+      getScheme().equals(rhs.getScheme()) &&
+      getHost().equals(rhs.getHost()) &&
+      m_portNumber == rhs.m_portNumber && getPortLength() == rhs.getPortLength() &&
+      getPath().equals(rhs.getPath()));
+  }
+
+  @Override
+  public boolean
+  equals(Object rhs) {
+    return rhs instanceof FaceUri && equals((FaceUri)rhs);
+  }
+
+  /**
+   * Get hash code, which is computed once and cached until FaceUri is modified
+   */
+  @Override
+  public int
+  hashCode() {
+    int hash = m_hash;
+    if (hash == 0) {
+      hash = getScheme().hashCode();
+      hash = 31 * hash + getHost().hashCode();
+      hash = 31 * hash + (m_isV6 ? 1 : 0);
+      hash = 31 * hash + m_portNumber;
+      hash = 31 * hash + getPath().hashCode();
+      if (hash == 0) {
+        hash = 1;
+      }
+      m_hash = hash;
+    }
+    return hash;
+  }
+
+  /**
+   * Get canonical representation of this FaceUri from the weak intern pool
+   * <p>
+   * If an equal FaceUri is already in the pool, the pooled instance is returned.  Otherwise,
+   * this FaceUri is added to the pool and returned.  Interned instances cannot be modified
+   * (parse returns false and leaves them unchanged; use clone() to get a modifiable copy), so
+   * they can be safely shared and compared by reference.
+   * Instances that are no longer referenced outside the pool are garbage collected.
+   * <p>
+   * @return interned FaceUri equal to this FaceUri
+   */
+  public FaceUri
+  intern() {
+    if (m_isInterned) {
+      return this;
+    }
+
+    m_isInterned = true;
+    FaceUri interned = s_internPool.intern(this);
+    if (interned != this) {
+      m_isInterned = false;
+    }
+    return interned;
+  }
+
+  /**
+   * @return true if this FaceUri is an interned instance
+   */
+  public boolean
+  isInterned() {
+    return m_isInterned;
+  }
+
+  @Override
+  protected Object
+  clone() throws CloneNotSupportedException {
+    FaceUri copy = (FaceUri)super.clone();
+    copy.m_isInterned = false;
+    return copy;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  // binary encoding
+
+  /**
+   * Get size of the compact binary encoding of this FaceUri
+   * @return number of bytes that writeTo will write
+   */
+  public int
+  getEncodedSize() {
+    int size = 2; // flags and scheme code
+    if (getSchemeCode(getScheme()) == 0) {
+      size += getEncodedStringSize(getScheme());
+    }
+
+    switch (getEncodedAddressKind()) {
+      case ADDRESS_IPV4:
+        size += 4;
+        break;
+      case ADDRESS_IPV6:
+        size += 16;
+        break;
+      case ADDRESS_HOST:
+        size += getEncodedStringSize(getHost());
+        break;
+      default:
+        break;
+    }
+
+    if (m_portNumber >= 0) {
+      size += hasPortText() ? getEncodedStringSize(getPort()) : getVarIntSize(m_portNumber);
+    }
+    if (!getPath().equals("")) {
+      size += getEncodedStringSize(getPath());
+    }
+    return size;
+  }
+
+  /**
+   * Write compact binary encoding of this FaceUri
+   * <p>
+   * The encoding consists of a flags byte, a scheme code (followed by the scheme when it is not
+   * one of the well-known schemes), the host as a packed 4- or 16-byte address or a
+   * length-prefixed string, a varint port, and an optional length-prefixed path.
+   * <p>
+   * @param buffer buffer to write to, starting at its current position
+   * @throws BufferOverflowException if there is not enough space remaining in the buffer
+   */
+  public void
+  writeTo(ByteBuffer buffer) throws BufferOverflowException {
+    if (buffer.remaining() < getEncodedSize()) {
+      throw new BufferOverflowException();
+    }
+
+    int addressKind = getEncodedAddressKind();
+
+    int flags = addressKind;
+    if (addressKind == ADDRESS_HOST && m_isV6) {
+      flags |= FLAG_BRACKETED;
+    }
+    if (m_portNumber >= 0) {
+      flags |= hasPortText() ? FLAG_PORT | FLAG_PORT_TEXT : FLAG_PORT;
+    }
+    if (!getPath().equals("")) {
+      flags |= FLAG_PATH;
+    }
+    buffer.put((byte)flags);
+
+    int schemeCode = getSchemeCode(getScheme());
+    buffer.put((byte)schemeCode);
+    if (schemeCode == 0) {
+      writeString(buffer, getScheme());
+    }
+
+    switch (addressKind) {
+      case ADDRESS_IPV4:
+        buffer.putInt((int)m_addressLo);
+        break;
+      case ADDRESS_IPV6:
+        buffer.putLong(m_addressHi);
+        buffer.putLong(m_addressLo);
+        break;
+      case ADDRESS_HOST:
+        writeString(buffer, getHost());
+        break;
+      default:
+        break;
+    }
+
+    if ((flags & FLAG_PORT_TEXT) != 0) {
+      writeString(buffer, getPort());
+    }
+    else if ((flags & FLAG_PORT) != 0) {
+      writeVarInt(buffer, m_portNumber);
+    }
+    if ((flags & FLAG_PATH) != 0) {
+      writeString(buffer, getPath());
+    }
+  }
+
+  /**
+   * Decode FaceUri from its compact binary encoding
+   * <p>
+   * Packed addresses and well-known schemes are converted directly into components, without
+   * parsing the textual URI.  Encoded components are copied once into the same offset-based
+   * representation that parse() creates, so strings are created only when requested.  Works with
+   * heap, direct, and memory-mapped buffers.
+   * <p>
+   * @param buffer buffer to read from, starting at its current position; on success the position
+   *               is advanced past the encoding
+   * @return decoded FaceUri
+   * @throws Error if the encoding is malformed or truncated
+   */
+  static public FaceUri
+  readFrom(ByteBuffer buffer) throws Error {
+    try {
+      int flags = buffer.get() & 0xFF;
+      if ((flags & ~FLAGS_MASK) != 0) {
+        throw new Error("Malformed FaceUri encoding: unknown flags");
+      }
+
+      int schemeCode = buffer.get() & 0xFF;
+      int schemePos = -1;
+      int schemeLength;
+      if (schemeCode == 0) {
+        schemeLength = readVarInt(buffer);
+        schemePos = skip(buffer, schemeLength);
+      }
+      else if (schemeCode < WELL_KNOWN_SCHEMES.length) {
+        schemeLength = WELL_KNOWN_SCHEMES[schemeCode].length();
+      }
+      else {
+        throw new Error("Malformed FaceUri encoding: unknown scheme code");
+      }
+
+      int addressKind = flags & ADDRESS_MASK;
+      boolean isBracketed = addressKind == ADDRESS_IPV6 ||
+                            (addressKind == ADDRESS_HOST && (flags & FLAG_BRACKETED) != 0);
+      long addressHi = 0;
+      long addressLo = 0;
+      StringBuilder address = null;
+      int hostPos = -1;
+      int hostLength = 0;
+      switch (addressKind) {
+        case ADDRESS_IPV4:
+          addressLo = buffer.getInt() & 0xFFFFFFFFL;
+          address = InetLiterals.appendIpv4(new StringBuilder(15), addressLo);
+          hostLength = address.length();
+          break;
+        case ADDRESS_IPV6:
+          addressHi = buffer.getLong();
+          addressLo = buffer.getLong();
+          address = InetLiterals.appendIpv6(new StringBuilder(39), addressHi, addressLo);
+          hostLength = address.length();
+          break;
+        case ADDRESS_HOST:
+          hostLength = readVarInt(buffer);
+          hostPos = skip(buffer, hostLength);
+          break;
+        default:
+          break;
+      }
+
+      boolean hasPort = (flags & (FLAG_PORT | FLAG_PORT_TEXT)) != 0;
+      int portPos = -1;
+      int portLength = 0;
+      int portNumber = -1;
+      if ((flags & FLAG_PORT_TEXT) != 0) {
+        portLength = readVarInt(buffer);
+        portPos = skip(buffer, portLength);
+      }
+      else if (hasPort) {
+        long port = readVarInt(buffer);
+        if (port > MAX_PORT) {
+          throw new Error("Malformed FaceUri encoding: invalid port");
+        }
+        portNumber = (int)port;
+        portLength = getDecimalLength(portNumber);
+      }
+
+      int pathPos = -1;
+      int pathLength = 0;
+      if ((flags & FLAG_PATH) != 0) {
+        pathLength = readVarInt(buffer);
+        pathPos = skip(buffer, pathLength);
+      }
+
+      // assemble scheme://host:port/path once, recording component boundaries
+      byte[] text = new byte[schemeLength + 3 + (isBracketed ? 2 : 0) + hostLength +
+                             (hasPort ? 1 + portLength : 0) + pathLength];
+      ByteBuffer source = buffer.duplicate();
+      int[] ends = new int[6]; // schemeEnd, hostStart, hostEnd, portStart, portEnd, pathStart
+      int pos = schemePos >= 0 ? copyBytes(source, schemePos, text, 0, schemeLength)
+                               : putAscii(WELL_KNOWN_SCHEMES[schemeCode], text, 0);
+      ends[0] = pos;
+      pos = putAscii(isBracketed ? "://[" : "://", text, pos);
+      ends[1] = pos;
+      if (hostPos >= 0) {
+        pos = copyBytes(source, hostPos, text, pos, hostLength);
+      }
+      else if (address != null) {
+        pos = putAscii(address, text, pos);
+      }
+      ends[2] = pos;
+      if (isBracketed) {
+        text[pos++] = ']';
+      }
+      ends[3] = ends[4] = pos;
+      if (hasPort) {
+        text[pos++] = ':';
+        ends[3] = pos;
+        if (portPos >= 0) {
+          pos = copyBytes(source, portPos, text, pos, portLength);
+        }
+        else {
+          pos += portLength;
+          putDecimal(text, pos, portNumber);
+        }
+        ends[4] = pos;
+      }
+      ends[5] = pos;
+      if (pathPos >= 0) {
+        copyBytes(source, pathPos, text, pos, pathLength);
+      }
+
+      CharSequence chars = new AsciiChars(text, 0, text.length);
+      if (!isAscii(ByteBuffer.wrap(text))) {
+        // encoded components are UTF-8, offsets need to be in chars
+        try {
+          chars = Charsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(text)).toString();
+        }
+        catch (CharacterCodingException e) {
+          throw new Error("Malformed FaceUri encoding: invalid UTF-8");
+        }
+        for (int i = 0; i < ends.length; ++i) {
+          ends[i] = getCharOffset(text, ends[i]);
+        }
+      }
+
+      if (schemeCode == 0 && !isValidScheme(chars, 0, ends[0])) {
+        throw new Error("Malformed FaceUri encoding: invalid scheme");
+      }
+      if (addressKind == ADDRESS_HOST && !isValidHost(chars, ends[1], ends[2], isBracketed)) {
+        throw new Error("Malformed FaceUri encoding: invalid host");
+      }
+      if (portPos >= 0) {
+        portNumber = parseOptionalPort(chars, ends[3] - 1, ends[4]);
+        if (portNumber < 0) {
+          throw new Error("Malformed FaceUri encoding: invalid port");
+        }
+      }
+      if (pathPos >= 0 &&
+          (ends[5] == chars.length() || chars.charAt(ends[5]) != '/' || indexOf(chars, '?', ends[5]) >= 0)) {
+        throw new Error("Malformed FaceUri encoding: invalid path");
+      }
+
+      FaceUri uri = new FaceUri();
+      uri.m_source = chars;
+      uri.m_schemeEnd = ends[0];
+      uri.m_schemeCode = schemeCode != 0 ? schemeCode : getSchemeCode(chars, ends[0]);
+      uri.m_scheme = schemeCode != 0 ? WELL_KNOWN_SCHEMES[schemeCode] : null;
+      uri.m_isV6 = isBracketed;
+      uri.m_hostStart = ends[1];
+      uri.m_hostEnd = ends[2];
+      uri.m_host = null;
+      if (addressKind == ADDRESS_HOST) {
+        uri.decodeAddress(chars, ends[1], ends[2]);
+      }
+      else {
+        uri.m_addressKind = addressKind;
+        uri.m_addressHi = addressHi;
+        uri.m_addressLo = addressLo;
+      }
+      if (hasPort) {
+        uri.m_portStart = ends[3];
+        uri.m_portEnd = ends[4];
+        uri.m_port = null;
+        uri.m_portNumber = portNumber;
+      }
+      uri.m_pathStart = ends[5];
+      uri.m_path = pathPos >= 0 ? null : "";
+      uri.resolveProvider();
+      return uri;
+    }
+    catch (BufferUnderflowException e) {
+      throw new Error("Malformed FaceUri encoding: truncated");
+    }
+  }
+
+  /**
+   * Skip length bytes
+   * @return position of the skipped bytes
+   */
+  private static int
+  skip(ByteBuffer buffer, int length) {
+    if (length > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    int pos = buffer.position();
+    buffer.position(pos + length);
+    return pos;
+  }
+
+  private static int
+  copyBytes(ByteBuffer source, int sourcePos, byte[] bytes, int pos, int length) {
+    source.position(sourcePos);
+    source.get(bytes, pos, length);
+    return pos + length;
+  }
+
+  private static int
+  putAscii(CharSequence chars, byte[] bytes, int pos) {
+    for (int i = 0; i < chars.length(); ++i) {
+      bytes[pos++] = (byte)chars.charAt(i);
+    }
+    return pos;
+  }
+
+  private static int
+  getDecimalLength(int value) {
+    int length = 1;
+    while ((value /= 10) != 0) {
+      ++length;
+    }
+    return length;
+  }
+
+  /**
+   * Write decimal digits of non-negative value into bytes, ending before position end
+   */
+  private static void
+  putDecimal(byte[] bytes, int end, int value) {
+    do {
+      bytes[--end] = (byte)('0' + value % 10);
+      value /= 10;
+    } while (value != 0);
+  }
+
+  /**
+   * @return number of chars encoded by well-formed utf8[0, offset)
+   */
+  private static int
+  getCharOffset(byte[] utf8, int offset) {
+    int nChars = 0;
+    for (int i = 0; i < offset; ++i) {
+      if ((utf8[i] & 0xC0) != 0x80) {
+        nChars += (utf8[i] & 0xF8) == 0xF0 ? 2 : 1; // 4-byte sequence is a surrogate pair
+      }
+    }
+    return nChars;
+  }
+
+  /**
+   * @return kind of host in the binary encoding; IPv6 address is packed only when its text is
+   * in canonical form, so that decoding reproduces the text exactly
+   */
+  private int
+  getEncodedAddressKind() {
+    if (m_addressKind == ADDRESS_IPV6 && !isCanonicalAddressText()) {
+      return ADDRESS_HOST;
+    }
+    return m_addressKind;
+  }
+
+  /**
+   * @return true if host is an IP address literal in canonical text form
+   */
+  boolean
+  isCanonicalAddressText() {
+    switch (m_addressKind) {
+      case ADDRESS_IPV4:
+        return true; // only canonical dotted-quad form is decoded as IPv4 address
+      case ADDRESS_IPV6:
+        return InetLiterals.appendIpv6(new StringBuilder(39), m_addressHi, m_addressLo).toString().equals(getHost());
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * @return kind of host decoded at parse time: ADDRESS_NONE, ADDRESS_IPV4, ADDRESS_IPV6, or ADDRESS_HOST
+   */
+  int
+  getAddressKind() {
+    return m_addressKind;
+  }
+
+  /**
+   * @return upper 64 bits of IPv6 address literal in host
+   */
+  long
+  getAddressHi() {
+    return m_addressHi;
+  }
+
+  /**
+   * @return IPv4 address literal in host, or lower 64 bits of IPv6 address literal
+   */
+  long
+  getAddressLo() {
+    return m_addressLo;
+  }
+
+  /**
+   * @return true if host is enclosed in [ ] (IPv6 address or Ethernet address)
+   */
+  boolean
+  isBracketed() {
+    return m_isV6;
+  }
+
+  /**
+   * @return number of characters in port (0 when empty)
+   */
+  private int
+  getPortLength() {
+    String port = m_port;
+    return port != null ? port.length() : m_portEnd - m_portStart;
+  }
+
+  /**
+   * @return true if port is not in the canonical decimal form of its number (has leading zeros)
+   */
+  private boolean
+  hasPortText() {
+    if (m_portNumber < 0) {
+      return false;
+    }
+    int length = 1;
+    for (int port = m_portNumber; port >= 10; port /= 10) {
+      ++length;
+    }
+    return getPortLength() != length;
+  }
+
+  /**
+   * @return IP address literal in host as decoded at parse time (no resolution is performed),
+   * or null if host is not an IP address literal
+   */
+  InetAddress
+  getLiteralAddress() {
+    byte[] bytes;
+    switch (m_addressKind) {
+      case ADDRESS_IPV4:
+        bytes = new byte[4];
+        for (int i = 0; i < 4; ++i) {
+          bytes[i] = (byte)(m_addressLo >>> (24 - 8 * i));
+        }
+        break;
+      case ADDRESS_IPV6:
+        bytes = new byte[16];
+        for (int i = 0; i < 8; ++i) {
+          bytes[i] = (byte)(m_addressHi >>> (56 - 8 * i));
+          bytes[i + 8] = (byte)(m_addressLo >>> (56 - 8 * i));
+        }
+        break;
+      default:
+        return null;
+    }
+
+    try {
+      return InetAddress.getByAddress(bytes);
+    } catch (UnknownHostException e) {
+      assert false;
+      return null;
+    }
+  }
+
+  /**
+   * @return code of well-known scheme uri[0, end), or 0 if the scheme is not well-known
+   */
+  private static int
+  getSchemeCode(CharSequence uri, int end) {
+    for (int code = 1; code < WELL_KNOWN_SCHEMES.length; ++code) {
+      String scheme = WELL_KNOWN_SCHEMES[code];
+      if (scheme.length() == end && startsWith(uri, 0, scheme)) {
+        return code;
+      }
+    }
+    return 0;
+  }
+
+  private static int
+  getSchemeCode(String scheme) {
+    for (int code = 1; code < WELL_KNOWN_SCHEMES.length; ++code) {
+      if (WELL_KNOWN_SCHEMES[code].equals(scheme)) {
+        return code;
+      }
+    }
+    return 0;
+  }
+
+  static boolean
+  isValidScheme(String scheme) {
+    return isValidScheme(scheme, 0, scheme.length());
+  }
+
+  private static boolean
+  isValidScheme(CharSequence s, int start, int end) {
+    if (start == end) {
+      return false;
+    }
+    for (int i = start; i < end; ++i) {
+      if (!isWordChar(s.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static boolean
+  isValidHost(String host, boolean isBracketed) {
+    return isValidHost(host, 0, host.length(), isBracketed);
+  }
+
+  private static boolean
+  isValidHost(CharSequence s, int start, int end, boolean isBracketed) {
+    if (start == end) {
+      return false;
+    }
+    for (int i = start; i < end; ++i) {
+      char c = s.charAt(i);
+      if (isBracketed ? !isHexDigitOrColon(c) : (c == ':' || c == '/')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int
+  getVarIntSize(long value) {
+    int size = 1;
+    while ((value >>>= 7) != 0) {
+      ++size;
+    }
+    return size;
+  }
+
+  private static void
+  writeVarInt(ByteBuffer buffer, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer.put((byte)((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte)value);
+  }
+
+  private static int
+  readVarInt(ByteBuffer buffer) throws Error {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = buffer.get();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        if (value < 0) {
+          break;
+        }
+        return value;
+      }
+    }
+    throw new Error("Malformed FaceUri encoding: invalid varint");
+  }
+
+  private static int
+  getEncodedStringSize(String value) {
+    int length = getUtf8Length(value);
+    return getVarIntSize(length) + length;
+  }
+
+  private static int
+  getUtf8Length(String value) {
+    int length = value.length();
+    for (int i = 0; i < value.length(); ++i) {
+      if (value.charAt(i) >= 0x80) {
+        return value.getBytes(Charsets.UTF_8).length;
+      }
+    }
+    return length;
+  }
+
+  private static void
+  writeString(ByteBuffer buffer, String value) {
+    byte[] bytes = value.getBytes(Charsets.UTF_8);
+    writeVarInt(buffer, bytes.length);
+    buffer.put(bytes);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  // NDN TLV encoding
+
+  /**
+   * Get number of characters in the string representation, without creating the string
+   */
+  public int
+  getTextLength() {
+    String string = m_string;
+    if (string != null) {
+      return string.length();
+    }
+
+    int length = (m_scheme != null ? m_scheme.length() : m_schemeEnd) + 3;
+    length += m_host != null ? m_host.length() : m_hostEnd - m_hostStart;
+    if (m_isV6) {
+      length += 2;
+    }
+    if (m_portNumber >= 0) {
+      length += 1 + getPortLength();
+    }
+    length += m_path != null ? m_path.length() : m_source.length() - m_pathStart;
+    return length;
+  }
+
+  /**
+   * Get size of NDN TLV element that carries this FaceUri
+   * @param type TLV-TYPE, e.g., TLV_URI or TLV_LOCAL_URI
+   * @return number of bytes that writeTlv will write
+   * @throws IllegalArgumentException if FaceUri contains an unpaired surrogate character
+   */
+  public int
+  getTlvSize(int type) {
+    int length = putText(null);
+    return getVarNumberSize(type) + getVarNumberSize(length) + length;
+  }
+
+  /**
+   * Write NDN TLV element whose TLV-VALUE is the UTF-8 encoded string representation of this FaceUri
+   * <p>
+   * Components are encoded directly into the buffer, without creating intermediate strings or
+   * byte arrays.
+   * <p>
+   * @param buffer buffer to write to, starting at its current position
+   * @param type TLV-TYPE, e.g., TLV_URI or TLV_LOCAL_URI
+   * @throws BufferOverflowException if there is not enough space remaining in the buffer;
+   * nothing is written in this case
+   * @throws IllegalArgumentException if FaceUri contains an unpaired surrogate character, which
+   * cannot be encoded in UTF-8; nothing is written in this case
+   */
+  public void
+  writeTlv(ByteBuffer buffer, int type) throws BufferOverflowException {
+    if (type < 0) {
+      throw new IllegalArgumentException("TLV-TYPE must not be negative");
+    }
+    int length = putText(null);
+    if (buffer.remaining() < getVarNumberSize(type) + getVarNumberSize(length) + length) {
+      throw new BufferOverflowException();
+    }
+
+    writeVarNumber(buffer, type);
+    writeVarNumber(buffer, length);
+    putText(buffer);
+  }
+
+  /**
+   * Decode FaceUri from NDN TLV element of the expected type
+   * <p>
+   * ASCII TLV-VALUE is parsed in place (see parse(ByteBuffer)), without creating a string for the
+   * whole URI; other TLV-VALUE is decoded as UTF-8.
+   * <p>
+   * @param buffer buffer to read from, starting at its current position; on success the position
+   *               is advanced past the element, otherwise the position is not changed
+   * @param type expected TLV-TYPE, e.g., TLV_URI or TLV_LOCAL_URI
+   * @return decoded FaceUri
+   * @throws Error if the element has a different type, is truncated, or TLV-VALUE is not a FaceUri
+   */
+  static public FaceUri
+  readTlv(ByteBuffer buffer, int type) throws Error {
+    int start = buffer.position();
+    try {
+      if (readVarNumber(buffer) != type) {
+        throw new Error("Unexpected TLV-TYPE, expecting " + type);
+      }
+      long length = readVarNumber(buffer);
+      if (length < 0 || length > buffer.remaining()) {
+        throw new Error("Truncated TLV element");
+      }
+
+      ByteBuffer value = buffer.duplicate();
+      value.limit(value.position() + (int)length);
+
+      FaceUri uri = new FaceUri();
+      boolean isParsed;
+      if (!isAscii(value)) {
+        try {
+          isParsed = uri.parse(Charsets.UTF_8.newDecoder().decode(value).toString());
+        }
+        catch (CharacterCodingException e) {
+          throw new Error("Malformed UTF-8 in TLV element");
+        }
+      }
+      else if (buffer.hasArray()) {
+        isParsed = uri.parse(buffer.array(), buffer.arrayOffset() + buffer.position(), (int)length);
+      }
+      else {
+        isParsed = uri.parse(value);
+      }
+      if (!isParsed) {
+        throw new Error("Malformed URI in TLV element");
+      }
+
+      buffer.position(buffer.position() + (int)length);
+      return uri;
+    }
+    catch (BufferUnderflowException e) {
+      buffer.position(start);
+      throw new Error("Truncated TLV element");
+    }
+    catch (Error e) {
+      buffer.position(start);
+      throw e;
+    }
+  }
+
+  private static boolean
+  isAscii(ByteBuffer buffer) {
+    for (int i = buffer.position(); i < buffer.limit(); ++i) {
+      if (buffer.get(i) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Write UTF-8 encoded string representation, or only count its bytes if buffer is null
+   * @return number of bytes
+   */
+  private int
+  putText(ByteBuffer buffer) {
+    String string = m_string;
+    if (string != null) {
+      return putChars(buffer, string, 0, string.length());
+    }
+
+    int size = putComponent(buffer, m_scheme, 0, m_schemeEnd);
+    size += putChars(buffer, "://", 0, 3);
+    if (m_isV6) {
+      size += putChars(buffer, "[", 0, 1);
+    }
+    size += putComponent(buffer, m_host, m_hostStart, m_hostEnd);
+    if (m_isV6) {
+      size += putChars(buffer, "]", 0, 1);
+    }
+    if (m_portNumber >= 0) {
+      size += putChars(buffer, ":", 0, 1);
+      size += putComponent(buffer, m_port, m_portStart, m_portEnd);
+    }
+    return size + putComponent(buffer, m_path, m_pathStart, m_source != null ? m_source.length() : 0);
+  }
+
+  /**
+   * Put component, or source[start, end) if component is not yet materialized
+   */
+  private int
+  putComponent(ByteBuffer buffer, String component, int start, int end) {
+    if (component != null) {
+      return putChars(buffer, component, 0, component.length());
+    }
+    else {
+      return putChars(buffer, m_source, start, end);
+    }
+  }
+
+  /**
+   * Write chars[start, end) in UTF-8, or only count the bytes if buffer is null
+   * @return number of bytes
+   * @throws IllegalArgumentException if chars contain an unpaired surrogate
+   */
+  private static int
+  putChars(ByteBuffer buffer, CharSequence chars, int start, int end) {
+    int size = 0;
+    for (int i = start; i < end; ++i) {
+      int c = chars.charAt(i);
+      if (Character.isSurrogate((char)c)) {
+        if (!Character.isHighSurrogate((char)c) || i + 1 >= end || !Character.isLowSurrogate(chars.charAt(i + 1))) {
+          throw new IllegalArgumentException("FaceUri contains unpaired surrogate character");
+        }
+        c = Character.toCodePoint((char)c, chars.charAt(++i));
+      }
+
+      if (c < 0x80) {
+        size += 1;
+        if (buffer != null) {
+          buffer.put((byte)c);
+        }
+      }
+      else if (c < 0x800) {
+        size += 2;
+        if (buffer != null) {
+          buffer.put((byte)(0xC0 | c >> 6)).put((byte)(0x80 | c & 0x3F));
+        }
+      }
+      else if (c < 0x10000) {
+        size += 3;
+        if (buffer != null) {
+          buffer.put((byte)(0xE0 | c >> 12)).put((byte)(0x80 | c >> 6 & 0x3F)).put((byte)(0x80 | c & 0x3F));
+        }
+      }
+      else {
+        size += 4;
+        if (buffer != null) {
+          buffer.put((byte)(0xF0 | c >> 18)).put((byte)(0x80 | c >> 12 & 0x3F))
+                .put((byte)(0x80 | c >> 6 & 0x3F)).put((byte)(0x80 | c & 0x3F));
+        }
+      }
+    }
+    return size;
+  }
+
+  /**
+   * @return size of NDN TLV VAR-NUMBER
+   */
+  private static int
+  getVarNumberSize(long value) {
+    if (value < 253) {
+      return 1;
+    }
+    else if (value <= 0xFFFF) {
+      return 3;
+    }
+    else if (value <= 0xFFFFFFFFL) {
+      return 5;
+    }
+    return 9;
+  }
+
+  /**
+   * Write NDN TLV VAR-NUMBER in network byte order, regardless of buffer.order()
+   */
+  private static void
+  writeVarNumber(ByteBuffer buffer, long value) {
+    if (value < 253) {
+      buffer.put((byte)value);
+    }
+    else if (value <= 0xFFFF) {
+      putBigEndian(buffer.put((byte)253), value, 2);
+    }
+    else if (value <= 0xFFFFFFFFL) {
+      putBigEndian(buffer.put((byte)254), value, 4);
+    }
+    else {
+      putBigEndian(buffer.put((byte)255), value, 8);
+    }
+  }
+
+  private static void
+  putBigEndian(ByteBuffer buffer, long value, int nBytes) {
+    for (int shift = (nBytes - 1) * 8; shift >= 0; shift -= 8) {
+      buffer.put((byte)(value >>> shift));
+    }
+  }
+
+  private static long
+  getBigEndian(ByteBuffer buffer, int nBytes) {
+    long value = 0;
+    for (int i = 0; i < nBytes; ++i) {
+      value = (value << 8) | (buffer.get() & 0xFF);
+    }
+    return value;
+  }
+
+  /**
+   * Read NDN TLV VAR-NUMBER in network byte order, regardless of buffer.order()
+   * @return NDN TLV VAR-NUMBER, or -1 if it does not fit into long
+   */
+  private static long
+  readVarNumber(ByteBuffer buffer) {
+    int first = buffer.get() & 0xFF;
+    switch (first) {
+      case 253:
+        return getBigEndian(buffer, 2);
+      case 254:
+        return getBigEndian(buffer, 4);
+      case 255:
+        long value = getBigEndian(buffer, 8);
+        return value >= 0 ? value : -1;
+      default:
+        return first;
+    }
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  // canonical FaceUri
+
+  /**
+   * Check whether FaceUri of the scheme can be canonized
+   * @param scheme scheme to check
+   * @return true if FaceUri supports canonization for the scheme
+   */
+  static public boolean
+  canCanonize(String scheme) {
+    return s_registry.m_providers.containsKey(scheme);
+  }
+
+  /**
+   * Check whether this FaceUri can be canonized
+   * @return true if a canonize provider is registered for the scheme of this FaceUri
+   */
+  public boolean
+  canCanonize() {
+    return getCanonizeProvider() != null;
+  }
+
+  /**
+   * Determine whether this FaceUri is in canonical form
+   * <p>
+   * No DNS resolution is performed: IP address literals are decoded at parse time, and host
+   * names are never canonical.  The result is memoized until this FaceUri is parsed again,
+   * or canonize providers or their policies change.
+   * <p>
+   * @return true if this FaceUri is in canonical form,
+   * false if this FaceUri is not in canonical form or
+   * or it's undetermined whether this FaceUri is in canonical form
+   */
+  public boolean
+  isCanonical() {
+    if (FaceUriMetrics.s_isEnabled) {
+      FaceUriMetrics.recordIsCanonical(getCanonizeProvider());
+    }
+
+    // result memoized for an earlier binding matches neither marker and is recomputed
+    ProviderBinding binding = getBinding();
+    Object canonical = m_canonical;
+    if (canonical == binding.m_isCanonical) {
+      return true;
+    }
+    if (canonical == binding.m_isNotCanonical || binding.m_provider == null) {
+      return false;
+    }
+
+    boolean isCanonical = binding.m_provider.isCanonical(this);
+    m_canonical = isCanonical ? binding.m_isCanonical : binding.m_isNotCanonical;
+    return isCanonical;
+  }
+
+  /**
+   * Convert this FaceUri to canonical form
+   * <p>
+   * Note that this method can block for DNS resolution process
+   * <p>
+   * @return A new FaceUri in canonical form; this FaceUri is unchanged
+   * @throws CanonizeError when canonization fails
+   */
+  public FaceUri
+  canonize() throws CanonizeError {
+    return canonize(getCanonizeProvider(), -1);
+  }
+
+  /**
+   * Convert this FaceUri to canonical form, waiting at most the specified time
+   * <p>
+   * Blocking steps (e.g., DNS resolution) are performed on a separate pool of threads, so
+   * the calling thread is released when the timeout elapses even if the resolution is still
+   * in progress; the result of such resolution is still cached for subsequent calls.  Threads
+   * are created on demand, so resolutions stuck after their callers timed out do not delay
+   * later calls; the timed-out canonization is cancelled with interruption.
+   * <p>
+   * @param timeout maximum time to wait
+   * @param unit unit of timeout
+   * @return A new FaceUri in canonical form; this FaceUri is unchanged
+   * @throws CanonizeError when canonization fails, with Reason.TIMEOUT if it does not
+   * complete in time
+   */
+  public FaceUri
+  canonize(long timeout, TimeUnit unit) throws CanonizeError {
+    return canonize(getCanonizeProvider(), Math.max(0, unit.toNanos(timeout)));
+  }
+
+  /**
+   * Asynchronously convert this FaceUri to canonical form using the library-managed executor
+   * <p>
+   * The library-managed executor has a bounded number of threads and a bounded queue;
+   * when the queue is full, the returned future fails with CanonizeError.
+   * <p>
+   * @return future that completes with a new FaceUri in canonical form,
+   * or fails with CanonizeError when canonization fails
+   */
+  public ListenableFuture<FaceUri>
+  canonizeAsync() {
+    return canonizeAsync(getDefaultCanonizeExecutor());
+  }
+
+  /**
+   * Asynchronously convert this FaceUri to canonical form
+   * <p>
+   * Any blocking step (e.g., DNS resolution) is performed on <pre>executor</pre>,
+   * never on the calling thread.  Steps that cannot block (IP address literals, cached
+   * resolutions, and resolutions by an AsyncHostResolver) do not use the executor.
+   * <p>
+   * @param executor executor to perform blocking canonization steps
+   * @return future that completes with a new FaceUri in canonical form,
+   * or fails with CanonizeError when canonization fails
+   */
+  public ListenableFuture<FaceUri>
+  canonizeAsync(Executor executor) {
+    final CanonizeProvider provider = getCanonizeProvider();
+    if (provider == null) {
+      CanonizeError error = newUnsupportedError();
+      if (FaceUriMetrics.s_isEnabled) {
+        FaceUriMetrics.recordCanonize(null, System.nanoTime(), error);
+      }
+      return Futures.immediateFailedFuture(error);
+    }
+
+    if (!FaceUriMetrics.s_isEnabled) {
+      return provider.canonizeAsync(this, executor);
+    }
+
+    final long start = System.nanoTime();
+    ListenableFuture<FaceUri> result = provider.canonizeAsync(this, executor);
+    Futures.addCallback(result, new FutureCallback<FaceUri>() {
+      @Override
+      public void
+      onSuccess(FaceUri canonical) {
+        FaceUriMetrics.recordCanonize(provider, start, null);
+      }
+
+      @Override
+      public void
+      onFailure(Throwable t) {
+        FaceUriMetrics.recordCanonize(provider, start, t);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Convert a batch of FaceUris to canonical form
+   * <p>
+   * Equivalent to canonizeAll(uris, DEFAULT_CANONIZE_PARALLELISM)
+   * <p>
+   * @see FaceUri#canonizeAll(Collection, int)
+   */
+  static public List<CanonizeResult>
+  canonizeAll(Collection<FaceUri> uris) throws InterruptedException {
+    return canonizeAll(uris, DEFAULT_CANONIZE_PARALLELISM);
+  }
+
+  /**
+   * Convert a batch of FaceUris to canonical form
+   * <p>
+   * FaceUris are grouped by canonization provider and host.  Groups are processed in parallel,
+   * while FaceUris within a group are processed sequentially, so each distinct host is resolved
+   * once and the remaining members of the group are served from the provider's resolver cache.
+   * <p>
+   * Note that this method blocks until all FaceUris are processed
+   * <p>
+   * @param uris FaceUris to canonize
+   * @param parallelism maximum number of groups processed at the same time
+   * @return list of results in the same order as <pre>uris</pre>; failure of one FaceUri
+   * does not affect others
+   * @throws InterruptedException if interrupted while waiting for the batch to complete
+   */
+  static public List<CanonizeResult>
+  canonizeAll(Collection<FaceUri> uris, int parallelism) throws InterruptedException {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be positive");
+    }
+
+    final FaceUri[] inputs = uris.toArray(new FaceUri[uris.size()]);
+    final CanonizeResult[] results = new CanonizeResult[inputs.length];
+
+    Map<CanonizeProvider, Map<String, List<Integer>>> groups =
+      new LinkedHashMap<CanonizeProvider, Map<String, List<Integer>>>();
+    for (int i = 0; i < inputs.length; ++i) {
+      CanonizeProvider provider = inputs[i].getCanonizeProvider();
+      if (provider == null) {
+        CanonizeError error = inputs[i].newUnsupportedError();
+        if (FaceUriMetrics.s_isEnabled) {
+          FaceUriMetrics.recordCanonize(null, System.nanoTime(), error);
+        }
+        results[i] = new CanonizeResult(inputs[i], null, error);
+        continue;
+      }
+
+      Map<String, List<Integer>> hosts = groups.get(provider);
+      if (hosts == null) {
+        hosts = new LinkedHashMap<String, List<Integer>>();
+        groups.put(provider, hosts);
+      }
+      List<Integer> members = hosts.get(inputs[i].getHost());
+      if (members == null) {
+        members = new ArrayList<Integer>();
+        hosts.put(inputs[i].getHost(), members);
+      }
+      members.add(i);
+    }
+
+    List<Runnable> tasks = new ArrayList<Runnable>();
+    for (Map.Entry<CanonizeProvider, Map<String, List<Integer>>> providerGroup : groups.entrySet()) {
+      final CanonizeProvider provider = providerGroup.getKey();
+      for (final List<Integer> members : providerGroup.getValue().values()) {
+        tasks.add(new Runnable() {
+          @Override
+          public void
+          run() {
+            for (int i : members) {
+              try {
+                results[i] = new CanonizeResult(inputs[i], inputs[i].canonize(provider, -1), null);
+              } catch (CanonizeError e) {
+                results[i] = new CanonizeResult(inputs[i], null, e);
+              } catch (RuntimeException e) {
+                // misbehaving provider must not abort the rest of the group
+                results[i] = new CanonizeResult(inputs[i], null,
+                                                new CanonizeError("Cannot canonize " + inputs[i].toString() + ": " + e,
+                                                                  CanonizeError.Reason.OTHER));
+              }
+            }
+          }
+        });
+      }
+    }
+
+    int nThreads = Math.min(parallelism, tasks.size());
+    if (nThreads <= 1) {
+      for (Runnable task : tasks) {
+        task.run();
+      }
+    }
+    else {
+      ExecutorService executor =
+        Executors.newFixedThreadPool(nThreads, new ThreadFactoryBuilder()
+                                                 .setDaemon(true)
+                                                 .setNameFormat("FaceUri-canonizeAll-%d")
+                                                 .build());
+      try {
+        List<Callable<Object>> callables = new ArrayList<Callable<Object>>(tasks.size());
+        for (Runnable task : tasks) {
+          callables.add(Executors.callable(task));
+        }
+        executor.invokeAll(callables);
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+
+    return Arrays.asList(results);
+  }
+
+  /**
+   * Canonize this FaceUri with provider, recording metrics if enabled
+   * @param provider canonize provider of this FaceUri, or null if the scheme is not supported
+   * @param timeoutNanos maximum time to wait, or -1 to canonize on the calling thread without timeout
+   */
+  private FaceUri
+  canonize(CanonizeProvider provider, long timeoutNanos) throws CanonizeError {
+    if (!FaceUriMetrics.s_isEnabled) {
+      return invokeCanonize(provider, timeoutNanos);
+    }
+
+    long start = System.nanoTime();
+    try {
+      FaceUri canonical = invokeCanonize(provider, timeoutNanos);
+      FaceUriMetrics.recordCanonize(provider, start, null);
+      return canonical;
+    } catch (CanonizeError e) {
+      FaceUriMetrics.recordCanonize(provider, start, e);
+      throw e;
+    }
+  }
+
+  private FaceUri
+  invokeCanonize(CanonizeProvider provider, long timeoutNanos) throws CanonizeError {
+    if (provider == null) {
+      throw newUnsupportedError();
+    }
+    if (timeoutNanos < 0) {
+      return provider.canonize(this);
+    }
+
+    ListenableFuture<FaceUri> future;
+    try {
+      future = provider.canonizeAsync(this, TimedCanonizeExecutorHolder.EXECUTOR);
+    } catch (RejectedExecutionException e) {
+      throw newTimeoutError(timeoutNanos);
+    }
+    try {
+      return future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      future.cancel(true);
+      throw newTimeoutError(timeoutNanos);
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new CanonizeError("Interrupted while canonizing " + this.toString(), CanonizeError.Reason.INTERRUPTED);
+    } catch (ExecutionException e) {
+      // no thread was available to start canonization, so it cannot complete in time either
+      if (e.getCause() instanceof RejectedExecutionException ||
+          (e.getCause() instanceof CanonizeError &&
+           ((CanonizeError)e.getCause()).getReason() == CanonizeError.Reason.REJECTED)) {
+        throw newTimeoutError(timeoutNanos);
+      }
+      if (e.getCause() instanceof CanonizeError) {
+        throw (CanonizeError)e.getCause();
+      }
+      throw new CanonizeError("Cannot canonize " + this.toString() + ": " + e.getCause());
+    }
+  }
+
+  private CanonizeError
+  newTimeoutError(long timeoutNanos) {
+    return new CanonizeError("Canonization of " + this.toString() + " timed out after " +
+                             TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms",
+                             CanonizeError.Reason.TIMEOUT);
+  }
+
+  private CanonizeError
+  newUnsupportedError() {
+    return new CanonizeError(this.toString() + " does not support canonization",
+                             CanonizeError.Reason.UNSUPPORTED_SCHEME);
+  }
+
+  /**
+   * Get library-managed executor used by canonizeAsync()
+   * <p>
+   * The executor uses a bounded pool of daemon threads and a bounded queue.
+   */
+  static public Executor
+  getDefaultCanonizeExecutor() {
+    return DefaultCanonizeExecutorHolder.EXECUTOR;
+  }
+
+  private static class DefaultCanonizeExecutorHolder {
+    static final int N_THREADS = 4;
+    static final int QUEUE_SIZE = 1024;
+
+    static final ThreadPoolExecutor EXECUTOR = createExecutor();
+
+    private static ThreadPoolExecutor
+    createExecutor() {
+      ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(N_THREADS, N_THREADS, 60, TimeUnit.SECONDS,
+                               new ArrayBlockingQueue<Runnable>(QUEUE_SIZE),
+                               new ThreadFactoryBuilder()
+                                 .setDaemon(true)
+                                 .setNameFormat("FaceUri-canonize-%d")
+                                 .build());
+      executor.allowCoreThreadTimeOut(true);
+      return executor;
+    }
+  }
+
+  /**
+   * Executor for canonize(timeout, unit): threads are created on demand (up to MAX_THREADS) and
+   * nothing is queued, so blocking steps abandoned after a timeout do not hold up later calls
+   */
+  private static class TimedCanonizeExecutorHolder {
+    static final int MAX_THREADS = 256;
+
+    static final ThreadPoolExecutor EXECUTOR =
+      new ThreadPoolExecutor(0, MAX_THREADS, 60, TimeUnit.SECONDS,
+                             new SynchronousQueue<Runnable>(),
+                             new ThreadFactoryBuilder()
+                               .setDaemon(true)
+                               .setNameFormat("FaceUri-canonize-timed-%d")
+                               .build());
+  }
+
+  /**
+   * @return canonize provider resolved at parse time, or current provider of the scheme if
+   * providers were registered or unregistered after parsing
+   */
+  private CanonizeProvider
+  getCanonizeProvider() {
+    return getBinding().m_provider;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  // canonize provider registry
+
+  /**
+   * Register canonize provider for all of its schemes
+   * <p>
+   * Providers previously registered for any of these schemes are replaced.  Registration is
+   * copy-on-write: threads that concurrently canonize FaceUris are never blocked and use either
+   * the old or the new set of providers.
+   * <p>
+   * Providers listed in META-INF/services/net.named_data.jndn_xx.util.FaceUri$CanonizeProvider
+   * are registered automatically (after the built-in udp, tcp, ether, and dev providers) when FaceUri
+   * class is initialized.
+   * <p>
+   * @param provider provider to register
+   * @throws IllegalArgumentException if provider has no schemes or a scheme is not valid
+   */
+  static public void
+  registerCanonizeProvider(CanonizeProvider provider) {
+    Set<String> schemes = provider.getSchemes();
+    if (schemes.isEmpty()) {
+      throw new IllegalArgumentException("CanonizeProvider must have at least one scheme");
+    }
+    for (String scheme : schemes) {
+      if (!isValidScheme(scheme)) {
+        throw new IllegalArgumentException("Invalid scheme: " + scheme);
+      }
+    }
+
+    synchronized (s_registryLock) {
+      Map<String, CanonizeProvider> providers = new HashMap<String, CanonizeProvider>(s_registry.m_providers);
+      for (String scheme : schemes) {
+        providers.put(scheme, provider);
+      }
+      s_registry = new ProviderRegistry(providers);
+    }
+  }
+
+  /**
+   * Unregister canonize provider from all schemes it is registered for
+   * @param provider provider to unregister
+   * @return true if provider was registered for at least one scheme
+   */
+  static public boolean
+  unregisterCanonizeProvider(CanonizeProvider provider) {
+    synchronized (s_registryLock) {
+      Map<String, CanonizeProvider> providers = new HashMap<String, CanonizeProvider>(s_registry.m_providers);
+      if (!providers.values().removeAll(Collections.singleton(provider))) {
+        return false;
+      }
+      s_registry = new ProviderRegistry(providers);
+      return true;
+    }
+  }
+
+  /**
+   * Discard memoized results of isCanonical() of all FaceUris, e.g., after a provider's
+   * policy is changed
+   */
+  static void
+  invalidateCanonical() {
+    synchronized (s_registryLock) {
+      s_registry = new ProviderRegistry(new HashMap<String, CanonizeProvider>(s_registry.m_providers));
+    }
+  }
+
+  /**
+   * Get canonize provider registered for the scheme
+   * @return provider, or null if scheme does not support canonization
    */
-  static public boolean
-  canCanonize(String scheme) {
-    return s_canonizeProviders.containsKey(scheme);
+  static public CanonizeProvider
+  getCanonizeProvider(String scheme) {
+    return s_registry.m_providers.get(scheme);
   }
 
   /**
-   * Determine whether this FaceUri is in canonical form
-   * <p>
-   * Note that this method can block for DNS resolution process
-   * <p>
-   * @return true if this FaceUri is in canonical form,
-   * false if this FaceUri is not in canonical form or
-   * or it's undetermined whether this FaceUri is in canonical form
+   * Immutable snapshot of registered providers
    */
-  public boolean
-  isCanonical() {
-    CanonizeProvider provider = s_canonizeProviders.get(m_scheme);
-    if (provider == null)
-      return false;
+  private static final class ProviderRegistry {
+    ProviderRegistry(Map<String, CanonizeProvider> providers)
+    {
+      m_providers = Collections.unmodifiableMap(providers);
+      m_none = new ProviderBinding(this, null);
+
+      Map<CanonizeProvider, ProviderBinding> byProvider = new HashMap<CanonizeProvider, ProviderBinding>();
+      Map<String, ProviderBinding> bindings = new HashMap<String, ProviderBinding>();
+      for (Map.Entry<String, CanonizeProvider> entry : providers.entrySet()) {
+        ProviderBinding binding = byProvider.get(entry.getValue());
+        if (binding == null) {
+          binding = new ProviderBinding(this, entry.getValue());
+          byProvider.put(entry.getValue(), binding);
+        }
+        bindings.put(entry.getKey(), binding);
+      }
+      m_bindings = bindings;
+
+      m_wellKnown = new ProviderBinding[WELL_KNOWN_SCHEMES.length];
+      for (int code = 1; code < WELL_KNOWN_SCHEMES.length; ++code) {
+        ProviderBinding binding = bindings.get(WELL_KNOWN_SCHEMES[code]);
+        m_wellKnown[code] = binding != null ? binding : m_none;
+      }
+
+      boolean hasOtherSchemes = false;
+      for (String scheme : providers.keySet()) {
+        hasOtherSchemes |= getSchemeCode(scheme) == 0;
+      }
+      m_hasOtherSchemes = hasOtherSchemes;
+    }
+
+    /**
+     * @return binding for scheme of uri; well-known schemes are dispatched without hashing
+     */
+    ProviderBinding
+    bind(FaceUri uri) {
+      if (uri.m_schemeCode != 0) {
+        return m_wellKnown[uri.m_schemeCode];
+      }
+      if (!m_hasOtherSchemes) {
+        return m_none;
+      }
+      ProviderBinding binding = m_bindings.get(uri.getScheme());
+      return binding != null ? binding : m_none;
+    }
 
-    return provider.isCanonical(this);
+    final Map<String, CanonizeProvider> m_providers;
+    private final Map<String, ProviderBinding> m_bindings;
+    private final ProviderBinding[] m_wellKnown; ///< indexed by well-known scheme code
+    private final ProviderBinding m_none; ///< binding for schemes without provider
+    private final boolean m_hasOtherSchemes;
   }
 
   /**
-   * Convert this FaceUri to canonical form
-   * <p>
-   * Note that this method can block for DNS resolution process
+   * Provider of a scheme in a particular registry, preallocated so that binding does not allocate
    * <p>
-   * @return A new FaceUri in canonical form; this FaceUri is unchanged
-   * @throws CanonizeError when canonization fails
+   * Memoized isCanonical() result is one of the binding's markers, so a single reference write
+   * publishes it, and a result memoized under an older registry is never mistaken as current.
    */
-  public FaceUri
-  canonize() throws CanonizeError {
-    CanonizeProvider provider = s_canonizeProviders.get(m_scheme);
-    if (provider == null) {
-      throw new CanonizeError(this.toString() + " does not support canonization");
+  private static final class ProviderBinding {
+    ProviderBinding(ProviderRegistry registry, CanonizeProvider provider)
+    {
+      m_registry = registry;
+      m_provider = provider;
     }
 
-    return provider.canonize(this);
+    final ProviderRegistry m_registry;
+    final CanonizeProvider m_provider;
+    final Object m_isCanonical = new Object();
+    final Object m_isNotCanonical = new Object();
   }
 
   //////////////////////////////////////////////////////////////////////////////
 
   /**
    * Interface that provides FaceUri canonization functionality for a group of schemes
+   * <p>
+   * Implementations must be thread-safe.  To be loaded through ServiceLoader, an implementation
+   * must have a public no-argument constructor.  Such implementations are created while FaceUri
+   * class is being initialized, after the built-in providers are registered; the constructor may
+   * use FaceUri, including registerCanonizeProvider().
+   * <p>
+   * @see FaceUri#registerCanonizeProvider(CanonizeProvider)
    */
-  private interface CanonizeProvider {
+  public interface CanonizeProvider {
     public Set<String>
     getSchemes();
 
@@ -266,12 +2373,19 @@ public class FaceUri implements Cloneable {
 
     public FaceUri
     canonize(FaceUri faceUri) throws CanonizeError;
+
+    /**
+     * Asynchronously canonize faceUri, performing any blocking operation on executor
+     * @return future that completes with canonical FaceUri or fails with CanonizeError
+     */
+    public ListenableFuture<FaceUri>
+    canonizeAsync(FaceUri faceUri, Executor executor);
   }
 
   /**
    * Canonizer for IPv4 and IPv6-based schemes
    */
-  private static class IpHostCanonizeProvider implements CanonizeProvider {
+  public static class IpHostCanonizeProvider implements CanonizeProvider {
     public Set<String>
     getSchemes() {
       Set<String> schemes = new HashSet<String>();
@@ -281,119 +2395,299 @@ public class FaceUri implements Cloneable {
       return schemes;
     }
 
+    /**
+     * Check whether faceUri is canonical without any resolution: only IP address literals
+     * of the scheme's family in canonical text form can be canonical
+     */
     public boolean
     isCanonical(FaceUri faceUri) {
-      if (faceUri.getPort().equals("")) {
-        return false;
-      }
-      if (!faceUri.getPath().equals("")) {
+      if (!hasCanonicalForm(faceUri) || !faceUri.isCanonicalAddressText()) {
         return false;
       }
 
-      try {
-        InetAddress addr;
-        if (faceUri.getScheme().equals(m_v4Scheme)) {
-          addr = Inet4Address.getByName(faceUri.getHost());
-        } else if (faceUri.getScheme().equals(m_v6Scheme)) {
-          addr = Inet6Address.getByName(faceUri.getHost());
-        } else {
-          return false;
-        }
-        return InetAddresses.toAddrString(addr).equals(faceUri.getHost()) && this.checkAddress(addr);
-      } catch (UnknownHostException e) {
-        return false;
-      }
+      InetAddress addr = faceUri.getLiteralAddress();
+      Class<? extends InetAddress> family =
+        faceUri.getScheme().equals(m_v4Scheme) ? Inet4Address.class : Inet6Address.class;
+      return family.isInstance(addr) && this.checkAddress(addr);
     }
 
     public FaceUri
     canonize(FaceUri faceUri) throws CanonizeError {
-
-      if (this.isCanonical(faceUri)) {
+      if (isRacing(faceUri, m_happyEyeballs)) {
         try {
-          return (FaceUri)faceUri.clone();
-        }
-        catch (CloneNotSupportedException e) {
-          assert false;
-          return null;
-        }
-      }
-
-      InetAddress addr = null;
-      try {
-        if (faceUri.getScheme().equals(m_v4Scheme)) {
-          for (InetAddress a : InetAddress.getAllByName(faceUri.getHost())) {
-            if (a instanceof Inet4Address) {
-              addr = a;
-              break;
-            }
-          }
-        } else if (faceUri.getScheme().equals(m_v6Scheme)) {
-          for (InetAddress a : InetAddress.getAllByName(faceUri.getHost())) {
-            if (a instanceof Inet6Address) {
-              addr = a;
-              break;
-            }
+          return canonizeAsync(faceUri, MoreExecutors.directExecutor()).get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new CanonizeError("Interrupted while resolving " + faceUri.getHost(), CanonizeError.Reason.INTERRUPTED);
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof CanonizeError) {
+            throw (CanonizeError)e.getCause();
           }
-        } else {
-          addr = InetAddress.getByName(faceUri.getHost());
+          throw new CanonizeError("Cannot canonize " + faceUri.toString() + ": " + e.getCause());
         }
-      } catch (UnknownHostException e) {
-        throw new CanonizeError("Cannot resolve " + faceUri.getHost());
       }
 
-      if (addr == null) {
-        throw new CanonizeError("Could not resolve " + faceUri.getHost() + " for scheme " + faceUri.getScheme());
+      InetAddress literal = faceUri.getLiteralAddress();
+      if (literal != null) {
+        return canonize(faceUri, Collections.singletonList(literal));
       }
 
-      if (!this.checkAddress(addr)) {
-        throw new CanonizeError("Resolved to " + addr.getHostAddress() + ", which is prohibied by the CanonizeProvider");
+      List<InetAddress> addresses;
+      try {
+        addresses = m_resolverCache.resolve(faceUri.getHost());
+      } catch (UnknownHostException e) {
+        throw new CanonizeError("Cannot resolve " + faceUri.getHost(), CanonizeError.Reason.CANNOT_RESOLVE);
       }
+      return canonize(faceUri, addresses);
+    }
 
-      int port = 0;
-      if (faceUri.getPort().equals("")) {
-        port = addr.isMulticastAddress() ? m_defaultMulticastPort : m_defaultUnicastPort;
-      } else {
+    /**
+     * Asynchronously canonize faceUri
+     * <p>
+     * IP address literals and cached host names are canonized on the calling thread.
+     * Otherwise, if the resolver cache is backed by an AsyncHostResolver, resolution does not
+     * occupy any thread; a blocking resolver runs on <pre>executor</pre>.
+     */
+    public ListenableFuture<FaceUri>
+    canonizeAsync(final FaceUri faceUri, Executor executor) {
+      InetAddress literal = faceUri.getLiteralAddress();
+      if (literal != null) {
         try {
-          port = Integer.valueOf(faceUri.getPort());
-        } catch (NumberFormatException e) {
-          throw new CanonizeError("Invalid port number");
+          return Futures.immediateFuture(canonize(faceUri, Collections.singletonList(literal)));
+        } catch (CanonizeError e) {
+          return Futures.immediateFailedFuture(e);
         }
       }
 
-      faceUri = new FaceUri();
-      if (addr instanceof Inet4Address) {
-        faceUri.parse(m_v4Scheme + "://" + InetAddresses.toAddrString(addr) + ":" + String.valueOf(port));
-      } else if (addr instanceof Inet6Address) {
-        faceUri.parse(m_v6Scheme + "://[" + InetAddresses.toAddrString(addr) + "]:" + String.valueOf(port));
-      } else {
-        throw new CanonizeError("Unknown type of address: " + addr.getHostAddress());
+      final SettableFuture<FaceUri> result = SettableFuture.create();
+      String host = faceUri.getHost();
+      HappyEyeballs happyEyeballs = m_happyEyeballs;
+      if (isRacing(faceUri, happyEyeballs)) {
+        ListenableFuture<InetAddress> winner =
+          happyEyeballs.race(m_resolverCache.resolveAsync(host, happyEyeballs.getPreferredFamily(), executor),
+                             m_resolverCache.resolveAsync(host, happyEyeballs.getOtherFamily(), executor),
+                             m_isAcceptable);
+        Futures.addCallback(winner, new FutureCallback<InetAddress>() {
+          @Override
+          public void
+          onSuccess(InetAddress addr) {
+            try {
+              result.set(makeCanonical(faceUri, addr));
+            } catch (CanonizeError e) {
+              result.setException(e);
+            }
+          }
+
+          @Override
+          public void
+          onFailure(Throwable t) {
+            result.setException(toCanonizeError(faceUri, t));
+          }
+        }, MoreExecutors.directExecutor());
+        return result;
       }
 
-      return faceUri;
+      Futures.addCallback(m_resolverCache.resolveAsync(host, executor), new FutureCallback<List<InetAddress>>() {
+        @Override
+        public void
+        onSuccess(List<InetAddress> addresses) {
+          try {
+            result.set(canonize(faceUri, addresses));
+          } catch (CanonizeError e) {
+            result.setException(e);
+          }
+        }
+
+        @Override
+        public void
+        onFailure(Throwable t) {
+          result.setException(toCanonizeError(faceUri, t));
+        }
+      }, MoreExecutors.directExecutor());
+      return result;
+    }
+
+    /**
+     * Enable racing of IPv4 and IPv6 resolution for the base scheme
+     * <p>
+     * When enabled, the first acceptable address according to the family preference is used
+     * for the base scheme, instead of the first resolved address.
+     * <p>
+     * @param happyEyeballs family preference and resolution delay, or null to disable
+     */
+    public void
+    setHappyEyeballs(HappyEyeballs happyEyeballs) {
+      m_happyEyeballs = happyEyeballs;
+    }
+
+    /**
+     * @return family preference for the base scheme, or null if disabled
+     */
+    public HappyEyeballs
+    getHappyEyeballs() {
+      return m_happyEyeballs;
+    }
+
+    /**
+     * Set allow/deny policy enforced by checkAddress
+     * <p>
+     * The policy is replaced atomically: concurrent checks use either the old or the new policy
+     * and are never blocked.  Memoized results of FaceUri.isCanonical() are discarded.
+     * <p>
+     * @param addressPolicy compiled policy, or null to allow all addresses
+     */
+    public void
+    setAddressPolicy(AddressPolicy addressPolicy) {
+      m_addressPolicy = addressPolicy;
+      invalidateCanonical();
+    }
+
+    /**
+     * @return allow/deny policy enforced by checkAddress, or null if all addresses are allowed
+     */
+    public AddressPolicy
+    getAddressPolicy() {
+      return m_addressPolicy;
     }
 
     //////////////////////////////////////////////////////////////////////////////
 
-    protected IpHostCanonizeProvider(String baseScheme, int defaultUnicastPort, int defaultMulticastPort) {
+    protected IpHostCanonizeProvider(String baseScheme, int defaultUnicastPort, int defaultMulticastPort,
+                                     ResolverCache resolverCache) {
       m_baseScheme = baseScheme;
       m_v4Scheme = baseScheme + "4";
       m_v6Scheme = baseScheme + "6";
       m_defaultUnicastPort = defaultUnicastPort;
       m_defaultMulticastPort = defaultMulticastPort;
+      m_resolverCache = resolverCache;
+    }
+
+    protected IpHostCanonizeProvider(String baseScheme, ResolverCache resolverCache) {
+      this(baseScheme, 6363, 56363, resolverCache);
     }
 
     protected IpHostCanonizeProvider(String baseScheme) {
-      this(baseScheme, 6363, 56363);
+      this(baseScheme, new ResolverCache());
+    }
+
+    /**
+     * @return cache used to resolve host names
+     */
+    public ResolverCache
+    getResolverCache() {
+      return m_resolverCache;
     }
 
     /**
      * @return (true, ignored) if the address is allowable;
      * (false,reason) if the address is not allowable.
-     * @brief when overriden in a subclass, check the IP address is allowable
+     * @brief check the IP address against the address policy; when overriden in a subclass,
+     * check the IP address is allowable
      */
     protected boolean
     checkAddress(InetAddress ipAddress) {
-      return true;
+      AddressPolicy addressPolicy = m_addressPolicy;
+      return addressPolicy == null || addressPolicy.isAllowed(ipAddress);
+    }
+
+    /**
+     * @return whether faceUri is canonized by racing IPv4 and IPv6 resolution
+     */
+    private boolean
+    isRacing(FaceUri faceUri, HappyEyeballs happyEyeballs) {
+      return happyEyeballs != null && faceUri.getScheme().equals(m_baseScheme) &&
+             m_resolverCache.getResolver() instanceof AsyncHostResolver &&
+             faceUri.getLiteralAddress() == null;
+    }
+
+    private Throwable
+    toCanonizeError(FaceUri faceUri, Throwable t) {
+      if (t instanceof UnknownHostException) {
+        return new CanonizeError("Cannot resolve " + faceUri.getHost(), CanonizeError.Reason.CANNOT_RESOLVE);
+      }
+      else if (t instanceof RejectedExecutionException) {
+        return new CanonizeError("Canonization of " + faceUri.toString() + " rejected by the executor",
+                                 CanonizeError.Reason.REJECTED);
+      }
+      return t;
+    }
+
+    private boolean
+    hasCanonicalForm(FaceUri faceUri) {
+      return faceUri.getPortNumber() >= 0 && !faceUri.hasPortText() && faceUri.getPath().equals("") &&
+             (faceUri.getScheme().equals(m_v4Scheme) || faceUri.getScheme().equals(m_v6Scheme));
+    }
+
+    /**
+     * Canonize faceUri using already resolved addresses of its host
+     */
+    private FaceUri
+    canonize(FaceUri faceUri, List<InetAddress> addresses) throws CanonizeError {
+      if (isCanonical(faceUri)) {
+        try {
+          return (FaceUri)faceUri.clone();
+        }
+        catch (CloneNotSupportedException e) {
+          assert false;
+          return null;
+        }
+      }
+
+      InetAddress addr = null;
+      if (faceUri.getScheme().equals(m_v4Scheme)) {
+        for (InetAddress a : addresses) {
+          if (a instanceof Inet4Address) {
+            addr = a;
+            break;
+          }
+        }
+      } else if (faceUri.getScheme().equals(m_v6Scheme)) {
+        for (InetAddress a : addresses) {
+          if (a instanceof Inet6Address) {
+            addr = a;
+            break;
+          }
+        }
+      } else {
+        HappyEyeballs happyEyeballs = m_happyEyeballs;
+        addr = happyEyeballs != null ? happyEyeballs.select(addresses, m_isAcceptable) : addresses.get(0);
+      }
+
+      if (addr == null) {
+        throw new CanonizeError("Could not resolve " + faceUri.getHost() + " for scheme " + faceUri.getScheme(),
+                                CanonizeError.Reason.CANNOT_RESOLVE);
+      }
+      return makeCanonical(faceUri, addr);
+    }
+
+    /**
+     * Make canonical FaceUri from the selected address of faceUri's host
+     */
+    private FaceUri
+    makeCanonical(FaceUri faceUri, InetAddress addr) throws CanonizeError {
+      if (!this.checkAddress(addr)) {
+        throw new CanonizeError("Resolved to " + addr.getHostAddress() + ", which is prohibied by the CanonizeProvider",
+                                CanonizeError.Reason.PROHIBITED_ADDRESS);
+      }
+
+      int port = faceUri.getPortNumber();
+      if (port < 0) {
+        port = addr.isMulticastAddress() ? m_defaultMulticastPort : m_defaultUnicastPort;
+      }
+
+      String scheme;
+      if (addr instanceof Inet4Address) {
+        scheme = m_v4Scheme;
+      } else if (addr instanceof Inet6Address) {
+        scheme = m_v6Scheme;
+      } else {
+        throw new CanonizeError("Unknown type of address: " + addr.getHostAddress());
+      }
+
+      FaceUri canonical = new FaceUri(scheme, InetAddresses.toAddrString(addr), addr instanceof Inet6Address,
+                                      String.valueOf(port), port, "");
+      canonical.setCanonical(this);
+      return canonical;
     }
 
     //////////////////////////////////////////////////////////////////////////////
@@ -403,34 +2697,233 @@ public class FaceUri implements Cloneable {
     private String m_v6Scheme = "";
     private int m_defaultUnicastPort = 6363;
     private int m_defaultMulticastPort = 56363;
+    private final ResolverCache m_resolverCache;
+    private volatile HappyEyeballs m_happyEyeballs = null;
+    private volatile AddressPolicy m_addressPolicy = null;
+    private final Predicate<InetAddress> m_isAcceptable = new Predicate<InetAddress>() {
+      @Override
+      public boolean
+      apply(InetAddress addr) {
+        return checkAddress(addr);
+      }
+    };
   }
 
-  private static class UdpCanonizeProvider extends IpHostCanonizeProvider {
+  public static class UdpCanonizeProvider extends IpHostCanonizeProvider {
     public UdpCanonizeProvider() {
       super("udp");
     }
+
+    public UdpCanonizeProvider(ResolverCache resolverCache) {
+      super("udp", resolverCache);
+    }
   }
 
-  private static class TcpCanonizeProvider extends IpHostCanonizeProvider {
+  public static class TcpCanonizeProvider extends IpHostCanonizeProvider {
     public TcpCanonizeProvider() {
       super("tcp");
     }
 
+    public TcpCanonizeProvider(ResolverCache resolverCache) {
+      super("tcp", resolverCache);
+    }
+
     protected boolean
     checkAddress(InetAddress ipAddress) {
-      return !ipAddress.isMulticastAddress();
+      return !ipAddress.isMulticastAddress() && super.checkAddress(ipAddress);
+    }
+  }
+
+  /**
+   * Canonizer for ether scheme
+   * <p>
+   * Canonical form is ether://[xx:xx:xx:xx:xx:xx] with two lowercase hex digits per octet.
+   */
+  public static class EtherCanonizeProvider implements CanonizeProvider {
+    public Set<String>
+    getSchemes() {
+      return Collections.singleton("ether");
+    }
+
+    public boolean
+    isCanonical(FaceUri faceUri) {
+      if (faceUri.getPortNumber() >= 0 || !faceUri.getPath().equals("")) {
+        return false;
+      }
+      long address = parseAddress(faceUri.getHost());
+      return address >= 0 && appendAddress(new StringBuilder(17), address).toString().equals(faceUri.getHost());
+    }
+
+    public FaceUri
+    canonize(FaceUri faceUri) throws CanonizeError {
+      long address = parseAddress(faceUri.getHost());
+      if (address < 0 || faceUri.getPortNumber() >= 0) {
+        throw new CanonizeError("Invalid Ethernet address in " + faceUri.toString(), CanonizeError.Reason.INVALID);
+      }
+
+      FaceUri canonical = new FaceUri("ether", appendAddress(new StringBuilder(17), address).toString(), true, "", -1, "");
+      canonical.setCanonical(this);
+      return canonical;
+    }
+
+    public ListenableFuture<FaceUri>
+    canonizeAsync(FaceUri faceUri, Executor executor) {
+      try {
+        return Futures.immediateFuture(canonize(faceUri));
+      } catch (CanonizeError e) {
+        return Futures.immediateFailedFuture(e);
+      }
+    }
+
+    /**
+     * Parse Ethernet address of six ':'-separated groups of one or two hex digits
+     * @return address packed into the lower 48 bits, or -1 if text is not an Ethernet address
+     */
+    static long
+    parseAddress(String text) {
+      long address = 0;
+      int pos = 0;
+      for (int octet = 0; octet < 6; ++octet) {
+        if (octet > 0) {
+          if (pos >= text.length() || text.charAt(pos) != ':') {
+            return -1;
+          }
+          ++pos;
+        }
+        int value = 0;
+        int start = pos;
+        while (pos < text.length() && pos - start < 2 && Character.digit(text.charAt(pos), 16) >= 0) {
+          value = value * 16 + Character.digit(text.charAt(pos), 16);
+          ++pos;
+        }
+        if (pos == start) {
+          return -1;
+        }
+        address = address << 8 | value;
+      }
+      return pos == text.length() ? address : -1;
+    }
+
+    static StringBuilder
+    appendAddress(StringBuilder out, long address) {
+      for (int shift = 40; shift >= 0; shift -= 8) {
+        int octet = (int)(address >>> shift) & 0xFF;
+        out.append(Character.forDigit(octet >>> 4, 16)).append(Character.forDigit(octet & 0x0F, 16));
+        if (shift > 0) {
+          out.append(':');
+        }
+      }
+      return out;
+    }
+  }
+
+  /**
+   * Canonizer for dev scheme
+   * <p>
+   * Canonical form is dev://ifname, where ifname is a name of a local network interface.
+   * Names are validated against a NetworkInterfaceCache snapshot, so canonization does not
+   * enumerate network interfaces.
+   */
+  public static class DevCanonizeProvider implements CanonizeProvider {
+    public DevCanonizeProvider() {
+      this(new NetworkInterfaceCache());
+    }
+
+    public DevCanonizeProvider(NetworkInterfaceCache interfaces) {
+      m_interfaces = interfaces;
+    }
+
+    public Set<String>
+    getSchemes() {
+      return Collections.singleton("dev");
+    }
+
+    public boolean
+    isCanonical(FaceUri faceUri) {
+      return !faceUri.m_isV6 && faceUri.getPortNumber() < 0 && faceUri.getPath().equals("") &&
+             m_interfaces.contains(faceUri.getHost());
+    }
+
+    public FaceUri
+    canonize(FaceUri faceUri) throws CanonizeError {
+      if (faceUri.m_isV6 || faceUri.getPortNumber() >= 0 || !m_interfaces.contains(faceUri.getHost())) {
+        throw new CanonizeError("Network interface " + faceUri.getHost() + " does not exist",
+                                CanonizeError.Reason.CANNOT_RESOLVE);
+      }
+      if (faceUri.getPath().equals("")) {
+        try {
+          return (FaceUri)faceUri.clone();
+        }
+        catch (CloneNotSupportedException e) {
+          assert false;
+          return null;
+        }
+      }
+      FaceUri canonical = new FaceUri("dev", faceUri.getHost(), false, "", -1, "");
+      canonical.setCanonical(this);
+      return canonical;
+    }
+
+    public ListenableFuture<FaceUri>
+    canonizeAsync(FaceUri faceUri, Executor executor) {
+      try {
+        return Futures.immediateFuture(canonize(faceUri));
+      } catch (CanonizeError e) {
+        return Futures.immediateFailedFuture(e);
+      }
+    }
+
+    public NetworkInterfaceCache
+    getInterfaces() {
+      return m_interfaces;
     }
+
+    private final NetworkInterfaceCache m_interfaces;
   }
 
   //////////////////////////////////////////////////////////////////////////////
 
-  static private Map<String, CanonizeProvider>
+  static private ProviderRegistry
   initCanonizeProviders()
   {
     Map<String, CanonizeProvider> providers = new HashMap<String, CanonizeProvider>();
-    addCanonizeProvider(providers, new TcpCanonizeProvider());
-    addCanonizeProvider(providers, new UdpCanonizeProvider());
-    return providers;
+    ResolverCache resolverCache = new ResolverCache();
+    addCanonizeProvider(providers, new TcpCanonizeProvider(resolverCache));
+    addCanonizeProvider(providers, new UdpCanonizeProvider(resolverCache));
+    addCanonizeProvider(providers, new EtherCanonizeProvider());
+    addCanonizeProvider(providers, new DevCanonizeProvider());
+    return new ProviderRegistry(providers);
+  }
+
+  /**
+   * Register providers listed in META-INF/services, after the built-in providers are in place,
+   * so that a provider's constructor can use the registry (e.g., call registerCanonizeProvider)
+   */
+  static private void
+  loadCanonizeProviders()
+  {
+    Iterator<CanonizeProvider> loaded =
+      ServiceLoader.load(CanonizeProvider.class, FaceUri.class.getClassLoader()).iterator();
+    while (true) {
+      try {
+        if (!loaded.hasNext()) {
+          break;
+        }
+        CanonizeProvider provider = loaded.next();
+        synchronized (s_registryLock) {
+          Map<String, CanonizeProvider> providers = new HashMap<String, CanonizeProvider>(s_registry.m_providers);
+          for (String scheme : provider.getSchemes()) {
+            if (isValidScheme(scheme)) {
+              providers.put(scheme, provider);
+            }
+          }
+          s_registry = new ProviderRegistry(providers);
+        }
+      }
+      catch (ServiceConfigurationError e) {
+        // misconfigured provider is skipped, so it cannot prevent FaceUri from being used
+      }
+    }
   }
 
   private static void
@@ -446,11 +2939,69 @@ public class FaceUri implements Cloneable {
 
   //////////////////////////////////////////////////////////////////////////////
 
+  // components are null until materialized from m_source
   private String m_scheme = "";
   private String m_host = "";
-  boolean m_isV6 = false; ///< whether to add [] around host when writing string
+  private boolean m_isV6 = false; ///< whether to add [] around host when writing string
   private String m_port = "";
+  private int m_portNumber = -1; ///< port parsed at parse time, -1 if there is no port
   private String m_path = "";
 
-  static private final Map<String, CanonizeProvider> s_canonizeProviders = initCanonizeProviders();
+  private CharSequence m_source = null; ///< parsed FaceUri (String or AsciiChars), null if not parsed
+  private int m_schemeEnd = 0;
+  private int m_hostStart = 0;
+  private int m_hostEnd = 0;
+  private int m_portStart = 0;
+  private int m_portEnd = 0;
+  private int m_pathStart = 0;
+  private int m_addressKind = ADDRESS_NONE; ///< kind of host, decoded at parse time
+  private long m_addressHi = 0; ///< upper 64 bits of IPv6 address
+  private long m_addressLo = 0; ///< IPv4 address, or lower 64 bits of IPv6 address
+  private int m_hash = 0; ///< cached hash code, 0 if not yet computed
+  private String m_string = null; ///< cached result of toString(), null if not yet computed
+  private InetSocketAddress m_socketAddress = null; ///< cached result of toInetSocketAddress()
+  private Object m_canonical = null; ///< memoized result of isCanonical(), a marker of m_binding
+  private boolean m_isInterned = false;
+  private int m_schemeCode = 0; ///< code of well-known scheme, 0 if scheme is not well-known
+  private ProviderBinding m_binding = null; ///< provider resolved at parse time, re-bound on registry change
+
+  public static final int DEFAULT_CANONIZE_PARALLELISM = 16;
+
+  /** TLV-TYPE of Uri in ControlParameters and FaceStatus */
+  public static final int TLV_URI = 114;
+  /** TLV-TYPE of LocalUri in ControlParameters and FaceStatus */
+  public static final int TLV_LOCAL_URI = 129;
+
+  /**
+   * Schemes with a single-byte code in the binary encoding; codes are part of the encoding
+   * and must never be changed (new schemes can only be appended)
+   */
+  static private final String[] WELL_KNOWN_SCHEMES = {
+    "", // 0 is reserved for schemes encoded as a string
+    "udp", "udp4", "udp6", "tcp", "tcp4", "tcp6",
+    "ether", "dev", "unix", "fd", "internal", "null",
+    "ws", "wsclient",
+  };
+
+  static private final int MAX_PORT = 0xFFFF;
+  static private final int INVALID_PORT = -2;
+
+  static final int ADDRESS_NONE = 0;
+  static final int ADDRESS_IPV4 = 1;
+  static final int ADDRESS_IPV6 = 2;
+  static final int ADDRESS_HOST = 3;
+  static private final int ADDRESS_MASK = 0x03;
+  static private final int FLAG_BRACKETED = 0x04;
+  static private final int FLAG_PORT = 0x08;
+  static private final int FLAG_PORT_TEXT = 0x10;
+  static private final int FLAG_PATH = 0x20;
+  static private final int FLAGS_MASK = 0x3F;
+
+  static private final Object s_registryLock = new Object();
+  static private volatile ProviderRegistry s_registry = initCanonizeProviders();
+  static private final Interner<FaceUri> s_internPool = Interners.newWeakInterner();
+
+  static {
+    loadCanonizeProviders(); // must be last, providers may use any part of FaceUri
+  }
 }
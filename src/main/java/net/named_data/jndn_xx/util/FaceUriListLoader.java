@@ -0,0 +1,425 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Bulk loader of face lists: text files with one FaceUri per line
+ * <p>
+ * The file is memory-mapped, split into chunks on line boundaries, and the chunks are parsed in
+ * parallel on a fork-join pool.  Parsed FaceUris and line-numbered errors are streamed to a
+ * callback either in file order or in completion order.  Callback methods are never called
+ * concurrently, so the callback does not need to be thread-safe.
+ * <p>
+ * Leading and trailing whitespace (including '\r' of CRLF line endings) is ignored.  Empty lines
+ * and lines starting with '#' are skipped, but still counted for line numbers.
+ */
+public class FaceUriListLoader {
+  public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+  public static final int MAX_LINE_LENGTH = 1 << 16;
+
+  /**
+   * Receiver of loading results
+   */
+  public interface Callback {
+    /**
+     * Called for each successfully parsed line
+     * @param lineNumber 1-based line number
+     * @param uri parsed FaceUri
+     */
+    public void
+    onFaceUri(long lineNumber, FaceUri uri);
+
+    /**
+     * Called for each line that cannot be parsed
+     */
+    public void
+    onError(ParseError error);
+  }
+
+  /**
+   * Description of a line that cannot be parsed
+   */
+  public static class ParseError {
+    ParseError(long lineNumber, String line, String reason) {
+      m_lineNumber = lineNumber;
+      m_line = line;
+      m_reason = reason;
+    }
+
+    /**
+     * @return 1-based line number
+     */
+    public long
+    getLineNumber() {
+      return m_lineNumber;
+    }
+
+    /**
+     * @return content of the line (without surrounding whitespace)
+     */
+    public String
+    getLine() {
+      return m_line;
+    }
+
+    /**
+     * @return reason why the line cannot be parsed
+     */
+    public String
+    getReason() {
+      return m_reason;
+    }
+
+    @Override
+    public String
+    toString() {
+      return "line " + m_lineNumber + ": " + m_reason + ": " + m_line;
+    }
+
+    private final long m_lineNumber;
+    private final String m_line;
+    private final String m_reason;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Create loader that uses shared fork-join pool and default chunk size
+   */
+  public FaceUriListLoader()
+  {
+    this(DefaultPoolHolder.POOL, DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Create loader
+   * @param pool fork-join pool to parse chunks
+   * @param chunkSize approximate number of bytes in a chunk
+   */
+  public FaceUriListLoader(ForkJoinPool pool, int chunkSize)
+  {
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("Chunk size must be positive");
+    }
+    m_pool = pool;
+    m_chunkSize = chunkSize;
+  }
+
+  /**
+   * Load face list
+   * <p>
+   * Note that this method blocks until the whole file is processed
+   * <p>
+   * @param file file to load
+   * @param callback receiver of parsed FaceUris and errors
+   * @param isOrdered if true, results are delivered in file order; otherwise, each chunk
+   *                  is delivered as soon as it is parsed
+   * @return number of successfully parsed FaceUris
+   * @throws IOException if the file cannot be read
+   */
+  public long
+  load(Path file, Callback callback, boolean isOrdered) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      int nChunks = (int)Math.max(1, (size + m_chunkSize - 1) / m_chunkSize);
+      Load load = new Load(channel, size, nChunks, callback, isOrdered);
+
+      try {
+        if (!isOrdered) {
+          // line numbers of each chunk must be known before any chunk can be delivered
+          m_pool.invoke(new ChunksTask(load, 0, nChunks, true));
+          long base = 0;
+          for (int i = 0; i < nChunks; ++i) {
+            long nLines = load.m_firstLine[i];
+            load.m_firstLine[i] = base;
+            base += nLines;
+          }
+        }
+        m_pool.invoke(new ChunksTask(load, 0, nChunks, false));
+      }
+      catch (ChunkIoException e) {
+        throw e.getCause();
+      }
+      return load.m_nParsed;
+    }
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * State of a single load() call
+   */
+  private static class Load {
+    Load(FileChannel channel, long size, int nChunks, Callback callback, boolean isOrdered) {
+      m_channel = channel;
+      m_size = size;
+      m_callback = callback;
+      m_isOrdered = isOrdered;
+      m_firstLine = new long[nChunks];
+      m_pending = new ChunkResult[nChunks];
+    }
+
+    /**
+     * Map chunk [start, end) together with the byte before it and enough bytes after it to
+     * finish the last line that starts in the chunk
+     */
+    MappedByteBuffer
+    map(long start, long end) throws IOException {
+      long from = Math.max(0, start - 1);
+      long to = Math.min(m_size, end + MAX_LINE_LENGTH);
+      return m_channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+    }
+
+    synchronized void
+    deliver(int chunk, ChunkResult result) {
+      if (!m_isOrdered) {
+        result.deliver(m_firstLine[chunk], this);
+        return;
+      }
+
+      m_pending[chunk] = result;
+      while (m_nextChunk < m_pending.length && m_pending[m_nextChunk] != null) {
+        m_pending[m_nextChunk].deliver(m_nextLine, this);
+        m_nextLine += m_pending[m_nextChunk].m_nLines;
+        m_pending[m_nextChunk] = null;
+        ++m_nextChunk;
+      }
+    }
+
+    final FileChannel m_channel;
+    final long m_size;
+    final Callback m_callback;
+    final boolean m_isOrdered;
+    final long[] m_firstLine; ///< unordered mode: 0-based number of the first line of each chunk
+    final ChunkResult[] m_pending; ///< ordered mode: parsed chunks waiting for their predecessors
+    int m_nextChunk = 0;
+    long m_nextLine = 0;
+    long m_nParsed = 0;
+  }
+
+  /**
+   * Parsed lines of a chunk, with line numbers relative to the chunk
+   */
+  private static class ChunkResult {
+    void
+    addFaceUri(int line, FaceUri uri) {
+      m_entries.add(new Entry(line, uri, null, null));
+    }
+
+    void
+    addError(int line, String text, String reason) {
+      m_entries.add(new Entry(line, null, text, reason));
+    }
+
+    void
+    deliver(long firstLine, Load load) {
+      for (Entry entry : m_entries) {
+        long lineNumber = firstLine + entry.m_line + 1;
+        if (entry.m_uri != null) {
+          ++load.m_nParsed;
+          load.m_callback.onFaceUri(lineNumber, entry.m_uri);
+        }
+        else {
+          load.m_callback.onError(new ParseError(lineNumber, entry.m_text, entry.m_reason));
+        }
+      }
+    }
+
+    private static class Entry {
+      Entry(int line, FaceUri uri, String text, String reason) {
+        m_line = line;
+        m_uri = uri;
+        m_text = text;
+        m_reason = reason;
+      }
+
+      final int m_line;
+      final FaceUri m_uri;
+      final String m_text;
+      final String m_reason;
+    }
+
+    int m_nLines = 0;
+    private final List<Entry> m_entries = new ArrayList<Entry>();
+  }
+
+  private class ChunksTask extends RecursiveAction {
+    ChunksTask(Load load, int from, int to, boolean isCountOnly) {
+      m_load = load;
+      m_from = from;
+      m_to = to;
+      m_isCountOnly = isCountOnly;
+    }
+
+    @Override
+    protected void
+    compute() {
+      if (m_to - m_from > 1) {
+        int middle = (m_from + m_to) >>> 1;
+        invokeAll(new ChunksTask(m_load, m_from, middle, m_isCountOnly),
+                  new ChunksTask(m_load, middle, m_to, m_isCountOnly));
+        return;
+      }
+
+      try {
+        long start = (long)m_from * m_chunkSize;
+        long end = Math.min(m_load.m_size, start + m_chunkSize);
+        if (start >= end) {
+          if (!m_isCountOnly) {
+            m_load.deliver(m_from, new ChunkResult());
+          }
+          return;
+        }
+
+        MappedByteBuffer buffer = m_load.map(start, end);
+        boolean isTruncated = Math.max(0, start - 1) + buffer.limit() < m_load.m_size;
+        ChunkResult result = processChunk(buffer, isTruncated, start, end, m_isCountOnly);
+        if (m_isCountOnly) {
+          m_load.m_firstLine[m_from] = result.m_nLines;
+        }
+        else {
+          m_load.deliver(m_from, result);
+        }
+      }
+      catch (IOException e) {
+        throw new ChunkIoException(e);
+      }
+    }
+
+    private final Load m_load;
+    private final int m_from;
+    private final int m_to;
+    private final boolean m_isCountOnly;
+
+    private static final long serialVersionUID = 1L;
+  }
+
+  /**
+   * Parse (or only count) lines that start in file range [start, end)
+   * @param buffer mapped range that begins at max(0, start - 1)
+   * @param isTruncated whether the mapped range ends before the end of file
+   */
+  private static ChunkResult
+  processChunk(ByteBuffer buffer, boolean isTruncated, long start, long end, boolean isCountOnly) {
+    ChunkResult result = new ChunkResult();
+    int offset = start > 0 ? 1 : 0;
+    int chunkEnd = (int)(end - start) + offset;
+    int limit = buffer.limit();
+
+    // a line starts in the chunk only at the very beginning of the file or after '\n'
+    int pos = offset;
+    if (start > 0 && buffer.get(0) != '\n') {
+      while (pos < chunkEnd && buffer.get(pos) != '\n') {
+        ++pos;
+      }
+      ++pos;
+    }
+
+    FaceUri uri = new FaceUri();
+    ByteBuffer line = buffer.duplicate();
+    while (pos < chunkEnd) {
+      int lineStart = pos;
+      while (pos < limit && buffer.get(pos) != '\n') {
+        ++pos;
+      }
+      int lineEnd = pos;
+      ++pos;
+
+      int lineNo = result.m_nLines++;
+      if (isCountOnly) {
+        continue;
+      }
+      boolean isTooLong = lineEnd == limit && isTruncated;
+
+      while (lineStart < lineEnd && isWhitespace(buffer.get(lineStart))) {
+        ++lineStart;
+      }
+      while (lineEnd > lineStart && isWhitespace(buffer.get(lineEnd - 1))) {
+        --lineEnd;
+      }
+      if (lineStart == lineEnd || buffer.get(lineStart) == '#') {
+        continue;
+      }
+
+      line.limit(lineEnd).position(lineStart);
+      if (isTooLong) {
+        result.addError(lineNo, getString(line), "Line is longer than " + MAX_LINE_LENGTH + " bytes");
+      }
+      else if (uri.parse(line)) {
+        result.addFaceUri(lineNo, uri);
+        uri = new FaceUri();
+      }
+      else {
+        result.addError(lineNo, getString(line), "Malformed URI");
+      }
+    }
+    return result;
+  }
+
+  private static boolean
+  isWhitespace(byte b) {
+    return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+  }
+
+  private static String
+  getString(ByteBuffer line) {
+    byte[] bytes = new byte[line.remaining()];
+    line.duplicate().get(bytes);
+    return new String(bytes, Charsets.ISO_8859_1);
+  }
+
+  private static class ChunkIoException extends RuntimeException {
+    ChunkIoException(IOException cause) {
+      super(cause);
+    }
+
+    @Override
+    public IOException
+    getCause() {
+      return (IOException)super.getCause();
+    }
+
+    private static final long serialVersionUID = 1L;
+  }
+
+  private static class DefaultPoolHolder {
+    static final ForkJoinPool POOL = new ForkJoinPool();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final ForkJoinPool m_pool;
+  private final int m_chunkSize;
+}
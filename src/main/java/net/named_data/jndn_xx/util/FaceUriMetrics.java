@@ -0,0 +1,554 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Optional metrics of FaceUri parsing, canonization, and host resolution
+ * <p>
+ * Metrics are disabled by default.  While disabled, instrumented operations only read
+ * a volatile flag; nothing is timed, counted, or allocated.  While enabled, counts are kept
+ * in striped counters and latencies in log-linear histograms, so recording never blocks.
+ * <p>
+ * Metrics can be read with getSnapshot() or through JMX after registerMBean().
+ */
+public final class FaceUriMetrics {
+  public static final String MBEAN_NAME = "net.named_data.jndn_xx.util:type=FaceUriMetrics";
+
+  private FaceUriMetrics()
+  {
+  }
+
+  public static boolean
+  isEnabled() {
+    return s_isEnabled;
+  }
+
+  /**
+   * Enable or disable recording; recorded values are kept while disabled
+   */
+  public static void
+  setEnabled(boolean isEnabled) {
+    s_isEnabled = isEnabled;
+  }
+
+  /**
+   * Discard all recorded values
+   */
+  public static void
+  reset() {
+    s_parseSuccess.reset();
+    s_parseFailure.reset();
+    s_parseLatency.reset();
+    s_resolveFailure.reset();
+    s_resolveLatency.reset();
+    for (ProviderMetrics metrics : s_providers.values()) {
+      metrics.reset();
+    }
+    for (StripedCounter counter : s_canonizeErrors) {
+      counter.reset();
+    }
+  }
+
+  /**
+   * @return point-in-time copy of all recorded values
+   */
+  public static Snapshot
+  getSnapshot() {
+    Map<String, ProviderSnapshot> providers = new TreeMap<String, ProviderSnapshot>();
+    for (ProviderMetrics metrics : s_providers.values()) {
+      providers.put(metrics.m_name, metrics.snapshot());
+    }
+
+    Map<FaceUri.CanonizeError.Reason, Long> errors =
+      new EnumMap<FaceUri.CanonizeError.Reason, Long>(FaceUri.CanonizeError.Reason.class);
+    for (FaceUri.CanonizeError.Reason reason : FaceUri.CanonizeError.Reason.values()) {
+      errors.put(reason, s_canonizeErrors[reason.ordinal()].sum());
+    }
+
+    return new Snapshot(s_parseSuccess.sum(), s_parseFailure.sum(), s_parseLatency.snapshot(),
+                        s_resolveFailure.sum(), s_resolveLatency.snapshot(), providers, errors);
+  }
+
+  /**
+   * Register FaceUriMetricsMXBean with the platform MBean server under MBEAN_NAME;
+   * does nothing if already registered
+   * @return name of the MBean
+   * @throws JMException if the MBean cannot be registered
+   */
+  public static synchronized ObjectName
+  registerMBean() throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(MBEAN_NAME);
+    if (!server.isRegistered(name)) {
+      server.registerMBean(new MXBean(), name);
+    }
+    return name;
+  }
+
+  /**
+   * Unregister FaceUriMetricsMXBean from the platform MBean server, if registered
+   * @throws JMException if the MBean cannot be unregistered
+   */
+  public static synchronized void
+  unregisterMBean() throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(MBEAN_NAME);
+    if (server.isRegistered(name)) {
+      server.unregisterMBean(name);
+    }
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  // recording (callers check s_isEnabled first)
+
+  static void
+  recordParse(boolean isSuccess, long startNanos) {
+    s_parseLatency.record(System.nanoTime() - startNanos);
+    (isSuccess ? s_parseSuccess : s_parseFailure).increment();
+  }
+
+  static void
+  recordIsCanonical(FaceUri.CanonizeProvider provider) {
+    if (provider != null) {
+      getProviderMetrics(provider).m_isCanonical.increment();
+    }
+  }
+
+  /**
+   * @param provider provider that canonized, or null if the scheme is not supported
+   * @param error failure of canonization, or null on success
+   */
+  static void
+  recordCanonize(FaceUri.CanonizeProvider provider, long startNanos, Throwable error) {
+    if (provider != null) {
+      ProviderMetrics metrics = getProviderMetrics(provider);
+      metrics.m_canonizeLatency.record(System.nanoTime() - startNanos);
+      if (error != null) {
+        metrics.m_canonizeFailure.increment();
+      }
+    }
+    if (error != null) {
+      FaceUri.CanonizeError.Reason reason = error instanceof FaceUri.CanonizeError ?
+        ((FaceUri.CanonizeError)error).getReason() : FaceUri.CanonizeError.Reason.OTHER;
+      s_canonizeErrors[reason.ordinal()].increment();
+    }
+  }
+
+  static void
+  recordResolve(long startNanos, boolean isSuccess) {
+    s_resolveLatency.record(System.nanoTime() - startNanos);
+    if (!isSuccess) {
+      s_resolveFailure.increment();
+    }
+  }
+
+  private static ProviderMetrics
+  getProviderMetrics(FaceUri.CanonizeProvider provider) {
+    ProviderMetrics metrics = s_providers.get(provider);
+    if (metrics == null) {
+      List<String> schemes = new ArrayList<String>(provider.getSchemes());
+      Collections.sort(schemes);
+      StringBuilder name = new StringBuilder();
+      for (String scheme : schemes) {
+        name.append(name.length() > 0 ? "," : "").append(scheme);
+      }
+
+      ProviderMetrics existing = s_providers.putIfAbsent(provider, metrics = new ProviderMetrics(name.toString()));
+      if (existing != null) {
+        metrics = existing;
+      }
+    }
+    return metrics;
+  }
+
+  private static class ProviderMetrics {
+    ProviderMetrics(String name)
+    {
+      m_name = name;
+    }
+
+    ProviderSnapshot
+    snapshot() {
+      return new ProviderSnapshot(m_isCanonical.sum(), m_canonizeFailure.sum(), m_canonizeLatency.snapshot());
+    }
+
+    void
+    reset() {
+      m_isCanonical.reset();
+      m_canonizeFailure.reset();
+      m_canonizeLatency.reset();
+    }
+
+    final String m_name;
+    final StripedCounter m_isCanonical = new StripedCounter();
+    final StripedCounter m_canonizeFailure = new StripedCounter();
+    final LatencyHistogram m_canonizeLatency = new LatencyHistogram();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  // snapshots
+
+  /**
+   * Point-in-time copy of a latency histogram
+   */
+  public static class LatencySnapshot {
+    LatencySnapshot(long[] buckets, long count, long sum)
+    {
+      m_buckets = buckets;
+      m_count = count;
+      m_sum = sum;
+    }
+
+    /**
+     * @return number of recorded latencies
+     */
+    public long
+    getCount() {
+      return m_count;
+    }
+
+    public double
+    getMeanNanos() {
+      return m_count == 0 ? 0 : (double)m_sum / m_count;
+    }
+
+    /**
+     * @return upper bound of the highest non-empty bucket, or 0 if nothing is recorded
+     */
+    public long
+    getMaxNanos() {
+      for (int bucket = m_buckets.length - 1; bucket >= 0; --bucket) {
+        if (m_buckets[bucket] != 0) {
+          return LatencyHistogram.getBucketUpperBound(bucket);
+        }
+      }
+      return 0;
+    }
+
+    /**
+     * @param percentile percentile in range (0, 100]
+     * @return latency at or below which the percentile of recorded latencies fall
+     * (within 12.5%), or 0 if nothing is recorded
+     */
+    public long
+    getPercentileNanos(double percentile) {
+      if (percentile <= 0 || percentile > 100) {
+        throw new IllegalArgumentException("Percentile must be in range (0, 100]");
+      }
+
+      long total = 0;
+      for (long count : m_buckets) {
+        total += count;
+      }
+      long rank = (long)Math.ceil(total * percentile / 100);
+      long seen = 0;
+      for (int bucket = 0; bucket < m_buckets.length; ++bucket) {
+        seen += m_buckets[bucket];
+        if (seen >= rank && seen > 0) {
+          return LatencyHistogram.getBucketUpperBound(bucket);
+        }
+      }
+      return 0;
+    }
+
+    private final long[] m_buckets;
+    private final long m_count;
+    private final long m_sum;
+  }
+
+  /**
+   * Point-in-time copy of metrics of one canonize provider
+   */
+  public static class ProviderSnapshot {
+    ProviderSnapshot(long isCanonicalCount, long canonizeFailureCount, LatencySnapshot canonizeLatency)
+    {
+      m_isCanonicalCount = isCanonicalCount;
+      m_canonizeFailureCount = canonizeFailureCount;
+      m_canonizeLatency = canonizeLatency;
+    }
+
+    public long
+    getIsCanonicalCount() {
+      return m_isCanonicalCount;
+    }
+
+    /**
+     * @return number of canonize and canonizeAsync calls, including failed ones
+     */
+    public long
+    getCanonizeCount() {
+      return m_canonizeLatency.getCount();
+    }
+
+    public long
+    getCanonizeFailureCount() {
+      return m_canonizeFailureCount;
+    }
+
+    public LatencySnapshot
+    getCanonizeLatency() {
+      return m_canonizeLatency;
+    }
+
+    private final long m_isCanonicalCount;
+    private final long m_canonizeFailureCount;
+    private final LatencySnapshot m_canonizeLatency;
+  }
+
+  /**
+   * Point-in-time copy of all metrics
+   */
+  public static class Snapshot {
+    Snapshot(long parseSuccessCount, long parseFailureCount, LatencySnapshot parseLatency,
+             long resolveFailureCount, LatencySnapshot resolveLatency,
+             Map<String, ProviderSnapshot> providers, Map<FaceUri.CanonizeError.Reason, Long> canonizeErrors)
+    {
+      m_parseSuccessCount = parseSuccessCount;
+      m_parseFailureCount = parseFailureCount;
+      m_parseLatency = parseLatency;
+      m_resolveFailureCount = resolveFailureCount;
+      m_resolveLatency = resolveLatency;
+      m_providers = Collections.unmodifiableMap(providers);
+      m_canonizeErrors = Collections.unmodifiableMap(canonizeErrors);
+    }
+
+    public long
+    getParseSuccessCount() {
+      return m_parseSuccessCount;
+    }
+
+    public long
+    getParseFailureCount() {
+      return m_parseFailureCount;
+    }
+
+    public LatencySnapshot
+    getParseLatency() {
+      return m_parseLatency;
+    }
+
+    /**
+     * @return number of host resolutions by resolver caches (misses and background refreshes),
+     * including failed ones
+     */
+    public long
+    getResolveCount() {
+      return m_resolveLatency.getCount();
+    }
+
+    public long
+    getResolveFailureCount() {
+      return m_resolveFailureCount;
+    }
+
+    public LatencySnapshot
+    getResolveLatency() {
+      return m_resolveLatency;
+    }
+
+    /**
+     * @return metrics of canonize providers, keyed by ','-separated sorted schemes of the provider
+     */
+    public Map<String, ProviderSnapshot>
+    getProviders() {
+      return m_providers;
+    }
+
+    /**
+     * @return number of CanonizeErrors by reason
+     */
+    public Map<FaceUri.CanonizeError.Reason, Long>
+    getCanonizeErrors() {
+      return m_canonizeErrors;
+    }
+
+    private final long m_parseSuccessCount;
+    private final long m_parseFailureCount;
+    private final LatencySnapshot m_parseLatency;
+    private final long m_resolveFailureCount;
+    private final LatencySnapshot m_resolveLatency;
+    private final Map<String, ProviderSnapshot> m_providers;
+    private final Map<FaceUri.CanonizeError.Reason, Long> m_canonizeErrors;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static class MXBean implements FaceUriMetricsMXBean {
+    @Override
+    public boolean
+    isEnabled() {
+      return FaceUriMetrics.isEnabled();
+    }
+
+    @Override
+    public void
+    setEnabled(boolean isEnabled) {
+      FaceUriMetrics.setEnabled(isEnabled);
+    }
+
+    @Override
+    public void
+    reset() {
+      FaceUriMetrics.reset();
+    }
+
+    @Override
+    public long
+    getParseSuccessCount() {
+      return s_parseSuccess.sum();
+    }
+
+    @Override
+    public long
+    getParseFailureCount() {
+      return s_parseFailure.sum();
+    }
+
+    @Override
+    public double
+    getParseLatencyMeanNanos() {
+      return s_parseLatency.snapshot().getMeanNanos();
+    }
+
+    @Override
+    public long
+    getParseLatencyP99Nanos() {
+      return s_parseLatency.snapshot().getPercentileNanos(99);
+    }
+
+    @Override
+    public long
+    getResolveCount() {
+      return s_resolveLatency.snapshot().getCount();
+    }
+
+    @Override
+    public long
+    getResolveFailureCount() {
+      return s_resolveFailure.sum();
+    }
+
+    @Override
+    public double
+    getResolveLatencyMeanNanos() {
+      return s_resolveLatency.snapshot().getMeanNanos();
+    }
+
+    @Override
+    public long
+    getResolveLatencyP50Nanos() {
+      return s_resolveLatency.snapshot().getPercentileNanos(50);
+    }
+
+    @Override
+    public long
+    getResolveLatencyP99Nanos() {
+      return s_resolveLatency.snapshot().getPercentileNanos(99);
+    }
+
+    @Override
+    public Map<String, Long>
+    getIsCanonicalCounts() {
+      Map<String, Long> counts = new LinkedHashMap<String, Long>();
+      for (Map.Entry<String, ProviderSnapshot> entry : getSnapshot().getProviders().entrySet()) {
+        counts.put(entry.getKey(), entry.getValue().getIsCanonicalCount());
+      }
+      return counts;
+    }
+
+    @Override
+    public Map<String, Long>
+    getCanonizeCounts() {
+      Map<String, Long> counts = new LinkedHashMap<String, Long>();
+      for (Map.Entry<String, ProviderSnapshot> entry : getSnapshot().getProviders().entrySet()) {
+        counts.put(entry.getKey(), entry.getValue().getCanonizeCount());
+      }
+      return counts;
+    }
+
+    @Override
+    public Map<String, Long>
+    getCanonizeFailureCounts() {
+      Map<String, Long> counts = new LinkedHashMap<String, Long>();
+      for (Map.Entry<String, ProviderSnapshot> entry : getSnapshot().getProviders().entrySet()) {
+        counts.put(entry.getKey(), entry.getValue().getCanonizeFailureCount());
+      }
+      return counts;
+    }
+
+    @Override
+    public Map<String, Long>
+    getCanonizeLatencyP99Nanos() {
+      Map<String, Long> latencies = new LinkedHashMap<String, Long>();
+      for (Map.Entry<String, ProviderSnapshot> entry : getSnapshot().getProviders().entrySet()) {
+        latencies.put(entry.getKey(), entry.getValue().getCanonizeLatency().getPercentileNanos(99));
+      }
+      return latencies;
+    }
+
+    @Override
+    public Map<String, Long>
+    getCanonizeErrorCounts() {
+      Map<String, Long> counts = new LinkedHashMap<String, Long>();
+      for (Map.Entry<FaceUri.CanonizeError.Reason, Long> entry : getSnapshot().getCanonizeErrors().entrySet()) {
+        counts.put(entry.getKey().name(), entry.getValue());
+      }
+      return counts;
+    }
+  }
+
+  private static StripedCounter[]
+  createReasonCounters() {
+    StripedCounter[] counters = new StripedCounter[FaceUri.CanonizeError.Reason.values().length];
+    for (int i = 0; i < counters.length; ++i) {
+      counters[i] = new StripedCounter();
+    }
+    return counters;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  static volatile boolean s_isEnabled = false;
+
+  private static final StripedCounter s_parseSuccess = new StripedCounter();
+  private static final StripedCounter s_parseFailure = new StripedCounter();
+  private static final LatencyHistogram s_parseLatency = new LatencyHistogram();
+  private static final StripedCounter s_resolveFailure = new StripedCounter();
+  private static final LatencyHistogram s_resolveLatency = new LatencyHistogram();
+  private static final ConcurrentMap<FaceUri.CanonizeProvider, ProviderMetrics> s_providers =
+    new ConcurrentHashMap<FaceUri.CanonizeProvider, ProviderMetrics>();
+  private static final StripedCounter[] s_canonizeErrors = createReasonCounters();
+}
@@ -0,0 +1,85 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import java.util.Map;
+
+/**
+ * JMX view of FaceUriMetrics
+ * <p>
+ * Per-provider values are keyed by the provider's schemes (e.g., "udp,udp4,udp6");
+ * CanonizeError counts are keyed by CanonizeError.Reason.
+ *
+ * @see FaceUriMetrics#registerMBean()
+ */
+public interface FaceUriMetricsMXBean {
+  boolean
+  isEnabled();
+
+  void
+  setEnabled(boolean isEnabled);
+
+  void
+  reset();
+
+  long
+  getParseSuccessCount();
+
+  long
+  getParseFailureCount();
+
+  double
+  getParseLatencyMeanNanos();
+
+  long
+  getParseLatencyP99Nanos();
+
+  long
+  getResolveCount();
+
+  long
+  getResolveFailureCount();
+
+  double
+  getResolveLatencyMeanNanos();
+
+  long
+  getResolveLatencyP50Nanos();
+
+  long
+  getResolveLatencyP99Nanos();
+
+  Map<String, Long>
+  getIsCanonicalCounts();
+
+  Map<String, Long>
+  getCanonizeCounts();
+
+  Map<String, Long>
+  getCanonizeFailureCounts();
+
+  Map<String, Long>
+  getCanonizeLatencyP99Nanos();
+
+  Map<String, Long>
+  getCanonizeErrorCounts();
+}
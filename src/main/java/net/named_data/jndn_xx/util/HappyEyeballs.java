@@ -0,0 +1,263 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Predicate;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Address family preference for resolution of base udp/tcp schemes (see RFC 8305, Section 3)
+ * <p>
+ * IPv4 and IPv6 addresses are resolved in parallel.  An acceptable address of the preferred
+ * family is used as soon as it is available.  If the other family answers first, its address
+ * is used only when the preferred family does not produce an acceptable address within the
+ * resolution delay, so a slow or broken family does not delay canonization.
+ * <p>
+ * Racing requires an AsyncHostResolver.  A blocking resolver returns both families at once;
+ * the preference then only selects which of the returned addresses is used.
+ */
+public class HappyEyeballs {
+  /**
+   * Resolution delay recommended by RFC 8305
+   */
+  public static final long DEFAULT_RESOLUTION_DELAY_MS = 50;
+
+  /**
+   * Prefer IPv6 with the default resolution delay
+   */
+  public HappyEyeballs()
+  {
+    this(Inet6Address.class, DEFAULT_RESOLUTION_DELAY_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param preferredFamily Inet4Address.class or Inet6Address.class
+   * @param resolutionDelay head start given to the preferred family
+   * @param unit time unit of resolutionDelay
+   */
+  public HappyEyeballs(Class<? extends InetAddress> preferredFamily, long resolutionDelay, TimeUnit unit)
+  {
+    if (preferredFamily != Inet4Address.class && preferredFamily != Inet6Address.class) {
+      throw new IllegalArgumentException("Preferred family must be Inet4Address or Inet6Address");
+    }
+    if (resolutionDelay < 0) {
+      throw new IllegalArgumentException("Resolution delay must not be negative");
+    }
+
+    m_preferredFamily = preferredFamily;
+    m_resolutionDelay = unit.toNanos(resolutionDelay);
+  }
+
+  public Class<? extends InetAddress>
+  getPreferredFamily() {
+    return m_preferredFamily;
+  }
+
+  public Class<? extends InetAddress>
+  getOtherFamily() {
+    return m_preferredFamily == Inet6Address.class ? Inet4Address.class : Inet6Address.class;
+  }
+
+  public long
+  getResolutionDelay(TimeUnit unit) {
+    return unit.convert(m_resolutionDelay, TimeUnit.NANOSECONDS);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Select first acceptable address, trying the preferred family first
+   * @return selected address, or first address if none is acceptable
+   */
+  InetAddress
+  select(List<InetAddress> addresses, Predicate<InetAddress> isAcceptable) {
+    InetAddress other = null;
+    for (InetAddress address : addresses) {
+      if (isAcceptable.apply(address)) {
+        if (m_preferredFamily.isInstance(address)) {
+          return address;
+        }
+        if (other == null) {
+          other = address;
+        }
+      }
+    }
+    return other != null ? other : addresses.get(0);
+  }
+
+  /**
+   * Race resolutions of the preferred and the other family
+   * @return future that completes with the first acceptable address according to the preference;
+   * if both resolutions complete without an acceptable address, with the first unacceptable
+   * address, or fails with the failure of the preferred family
+   */
+  ListenableFuture<InetAddress>
+  race(ListenableFuture<List<InetAddress>> preferred, ListenableFuture<List<InetAddress>> other,
+       Predicate<InetAddress> isAcceptable) {
+    Race race = new Race(isAcceptable);
+    race.listen(preferred, true);
+    race.listen(other, false);
+    return race.m_result;
+  }
+
+  private class Race {
+    Race(Predicate<InetAddress> isAcceptable)
+    {
+      m_isAcceptable = isAcceptable;
+    }
+
+    void
+    listen(ListenableFuture<List<InetAddress>> future, final boolean isPreferred) {
+      Futures.addCallback(future, new FutureCallback<List<InetAddress>>() {
+        @Override
+        public void
+        onSuccess(List<InetAddress> addresses) {
+          onResolved(isPreferred, addresses, null);
+        }
+
+        @Override
+        public void
+        onFailure(Throwable t) {
+          onResolved(isPreferred, null, t);
+        }
+      }, MoreExecutors.directExecutor());
+    }
+
+    private void
+    onResolved(boolean isPreferred, List<InetAddress> addresses, Throwable error) {
+      InetAddress acceptable = null;
+      if (addresses != null) {
+        for (InetAddress address : addresses) {
+          if (m_isAcceptable.apply(address)) {
+            acceptable = address;
+            break;
+          }
+        }
+      }
+
+      InetAddress winner = null;
+      Throwable failure = null;
+      boolean needsTimer = false;
+      synchronized (this) {
+        if (acceptable == null && addresses != null && !addresses.isEmpty() && m_rejected == null) {
+          m_rejected = addresses.get(0);
+        }
+        if (error != null && (isPreferred || m_error == null)) {
+          m_error = error;
+        }
+
+        if (isPreferred) {
+          m_isPreferredDone = true;
+          winner = acceptable != null ? acceptable : m_otherAcceptable;
+        }
+        else {
+          m_isOtherDone = true;
+          m_otherAcceptable = acceptable;
+          if (acceptable != null) {
+            if (m_isPreferredDone) {
+              winner = acceptable;
+            }
+            else {
+              needsTimer = true;
+            }
+          }
+        }
+
+        if (winner == null && m_isPreferredDone && m_isOtherDone) {
+          winner = m_rejected;
+          failure = m_error != null ? m_error : new UnknownHostException("No address resolved");
+        }
+      }
+
+      if (winner != null) {
+        m_result.set(winner);
+      }
+      else if (failure != null) {
+        m_result.setException(failure);
+      }
+      else if (needsTimer) {
+        if (m_resolutionDelay == 0) {
+          onResolutionDelay();
+          return;
+        }
+        TimerHolder.TIMER.schedule(new Runnable() {
+          @Override
+          public void
+          run() {
+            onResolutionDelay();
+          }
+        }, m_resolutionDelay, TimeUnit.NANOSECONDS);
+      }
+    }
+
+    private void
+    onResolutionDelay() {
+      InetAddress winner;
+      synchronized (this) {
+        winner = m_otherAcceptable;
+      }
+      m_result.set(winner); // no-op if the preferred family already won
+    }
+
+    final SettableFuture<InetAddress> m_result = SettableFuture.create();
+    private final Predicate<InetAddress> m_isAcceptable;
+    private boolean m_isPreferredDone = false;
+    private boolean m_isOtherDone = false;
+    private InetAddress m_otherAcceptable = null;
+    private InetAddress m_rejected = null;
+    private Throwable m_error = null;
+  }
+
+  private static class TimerHolder {
+    static final ScheduledExecutorService TIMER = createTimer();
+
+    private static ScheduledExecutorService
+    createTimer() {
+      ScheduledThreadPoolExecutor timer =
+        new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+                                             .setDaemon(true)
+                                             .setNameFormat("HappyEyeballs-timer-%d")
+                                             .build());
+      timer.setRemoveOnCancelPolicy(true);
+      return timer;
+    }
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final Class<? extends InetAddress> m_preferredFamily;
+  private final long m_resolutionDelay;
+}
@@ -0,0 +1,42 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Interface that resolves host names to IP addresses for FaceUri canonization
+ */
+public interface HostResolver {
+  /**
+   * Resolve host name into IPv4 and/or IPv6 addresses
+   * <p>
+   * Note that this method can block for DNS resolution process
+   * <p>
+   * @param host host name or IP address literal
+   * @return non-empty array of resolved addresses
+   * @throws UnknownHostException if host cannot be resolved
+   */
+  public InetAddress[]
+  resolve(String host) throws UnknownHostException;
+}
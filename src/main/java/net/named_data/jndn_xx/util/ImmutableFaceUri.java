@@ -0,0 +1,364 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable form of FaceUri
+ * <p>
+ * All components are final, so instances can be shared between threads without cloning or
+ * synchronization, even when published through a data race.  New instances are derived with
+ * withScheme, withHost, withPort, or a Builder, which validate and assemble components
+ * directly, without formatting and parsing a string.
+ * <p>
+ * Use toFaceUri() to pass the URI to APIs that accept FaceUri; the returned FaceUri is
+ * assembled from components as well.
+ */
+public final class ImmutableFaceUri {
+  private ImmutableFaceUri(String scheme, String host, boolean isV6, String port, int portNumber, String path)
+  {
+    m_scheme = scheme;
+    m_host = host;
+    m_isV6 = isV6;
+    m_port = port;
+    m_portNumber = portNumber;
+    m_path = path;
+
+    int hash = scheme.hashCode();
+    hash = 31 * hash + host.hashCode();
+    hash = 31 * hash + (isV6 ? 1 : 0);
+    hash = 31 * hash + port.hashCode();
+    hash = 31 * hash + path.hashCode();
+    m_hash = hash;
+  }
+
+  /**
+   * Parse FaceUri string into immutable form
+   * @param uri scheme://host[:port]/path
+   * @throws FaceUri.Error if URI cannot be parsed
+   */
+  public static ImmutableFaceUri
+  parse(String uri) throws FaceUri.Error {
+    return copyOf(new FaceUri(uri));
+  }
+
+  /**
+   * Create immutable copy of a FaceUri
+   */
+  public static ImmutableFaceUri
+  copyOf(FaceUri uri) {
+    return new ImmutableFaceUri(uri.getScheme(), uri.getHost(), uri.isBracketed(), uri.getPort(),
+                                uri.getPortNumber(), uri.getPath());
+  }
+
+  /**
+   * @return builder with no components set
+   */
+  public static Builder
+  builder() {
+    return new Builder();
+  }
+
+  /**
+   * @return builder initialized with components of this FaceUri
+   */
+  public Builder
+  toBuilder() {
+    return new Builder(this);
+  }
+
+  /**
+   * @return mutable FaceUri with the same components, assembled without parsing
+   */
+  public FaceUri
+  toFaceUri() {
+    return new FaceUri(m_scheme, m_host, m_isV6, m_port, m_portNumber, m_path);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  // derivations
+
+  /**
+   * @return FaceUri with scheme replaced, or this FaceUri if the scheme is the same
+   * @throws FaceUri.Error if scheme is not valid
+   */
+  public ImmutableFaceUri
+  withScheme(String scheme) throws FaceUri.Error {
+    if (scheme.equals(m_scheme)) {
+      return this;
+    }
+    return toBuilder().setScheme(scheme).build();
+  }
+
+  /**
+   * @param host host name, IPv4 address, or IPv6 address (without [ ])
+   * @return FaceUri with host replaced, or this FaceUri if the host is the same
+   * @throws FaceUri.Error if host is not valid
+   */
+  public ImmutableFaceUri
+  withHost(String host) throws FaceUri.Error {
+    if (host.equals(m_host)) {
+      return this;
+    }
+    return toBuilder().setHost(host).build();
+  }
+
+  /**
+   * @param port port number, or -1 to remove port
+   * @return FaceUri with port replaced, or this FaceUri if the port is the same
+   * @throws FaceUri.Error if port is out of range, or host is empty
+   */
+  public ImmutableFaceUri
+  withPort(int port) throws FaceUri.Error {
+    if (port == m_portNumber && m_port.equals(port < 0 ? "" : String.valueOf(port))) {
+      return this;
+    }
+    return toBuilder().setPort(port).build();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  // getters
+
+  public String
+  getScheme() {
+    return m_scheme;
+  }
+
+  public String
+  getHost() {
+    return m_host;
+  }
+
+  /**
+   * @return port (return "" when empty)
+   */
+  public String
+  getPort() {
+    return m_port;
+  }
+
+  /**
+   * @return port number (return -1 when empty)
+   */
+  public int
+  getPortNumber() {
+    return m_portNumber;
+  }
+
+  public String
+  getPath() {
+    return m_path;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  // canonical FaceUri
+
+  /**
+   * @see FaceUri#isCanonical()
+   */
+  public boolean
+  isCanonical() {
+    return getFaceUri().isCanonical();
+  }
+
+  /**
+   * Convert this FaceUri to canonical form
+   * <p>
+   * Note that this method can block for DNS resolution process
+   * <p>
+   * @see FaceUri#canonize()
+   */
+  public ImmutableFaceUri
+  canonize() throws FaceUri.CanonizeError {
+    return copyOf(getFaceUri().canonize());
+  }
+
+  /**
+   * Convert this FaceUri to canonical form, waiting at most the specified time
+   * @see FaceUri#canonize(long, TimeUnit)
+   */
+  public ImmutableFaceUri
+  canonize(long timeout, TimeUnit unit) throws FaceUri.CanonizeError {
+    return copyOf(getFaceUri().canonize(timeout, unit));
+  }
+
+  /**
+   * @return FaceUri with the same components, created on first use and never exposed, so that
+   * its memoized isCanonical() result is shared by all calls
+   */
+  private FaceUri
+  getFaceUri() {
+    FaceUri faceUri = m_faceUri;
+    if (faceUri == null) {
+      m_faceUri = faceUri = toFaceUri();
+    }
+    return faceUri;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * The string is computed on first use; concurrent first calls may compute it more than once
+   */
+  @Override
+  public String
+  toString() {
+    String string = m_string;
+    if (string == null) {
+      StringBuilder out = new StringBuilder(m_scheme.length() + m_host.length() + m_path.length() + 11);
+      out.append(m_scheme).append("://");
+      if (m_isV6) {
+        out.append('[').append(m_host).append(']');
+      } else {
+        out.append(m_host);
+      }
+      if (m_portNumber >= 0) {
+        out.append(':').append(m_port);
+      }
+      m_string = string = out.append(m_path).toString();
+    }
+    return string;
+  }
+
+  @Override
+  public boolean
+  equals(Object rhs) {
+    if (this == rhs) {
+      return true;
+    }
+    if (!(rhs instanceof ImmutableFaceUri)) {
+      return false;
+    }
+    ImmutableFaceUri other = (ImmutableFaceUri)rhs;
+    return m_hash == other.m_hash && m_isV6 == other.m_isV6 && m_portNumber == other.m_portNumber &&
+           m_scheme.equals(other.m_scheme) && m_host.equals(other.m_host) && m_port.equals(other.m_port) &&
+           m_path.equals(other.m_path);
+  }
+
+  @Override
+  public int
+  hashCode() {
+    return m_hash;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Builder of ImmutableFaceUri; components are validated by build()
+   */
+  public static final class Builder {
+    private Builder()
+    {
+    }
+
+    private Builder(ImmutableFaceUri uri)
+    {
+      m_scheme = uri.m_scheme;
+      m_host = uri.m_host;
+      m_isV6 = uri.m_isV6;
+      m_port = uri.m_port;
+      m_portNumber = uri.m_portNumber;
+      m_path = uri.m_path;
+    }
+
+    /**
+     * @param scheme non-empty sequence of letters, digits, and '_'
+     */
+    public Builder
+    setScheme(String scheme) {
+      m_scheme = scheme;
+      return this;
+    }
+
+    /**
+     * @param host host name, IPv4 address, IPv6 address or Ethernet address (without [ ]),
+     *             or "" for no host; hosts containing ':' are enclosed in [ ]
+     */
+    public Builder
+    setHost(String host) {
+      m_host = host;
+      m_isV6 = host.indexOf(':') >= 0;
+      return this;
+    }
+
+    /**
+     * @param port port number, or -1 for no port
+     */
+    public Builder
+    setPort(int port) {
+      m_portNumber = port;
+      m_port = port < 0 ? "" : String.valueOf(port);
+      return this;
+    }
+
+    /**
+     * @param path "" or path starting with '/'
+     */
+    public Builder
+    setPath(String path) {
+      m_path = path;
+      return this;
+    }
+
+    /**
+     * @throws FaceUri.Error if any component is not valid, or a port is set without a host
+     */
+    public ImmutableFaceUri
+    build() throws FaceUri.Error {
+      if (!FaceUri.isValidScheme(m_scheme)) {
+        throw new FaceUri.Error("Invalid scheme: " + m_scheme);
+      }
+      if (m_host.isEmpty() ? m_portNumber >= 0 : !FaceUri.isValidHost(m_host, m_isV6)) {
+        throw new FaceUri.Error("Invalid host: " + m_host);
+      }
+      if (m_portNumber < -1 || m_portNumber > MAX_PORT) {
+        throw new FaceUri.Error("Invalid port: " + m_portNumber);
+      }
+      if (!m_path.isEmpty() && (!m_path.startsWith("/") || m_path.indexOf('?') >= 0)) {
+        throw new FaceUri.Error("Invalid path: " + m_path);
+      }
+      return new ImmutableFaceUri(m_scheme, m_host, m_isV6, m_port, m_portNumber, m_path);
+    }
+
+    private String m_scheme = "";
+    private String m_host = "";
+    private boolean m_isV6 = false;
+    private String m_port = "";
+    private int m_portNumber = -1;
+    private String m_path = "";
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final String m_scheme;
+  private final String m_host;
+  private final boolean m_isV6; ///< whether to add [] around host when writing string
+  private final String m_port;
+  private final int m_portNumber;
+  private final String m_path;
+  private final int m_hash;
+  private String m_string = null; ///< cached result of toString(), safe to race (String is immutable)
+  private volatile FaceUri m_faceUri = null; ///< cached internal FaceUri, volatile for safe publication
+
+  private static final int MAX_PORT = 0xFFFF;
+}
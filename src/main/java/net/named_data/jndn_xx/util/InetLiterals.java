@@ -0,0 +1,254 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+/**
+ * Helpers to parse and format IPv4 and IPv6 address literals in packed form
+ * <p>
+ * IPv4 address is packed into the low 32 bits of a long; IPv6 address is packed into two longs
+ * (high and low 64 bits).  Formatting produces the same text as InetAddresses.toAddrString.
+ */
+final class InetLiterals {
+  private InetLiterals()
+  {
+  }
+
+  /**
+   * Parse IPv4 address in dotted-decimal notation without leading zeros
+   * @return address in the low 32 bits, or -1 if s[start, end) is not a valid IPv4 literal
+   */
+  static long
+  parseIpv4(CharSequence s, int start, int end) {
+    if (end - start < 7 || end - start > 15) {
+      return -1;
+    }
+
+    long address = 0;
+    int pos = start;
+    for (int part = 0; part < 4; ++part) {
+      if (part > 0) {
+        if (pos >= end || s.charAt(pos) != '.') {
+          return -1;
+        }
+        ++pos;
+      }
+
+      int partStart = pos;
+      int octet = 0;
+      while (pos < end && pos - partStart < 3 && isDigit(s.charAt(pos))) {
+        octet = octet * 10 + (s.charAt(pos) - '0');
+        ++pos;
+      }
+      if (pos == partStart || octet > 255 || (pos - partStart > 1 && s.charAt(partStart) == '0')) {
+        return -1;
+      }
+      address = (address << 8) | octet;
+    }
+    return pos == end ? address : -1;
+  }
+
+  /**
+   * Parse IPv6 address in any of RFC 4291 text forms (without zone index)
+   * @param address array of at least two elements to store high and low 64 bits of the address
+   * @return true if s[start, end) is a valid IPv6 literal
+   */
+  static boolean
+  parseIpv6(CharSequence s, int start, int end, long[] address) {
+    if (end - start < 2) {
+      return false;
+    }
+
+    long headHi = 0, headLo = 0, tailHi = 0, tailLo = 0;
+    int nHead = 0, nTail = 0;
+    boolean isCompressed = false;
+
+    int pos = start;
+    if (s.charAt(pos) == ':') {
+      if (s.charAt(pos + 1) != ':') {
+        return false;
+      }
+      isCompressed = true;
+      pos += 2;
+    }
+
+    while (pos < end) {
+      int pieceStart = pos;
+      int hextet = 0;
+      while (pos < end && pos - pieceStart < 5 && hexValue(s.charAt(pos)) >= 0) {
+        hextet = (hextet << 4) | hexValue(s.charAt(pos));
+        ++pos;
+      }
+
+      int nPieces = 1;
+      if (pos < end && s.charAt(pos) == '.') {
+        // embedded IPv4 address, must be the last piece
+        long v4 = parseIpv4(s, pieceStart, end);
+        if (v4 < 0) {
+          return false;
+        }
+        hextet = (int)v4;
+        nPieces = 2;
+        pos = end;
+      }
+      else if (pos == pieceStart || pos - pieceStart > 4) {
+        return false;
+      }
+
+      if (nHead + nTail + nPieces > 8) {
+        return false;
+      }
+      int shift = 16 * nPieces;
+      if (isCompressed) {
+        tailHi = (tailHi << shift) | (tailLo >>> (64 - shift));
+        tailLo = (tailLo << shift) | (hextet & ((1L << shift) - 1));
+        nTail += nPieces;
+      }
+      else {
+        headHi = (headHi << shift) | (headLo >>> (64 - shift));
+        headLo = (headLo << shift) | (hextet & ((1L << shift) - 1));
+        nHead += nPieces;
+      }
+
+      if (pos == end) {
+        break;
+      }
+      if (s.charAt(pos) != ':' || pos + 1 == end) {
+        return false;
+      }
+      ++pos;
+      if (s.charAt(pos) == ':') {
+        if (isCompressed) {
+          return false;
+        }
+        isCompressed = true;
+        ++pos;
+      }
+    }
+
+    if (isCompressed ? nHead + nTail > 7 : nHead != 8) {
+      return false;
+    }
+
+    // shift head hextets into place, the compressed zeros are between head and tail
+    int shift = 16 * (8 - nHead);
+    if (shift >= 128) {
+      headHi = 0;
+      headLo = 0;
+    }
+    else if (shift >= 64) {
+      headHi = headLo << (shift - 64);
+      headLo = 0;
+    }
+    else if (shift > 0) {
+      headHi = (headHi << shift) | (headLo >>> (64 - shift));
+      headLo = headLo << shift;
+    }
+    address[0] = headHi | tailHi;
+    address[1] = headLo | tailLo;
+    return true;
+  }
+
+  /**
+   * Format packed IPv4 address in dotted-decimal notation
+   */
+  static StringBuilder
+  appendIpv4(StringBuilder out, long address) {
+    for (int shift = 24; shift >= 0; shift -= 8) {
+      out.append((address >>> shift) & 0xFF);
+      if (shift > 0) {
+        out.append('.');
+      }
+    }
+    return out;
+  }
+
+  /**
+   * Format packed IPv6 address in RFC 5952 canonical form (same as InetAddresses.toAddrString)
+   */
+  static StringBuilder
+  appendIpv6(StringBuilder out, long hi, long lo) {
+    // find the leftmost longest run of at least two zero hextets
+    int bestRunStart = -1;
+    int bestRunLength = 1;
+    int runStart = -1;
+    for (int i = 0; i <= 8; ++i) {
+      if (i < 8 && getHextet(hi, lo, i) == 0) {
+        if (runStart < 0) {
+          runStart = i;
+        }
+      }
+      else if (runStart >= 0) {
+        if (i - runStart > bestRunLength) {
+          bestRunStart = runStart;
+          bestRunLength = i - runStart;
+        }
+        runStart = -1;
+      }
+    }
+
+    boolean lastWasNumber = false;
+    for (int i = 0; i < 8; ++i) {
+      boolean isNumber = bestRunStart < 0 || i < bestRunStart || i >= bestRunStart + bestRunLength;
+      if (isNumber) {
+        if (lastWasNumber) {
+          out.append(':');
+        }
+        out.append(Integer.toHexString(getHextet(hi, lo, i)));
+      }
+      else if (i == 0 || lastWasNumber) {
+        out.append("::");
+      }
+      lastWasNumber = isNumber;
+    }
+    return out;
+  }
+
+  /**
+   * @return i-th (0-based, from the most significant) 16-bit group of the IPv6 address
+   */
+  static int
+  getHextet(long hi, long lo, int i) {
+    long half = i < 4 ? hi : lo;
+    return (int)(half >>> (48 - 16 * (i & 3))) & 0xFFFF;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static boolean
+  isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static int
+  hexValue(char c) {
+    if (c >= '0' && c <= '9') {
+      return c - '0';
+    }
+    if (c >= 'a' && c <= 'f') {
+      return c - 'a' + 10;
+    }
+    if (c >= 'A' && c <= 'F') {
+      return c - 'A' + 10;
+    }
+    return -1;
+  }
+}
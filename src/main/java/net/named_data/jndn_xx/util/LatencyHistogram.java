@@ -0,0 +1,101 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds with log-linear buckets (as in HdrHistogram)
+ * <p>
+ * Each power of two is split into 8 buckets, so a recorded value is reported with
+ * a relative error below 12.5%.  Recording is lock-free and does not allocate.
+ */
+final class LatencyHistogram {
+  void
+  record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    m_buckets.incrementAndGet(getBucket(nanos));
+    m_count.increment();
+    m_sum.add(nanos);
+  }
+
+  FaceUriMetrics.LatencySnapshot
+  snapshot() {
+    long[] counts = new long[N_BUCKETS];
+    for (int i = 0; i < N_BUCKETS; ++i) {
+      counts[i] = m_buckets.get(i);
+    }
+    return new FaceUriMetrics.LatencySnapshot(counts, m_count.sum(), m_sum.sum());
+  }
+
+  void
+  reset() {
+    for (int i = 0; i < N_BUCKETS; ++i) {
+      m_buckets.set(i, 0);
+    }
+    m_count.reset();
+    m_sum.reset();
+  }
+
+  static int
+  getBucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int)value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * @return largest value that falls into the bucket
+   */
+  static long
+  getBucketUpperBound(int bucket) {
+    if (bucket + 1 >= N_BUCKETS) {
+      return Long.MAX_VALUE;
+    }
+    return getBucketLowerBound(bucket + 1) - 1;
+  }
+
+  private static long
+  getBucketLowerBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    long subBucket = bucket % SUB_BUCKETS;
+    return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  static final int N_BUCKETS = getBucket(Long.MAX_VALUE) + 1;
+
+  private final AtomicLongArray m_buckets = new AtomicLongArray(N_BUCKETS);
+  private final StripedCounter m_count = new StripedCounter();
+  private final StripedCounter m_sum = new StripedCounter();
+}
@@ -0,0 +1,180 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import java.io.Closeable;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Snapshot of names of local network interfaces
+ * <p>
+ * Enumerating network interfaces is slow on hosts with many (virtual) interfaces, so the
+ * names are listed once and then refreshed periodically on a background daemon thread.
+ * Lookups only read the current snapshot.  The first lookup takes the initial snapshot
+ * and starts the background refresh.
+ */
+public class NetworkInterfaceCache implements Closeable {
+  public static final long DEFAULT_REFRESH_INTERVAL_MS = 10000;
+
+  public NetworkInterfaceCache()
+  {
+    this(DEFAULT_REFRESH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param refreshInterval interval between background refreshes of the snapshot
+   * @param unit time unit of refreshInterval
+   */
+  public NetworkInterfaceCache(long refreshInterval, TimeUnit unit)
+  {
+    this(new SystemInterfaceNames(), refreshInterval, unit);
+  }
+
+  NetworkInterfaceCache(Supplier<Set<String>> interfaceNames, long refreshInterval, TimeUnit unit)
+  {
+    if (refreshInterval <= 0) {
+      throw new IllegalArgumentException("Refresh interval must be positive");
+    }
+    m_interfaceNames = interfaceNames;
+    m_refreshInterval = unit.toNanos(refreshInterval);
+  }
+
+  /**
+   * @return true if the snapshot has a network interface with the name
+   */
+  public boolean
+  contains(String name) {
+    return getNames().contains(name);
+  }
+
+  /**
+   * @return names of network interfaces in the current snapshot
+   */
+  public Set<String>
+  getNames() {
+    Set<String> names = m_names;
+    if (names == null) {
+      names = start();
+    }
+    return names;
+  }
+
+  /**
+   * Take a new snapshot on the calling thread, e.g., after an interface is known to be added
+   */
+  public void
+  refresh() {
+    m_names = m_interfaceNames.get();
+  }
+
+  /**
+   * Stop background refresh; the last snapshot remains available
+   */
+  @Override
+  public synchronized void
+  close() {
+    m_isClosed = true;
+    if (m_refreshTask != null) {
+      m_refreshTask.cancel(false);
+      m_refreshTask = null;
+    }
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private synchronized Set<String>
+  start() {
+    if (m_names == null) {
+      refresh();
+      if (!m_isClosed) {
+        m_refreshTask = TimerHolder.TIMER.scheduleWithFixedDelay(new Runnable() {
+          @Override
+          public void
+          run() {
+            try {
+              refresh();
+            }
+            catch (RuntimeException e) {
+              // keep the previous snapshot and retry on the next refresh
+            }
+          }
+        }, m_refreshInterval, m_refreshInterval, TimeUnit.NANOSECONDS);
+      }
+    }
+    return m_names;
+  }
+
+  private static class SystemInterfaceNames implements Supplier<Set<String>> {
+    @Override
+    public Set<String>
+    get() {
+      ImmutableSet.Builder<String> names = ImmutableSet.builder();
+      try {
+        Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+        if (interfaces != null) {
+          for (NetworkInterface netif : Collections.list(interfaces)) {
+            names.add(netif.getName());
+          }
+        }
+      }
+      catch (SocketException e) {
+        // no interfaces can be listed
+      }
+      return names.build();
+    }
+  }
+
+  private static class TimerHolder {
+    static final ScheduledExecutorService TIMER = createTimer();
+
+    private static ScheduledExecutorService
+    createTimer() {
+      ScheduledThreadPoolExecutor timer =
+        new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+                                             .setDaemon(true)
+                                             .setNameFormat("NetworkInterfaceCache-refresh-%d")
+                                             .build());
+      timer.setRemoveOnCancelPolicy(true);
+      return timer;
+    }
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final Supplier<Set<String>> m_interfaceNames;
+  private final long m_refreshInterval;
+  private volatile Set<String> m_names = null; ///< current snapshot, null until first lookup
+  private ScheduledFuture<?> m_refreshTask = null;
+  private boolean m_isClosed = false;
+}
@@ -0,0 +1,602 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Non-blocking DNS stub resolver that sends A and AAAA queries to a configured server
+ * <p>
+ * All queries are pipelined over a single DatagramChannel and served by one selector thread,
+ * so the number of in-flight resolutions is not limited by the number of threads.  A query that
+ * is not answered is retransmitted every retransmit interval until the timeout expires.
+ * Responses that do not match an outstanding query (by ID and question) are ignored.
+ * <p>
+ * Results of resolveAsync() are delivered on the selector thread.  The resolver does not
+ * fall back to TCP: addresses in a truncated response are used as is.
+ */
+public class NioDnsResolver implements AsyncHostResolver, Closeable {
+  public static final int DNS_PORT = 53;
+  public static final long DEFAULT_RETRANSMIT_INTERVAL_MS = 1000;
+  public static final long DEFAULT_TIMEOUT_MS = 5000;
+
+  /**
+   * Create resolver with default retransmit interval and timeout
+   * @param server address of the recursive DNS server
+   * @throws IOException if the channel cannot be opened
+   */
+  public NioDnsResolver(InetSocketAddress server) throws IOException
+  {
+    this(server, DEFAULT_RETRANSMIT_INTERVAL_MS, DEFAULT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Create resolver
+   * @param server address of the recursive DNS server
+   * @param retransmitInterval interval between retransmissions of an unanswered query
+   * @param timeout time after which an unanswered query fails
+   * @param unit time unit of retransmitInterval and timeout
+   * @throws IOException if the channel cannot be opened
+   */
+  public NioDnsResolver(InetSocketAddress server, long retransmitInterval, long timeout, TimeUnit unit)
+    throws IOException
+  {
+    if (retransmitInterval <= 0 || timeout <= 0) {
+      throw new IllegalArgumentException("Retransmit interval and timeout must be positive");
+    }
+
+    m_server = server;
+    m_retransmitInterval = unit.toNanos(retransmitInterval);
+    m_timeout = unit.toNanos(timeout);
+
+    m_selector = Selector.open();
+    DatagramChannel channel = null;
+    try {
+      channel = DatagramChannel.open();
+      channel.configureBlocking(false);
+      channel.connect(server);
+      channel.register(m_selector, SelectionKey.OP_READ);
+    } catch (IOException e) {
+      if (channel != null) {
+        channel.close();
+      }
+      m_selector.close();
+      throw e;
+    }
+    m_channel = channel;
+
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void
+      run() {
+        processEvents();
+      }
+    }, "NioDnsResolver-" + server);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * @return address of the DNS server
+   */
+  public InetSocketAddress
+  getServer() {
+    return m_server;
+  }
+
+  /**
+   * Resolve host name, blocking until the result is available or the timeout expires
+   */
+  @Override
+  public InetAddress[]
+  resolve(String host) throws UnknownHostException {
+    try {
+      return resolveAsync(host).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new UnknownHostException(host + ": interrupted");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof UnknownHostException) {
+        throw (UnknownHostException)e.getCause();
+      }
+      throw new UnknownHostException(host + ": " + e.getCause());
+    }
+  }
+
+  /**
+   * Asynchronously resolve host name
+   * <p>
+   * IP address literals are converted without sending any query.  Otherwise, A and AAAA queries
+   * are sent in parallel; the result contains IPv4 addresses followed by IPv6 addresses, and
+   * fails only if neither query returns an address.
+   */
+  @Override
+  public ListenableFuture<InetAddress[]>
+  resolveAsync(String host) {
+    return resolveAsync(host, null);
+  }
+
+  /**
+   * Asynchronously resolve host name into addresses of one family, sending only A or AAAA query
+   */
+  @Override
+  public ListenableFuture<InetAddress[]>
+  resolveAsync(String host, Class<? extends InetAddress> family) {
+    if (InetAddresses.isInetAddress(host)) {
+      InetAddress address = InetAddresses.forString(host);
+      if (family != null && !family.isInstance(address)) {
+        return Futures.immediateFailedFuture(new UnknownHostException(host + ": address of another family"));
+      }
+      return Futures.immediateFuture(new InetAddress[]{ address });
+    }
+
+    int[] types;
+    if (family == null) {
+      types = new int[]{ TYPE_A, TYPE_AAAA };
+    }
+    else if (family == Inet4Address.class) {
+      types = new int[]{ TYPE_A };
+    }
+    else if (family == Inet6Address.class) {
+      types = new int[]{ TYPE_AAAA };
+    }
+    else {
+      throw new IllegalArgumentException("Unsupported address family " + family.getName());
+    }
+
+    Lookup lookup;
+    try {
+      lookup = new Lookup(host, encodeName(host), types);
+    } catch (UnknownHostException e) {
+      return Futures.immediateFailedFuture(e);
+    }
+
+    m_submitted.add(lookup);
+    if (m_isClosed) {
+      failSubmitted();
+    }
+    else {
+      m_selector.wakeup();
+    }
+    return lookup.m_result;
+  }
+
+  /**
+   * Stop the resolver; all outstanding and future resolutions fail with UnknownHostException
+   */
+  @Override
+  public void
+  close() {
+    m_isClosed = true;
+    m_selector.wakeup();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Convert host name into uncompressed wire format (sequence of length-prefixed labels)
+   */
+  static byte[]
+  encodeName(String host) throws UnknownHostException {
+    String name = host.endsWith(".") ? host.substring(0, host.length() - 1) : host;
+    byte[] wire = new byte[name.length() + 2];
+    if (wire.length > MAX_NAME_LENGTH) {
+      throw new UnknownHostException(host + ": name is too long");
+    }
+
+    int lengthPos = 0;
+    for (int i = 0; i <= name.length(); ++i) {
+      char c = i < name.length() ? name.charAt(i) : '.';
+      if (c == '.') {
+        int labelLength = i - lengthPos;
+        if (labelLength < 1 || labelLength > MAX_LABEL_LENGTH) {
+          throw new UnknownHostException(host + ": invalid label length");
+        }
+        wire[lengthPos] = (byte)labelLength;
+        lengthPos = i + 1;
+      }
+      else if (c > ' ' && c < 0x7F) {
+        wire[i + 1] = (byte)c;
+      }
+      else {
+        throw new UnknownHostException(host + ": invalid character in name");
+      }
+    }
+    wire[wire.length - 1] = 0;
+    return wire;
+  }
+
+  private void
+  processEvents() {
+    ByteBuffer buffer = ByteBuffer.allocate(MAX_MESSAGE_SIZE);
+    try {
+      while (!m_isClosed) {
+        long now = System.nanoTime();
+        startSubmitted(now);
+        processTimers(now);
+
+        m_selector.select(getSelectTimeout(now));
+        m_selector.selectedKeys().clear();
+        receive(buffer);
+      }
+    } catch (IOException e) {
+      // selector or channel failure, resolver cannot continue
+    } finally {
+      m_isClosed = true;
+      try {
+        m_channel.close();
+        m_selector.close();
+      } catch (IOException e) {
+        // ignore
+      }
+
+      for (Query query : m_queries) {
+        if (query != null) {
+          complete(query, "resolver closed");
+        }
+      }
+      for (Lookup lookup : m_backlog) {
+        lookup.m_result.setException(new UnknownHostException(lookup.m_host + ": resolver closed"));
+      }
+      failSubmitted();
+    }
+  }
+
+  private void
+  startSubmitted(long now) {
+    Lookup lookup;
+    while ((lookup = m_submitted.poll()) != null) {
+      m_backlog.add(lookup);
+    }
+
+    while (!m_backlog.isEmpty() && m_nOutstanding + m_backlog.peek().m_types.length <= MAX_OUTSTANDING) {
+      lookup = m_backlog.poll();
+      for (int type : lookup.m_types) {
+        startQuery(lookup, type, now);
+      }
+    }
+  }
+
+  private void
+  startQuery(Lookup lookup, int type, long now) {
+    int id = m_random.nextInt(m_queries.length);
+    while (m_queries[id] != null) {
+      id = (id + 1) % m_queries.length;
+    }
+
+    byte[] packet = new byte[HEADER_SIZE + lookup.m_name.length + 4];
+    ByteBuffer.wrap(packet)
+      .putShort((short)id)
+      .putShort((short)FLAG_RD)
+      .putShort((short)1) // QDCOUNT
+      .putShort((short)0)
+      .putShort((short)0)
+      .putShort((short)0)
+      .put(lookup.m_name)
+      .putShort((short)type)
+      .putShort((short)CLASS_IN);
+
+    Query query = new Query(lookup, type, id, packet, now + m_timeout);
+    m_queries[id] = query;
+    ++m_nOutstanding;
+    m_deadlines.add(query);
+    send(query, now);
+  }
+
+  private void
+  send(Query query, long now) {
+    try {
+      m_channel.write(ByteBuffer.wrap(query.m_packet));
+    } catch (IOException e) {
+      // treated as a lost packet: the query will be retransmitted or time out
+    }
+    query.m_nextSendAt = now + m_retransmitInterval;
+    m_retransmits.add(query);
+  }
+
+  /**
+   * Fail queries past their deadline and retransmit queries that are due
+   * <p>
+   * Retransmit interval and timeout are the same for all queries, so both queues are ordered
+   * by due time and only their heads need to be checked.
+   */
+  private void
+  processTimers(long now) {
+    while (!m_deadlines.isEmpty()) {
+      Query query = m_deadlines.peek();
+      if (!query.m_isDone && now - query.m_deadline < 0) {
+        break;
+      }
+      m_deadlines.poll();
+      if (!query.m_isDone) {
+        complete(query, "timed out");
+      }
+    }
+
+    while (!m_retransmits.isEmpty()) {
+      Query query = m_retransmits.peek();
+      if (!query.m_isDone && now - query.m_nextSendAt < 0) {
+        break;
+      }
+      m_retransmits.poll();
+      if (!query.m_isDone) {
+        send(query, now);
+      }
+    }
+  }
+
+  private long
+  getSelectTimeout(long now) {
+    if (!m_submitted.isEmpty()) {
+      return 1;
+    }
+
+    long next = Long.MAX_VALUE;
+    if (!m_deadlines.isEmpty()) {
+      next = m_deadlines.peek().m_deadline - now;
+    }
+    if (!m_retransmits.isEmpty()) {
+      next = Math.min(next, m_retransmits.peek().m_nextSendAt - now);
+    }
+    if (next == Long.MAX_VALUE) {
+      return 0; // no timers, wait for wakeup
+    }
+    return Math.max(1, TimeUnit.NANOSECONDS.toMillis(next) + 1);
+  }
+
+  private void
+  receive(ByteBuffer buffer) throws IOException {
+    while (true) {
+      buffer.clear();
+      int length;
+      try {
+        length = m_channel.read(buffer);
+      } catch (PortUnreachableException e) {
+        continue; // ICMP error for an earlier send, queries will be retransmitted
+      }
+      if (length <= 0) {
+        return;
+      }
+      buffer.flip();
+      processResponse(buffer);
+    }
+  }
+
+  private void
+  processResponse(ByteBuffer response) {
+    if (response.limit() < HEADER_SIZE) {
+      return;
+    }
+
+    Query query = m_queries[response.getShort(0) & 0xFFFF];
+    int flags = response.getShort(2) & 0xFFFF;
+    if (query == null || (flags & FLAG_QR) == 0 || response.getShort(4) != 1) {
+      return;
+    }
+
+    // question section must be echoed back (names are compared case-insensitively)
+    int pos = query.m_packet.length;
+    if (response.limit() < pos) {
+      return;
+    }
+    for (int i = HEADER_SIZE; i < pos; ++i) {
+      if (Character.toLowerCase((char)response.get(i)) != Character.toLowerCase((char)query.m_packet[i])) {
+        return;
+      }
+    }
+
+    int rcode = flags & RCODE_MASK;
+    if (rcode != RCODE_NOERROR) {
+      complete(query, rcode == RCODE_NXDOMAIN ? "host not found" : "server returned error " + rcode);
+      return;
+    }
+
+    int addressLength = query.m_type == TYPE_A ? 4 : 16;
+    List<InetAddress> addresses = new ArrayList<InetAddress>();
+    int nAnswers = response.getShort(6) & 0xFFFF;
+    for (int i = 0; i < nAnswers; ++i) {
+      pos = skipName(response, pos);
+      if (pos < 0 || pos + 10 > response.limit()) {
+        return; // malformed
+      }
+      int type = response.getShort(pos) & 0xFFFF;
+      int rrClass = response.getShort(pos + 2) & 0xFFFF;
+      int rdLength = response.getShort(pos + 8) & 0xFFFF;
+      pos += 10;
+      if (pos + rdLength > response.limit()) {
+        return; // malformed
+      }
+
+      if (type == query.m_type && rrClass == CLASS_IN && rdLength == addressLength) {
+        byte[] address = new byte[addressLength];
+        for (int j = 0; j < addressLength; ++j) {
+          address[j] = response.get(pos + j);
+        }
+        try {
+          addresses.add(InetAddress.getByAddress(query.m_lookup.m_host, address));
+        } catch (UnknownHostException e) {
+          assert false;
+        }
+      }
+      pos += rdLength;
+    }
+
+    query.m_lookup.m_addresses[query.m_type == TYPE_A ? 0 : 1] = addresses;
+    complete(query, addresses.isEmpty() ? "no address records" : null);
+  }
+
+  /**
+   * @return position after the (possibly compressed) name at pos, or -1 if the name is malformed
+   */
+  private static int
+  skipName(ByteBuffer buffer, int pos) {
+    while (pos < buffer.limit()) {
+      int length = buffer.get(pos) & 0xFF;
+      if ((length & 0xC0) == 0xC0) {
+        return pos + 2;
+      }
+      if (length == 0) {
+        return pos + 1;
+      }
+      pos += length + 1;
+    }
+    return -1;
+  }
+
+  private void
+  complete(Query query, String error) {
+    query.m_isDone = true;
+    m_queries[query.m_id] = null;
+    --m_nOutstanding;
+
+    Lookup lookup = query.m_lookup;
+    if (error != null && lookup.m_error == null) {
+      lookup.m_error = error;
+    }
+    if (--lookup.m_nPending > 0) {
+      return;
+    }
+
+    List<InetAddress> result = new ArrayList<InetAddress>();
+    for (List<InetAddress> addresses : lookup.m_addresses) {
+      if (addresses != null) {
+        result.addAll(addresses);
+      }
+    }
+    if (result.isEmpty()) {
+      lookup.m_result.setException(new UnknownHostException(lookup.m_host + ": " + lookup.m_error));
+    }
+    else {
+      lookup.m_result.set(result.toArray(new InetAddress[result.size()]));
+    }
+  }
+
+  private void
+  failSubmitted() {
+    Lookup lookup;
+    while ((lookup = m_submitted.poll()) != null) {
+      lookup.m_result.setException(new UnknownHostException(lookup.m_host + ": resolver closed"));
+    }
+  }
+
+  /**
+   * Resolution of one host name, consisting of A and/or AAAA queries
+   */
+  private static class Lookup {
+    Lookup(String host, byte[] name, int[] types)
+    {
+      m_host = host;
+      m_name = name;
+      m_types = types;
+      m_nPending = types.length;
+    }
+
+    final String m_host;
+    final byte[] m_name;
+    final int[] m_types;
+    final SettableFuture<InetAddress[]> m_result = SettableFuture.create();
+
+    // accessed only from the selector thread
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    final List<InetAddress>[] m_addresses = new List[2]; ///< IPv4 and IPv6 results
+    int m_nPending;
+    String m_error = null;
+  }
+
+  private static class Query {
+    Query(Lookup lookup, int type, int id, byte[] packet, long deadline)
+    {
+      m_lookup = lookup;
+      m_type = type;
+      m_id = id;
+      m_packet = packet;
+      m_deadline = deadline;
+    }
+
+    final Lookup m_lookup;
+    final int m_type;
+    final int m_id;
+    final byte[] m_packet;
+    final long m_deadline;
+    long m_nextSendAt = 0;
+    boolean m_isDone = false;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final InetSocketAddress m_server;
+  private final long m_retransmitInterval;
+  private final long m_timeout;
+  private final Selector m_selector;
+  private final DatagramChannel m_channel;
+  private volatile boolean m_isClosed = false;
+  private final Queue<Lookup> m_submitted = new ConcurrentLinkedQueue<Lookup>();
+
+  // accessed only from the selector thread
+  private final Random m_random = new SecureRandom();
+  private final Query[] m_queries = new Query[65536]; ///< outstanding queries indexed by ID
+  private int m_nOutstanding = 0;
+  private final Queue<Lookup> m_backlog = new ArrayDeque<Lookup>();
+  private final Queue<Query> m_deadlines = new ArrayDeque<Query>();
+  private final Queue<Query> m_retransmits = new ArrayDeque<Query>();
+
+  private static final int HEADER_SIZE = 12;
+  private static final int MAX_MESSAGE_SIZE = 4096;
+  private static final int MAX_NAME_LENGTH = 255;
+  private static final int MAX_LABEL_LENGTH = 63;
+  private static final int MAX_OUTSTANDING = 32768; ///< keeps ID allocation probes short
+  private static final int FLAG_QR = 0x8000;
+  private static final int FLAG_RD = 0x0100;
+  private static final int RCODE_MASK = 0x000F;
+  private static final int RCODE_NOERROR = 0;
+  private static final int RCODE_NXDOMAIN = 3;
+  private static final int TYPE_A = 1;
+  private static final int TYPE_AAAA = 28;
+  private static final int CLASS_IN = 1;
+}
@@ -0,0 +1,883 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Bounded cache of host name resolution results
+ * <p>
+ * Each entry carries its own expiration time: successful resolutions are kept for
+ * positive TTL, failed resolutions (UnknownHostException) for negative TTL.  A positive entry
+ * that is requested within refresh-ahead interval before its expiration is refreshed in
+ * background, so frequently used names are never resolved on the caller's thread after the first
+ * lookup.  When the number of entries exceeds the maximum size, least recently used entries are
+ * evicted.
+ * <p>
+ * IP address literals are never cached and are passed directly to the resolver.
+ * <p>
+ * Concurrent cache misses for the same host (and family) are coalesced: only the first caller
+ * starts a resolution, and the other callers wait for and share its result or failure.
+ * <p>
+ * When the resolver implements AsyncHostResolver, resolveAsync() and background refreshes
+ * do not occupy any thread while the resolution is in progress.
+ * <p>
+ * Successful results can be persisted with writeSnapshot() and loaded with readSnapshot(), so
+ * that host names do not need to be resolved again before use after a restart.
+ */
+public class ResolverCache {
+  public static final int DEFAULT_MAX_SIZE = 1024;
+  public static final long DEFAULT_POSITIVE_TTL_MS = 60000;
+  public static final long DEFAULT_NEGATIVE_TTL_MS = 10000;
+  public static final long DEFAULT_REFRESH_AHEAD_MS = 10000;
+
+  /**
+   * Create cache with default parameters backed by the platform resolver
+   */
+  public ResolverCache()
+  {
+    this(DEFAULT_MAX_SIZE, DEFAULT_POSITIVE_TTL_MS, DEFAULT_NEGATIVE_TTL_MS, DEFAULT_REFRESH_AHEAD_MS,
+         TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Create cache backed by the platform resolver
+   * @param maxSize maximum number of cached host names (0 disables caching)
+   * @param positiveTtl how long successful resolution result is kept
+   * @param negativeTtl how long failed resolution result is kept (0 disables negative caching)
+   * @param refreshAhead interval before expiration when a requested entry is refreshed in background
+   *                     (0 disables refresh-ahead)
+   * @param unit time unit of positiveTtl, negativeTtl, and refreshAhead
+   */
+  public ResolverCache(int maxSize, long positiveTtl, long negativeTtl, long refreshAhead, TimeUnit unit)
+  {
+    this(new SystemHostResolver(), maxSize, positiveTtl, negativeTtl, refreshAhead, unit,
+         FaceUri.getDefaultCanonizeExecutor());
+  }
+
+  /**
+   * Create cache
+   * @param resolver resolver to use on cache miss
+   * @param maxSize maximum number of cached host names (0 disables caching)
+   * @param positiveTtl how long successful resolution result is kept
+   * @param negativeTtl how long failed resolution result is kept (0 disables negative caching)
+   * @param refreshAhead interval before expiration when a requested entry is refreshed in background
+   *                     (0 disables refresh-ahead)
+   * @param unit time unit of positiveTtl, negativeTtl, and refreshAhead
+   * @param refreshExecutor executor to perform refresh-ahead resolutions
+   */
+  public ResolverCache(HostResolver resolver, int maxSize, long positiveTtl, long negativeTtl, long refreshAhead,
+                       TimeUnit unit, Executor refreshExecutor)
+  {
+    this(resolver, maxSize, positiveTtl, negativeTtl, refreshAhead, unit, refreshExecutor, Ticker.systemTicker());
+  }
+
+  ResolverCache(HostResolver resolver, int maxSize, long positiveTtl, long negativeTtl, long refreshAhead,
+                TimeUnit unit, Executor refreshExecutor, Ticker ticker)
+  {
+    if (maxSize < 0 || positiveTtl < 0 || negativeTtl < 0 || refreshAhead < 0) {
+      throw new IllegalArgumentException("Cache size and TTLs must not be negative");
+    }
+
+    m_resolver = resolver;
+    m_positiveTtl = unit.toNanos(positiveTtl);
+    m_negativeTtl = unit.toNanos(negativeTtl);
+    m_refreshAhead = Math.min(unit.toNanos(refreshAhead), m_positiveTtl);
+    m_refreshExecutor = refreshExecutor;
+    m_ticker = ticker;
+    m_entries = CacheBuilder.newBuilder()
+      .maximumSize(maxSize)
+      .<String, Entry>build();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Resolve host name, using cached result when available
+   * <p>
+   * Note that this method can block for DNS resolution process on cache miss
+   * <p>
+   * @param host host name or IP address literal
+   * @return non-empty immutable list of resolved addresses
+   * @throws UnknownHostException if host cannot be resolved (possibly cached)
+   */
+  public List<InetAddress>
+  resolve(String host) throws UnknownHostException {
+    if (InetAddresses.isInetAddress(host)) {
+      return ImmutableList.copyOf(m_resolver.resolve(host));
+    }
+
+    long now = m_ticker.read();
+    Entry entry = m_entries.getIfPresent(host);
+    if (entry == null || entry.isExpired(now)) {
+      entry = loadShared(host);
+    }
+    else if (entry.needsRefresh(now)) {
+      scheduleRefresh(host, host, entry);
+    }
+
+    return entry.get(host);
+  }
+
+  /**
+   * Asynchronously resolve host name, using cached result when available
+   * <p>
+   * Cached results and IP address literals complete the returned future immediately.  On cache
+   * miss, an AsyncHostResolver is used directly; a blocking resolver is invoked on
+   * <pre>executor</pre>.
+   * <p>
+   * @param host host name or IP address literal
+   * @param executor executor to run a blocking resolver on cache miss
+   * @return future that completes with non-empty immutable list of resolved addresses, or fails
+   * with UnknownHostException if host cannot be resolved (possibly cached) or with
+   * RejectedExecutionException if executor rejects the resolution
+   */
+  public ListenableFuture<List<InetAddress>>
+  resolveAsync(String host, Executor executor) {
+    return resolveAsync(host, null, executor);
+  }
+
+  /**
+   * Asynchronously resolve host name into addresses of one family, using cached result when available
+   * <p>
+   * A cached result for both families is used when present.  Otherwise, an AsyncHostResolver
+   * is asked for the requested family only, and the result is cached separately from other
+   * families.  A blocking resolver always resolves both families at once, and its result
+   * is filtered.
+   * <p>
+   * @param host host name or IP address literal
+   * @param family Inet4Address.class, Inet6Address.class, or null for both families
+   * @param executor executor to run a blocking resolver on cache miss
+   * @return future that completes with non-empty immutable list of resolved addresses of the family,
+   * or fails with UnknownHostException if host has no address of the family (possibly cached) or
+   * with RejectedExecutionException if executor rejects the resolution
+   */
+  public ListenableFuture<List<InetAddress>>
+  resolveAsync(final String host, final Class<? extends InetAddress> family, Executor executor) {
+    final String key = getKey(host, family);
+    if (InetAddresses.isInetAddress(host)) {
+      try {
+        return Futures.immediateFuture(filter(host, ImmutableList.copyOf(m_resolver.resolve(host)), family));
+      } catch (UnknownHostException e) {
+        return Futures.immediateFailedFuture(e);
+      }
+    }
+
+    // result for both families can serve a single-family request
+    long now = m_ticker.read();
+    String entryKey = host;
+    Entry entry = m_entries.getIfPresent(host);
+    if ((entry == null || entry.isExpired(now)) && !key.equals(host)) {
+      entryKey = key;
+      entry = m_entries.getIfPresent(key);
+    }
+    if (entry != null && !entry.isExpired(now)) {
+      if (entry.needsRefresh(now)) {
+        scheduleRefresh(entryKey, host, entry);
+      }
+      try {
+        return Futures.immediateFuture(filter(host, entry.get(host), family));
+      } catch (UnknownHostException e) {
+        return Futures.immediateFailedFuture(e);
+      }
+    }
+
+    if (family != null && !(m_resolver instanceof AsyncHostResolver)) {
+      // blocking resolver resolves both families at once
+      return Futures.transform(resolveAsync(host, null, executor),
+                               new AsyncFunction<List<InetAddress>, List<InetAddress>>() {
+        @Override
+        public ListenableFuture<List<InetAddress>>
+        apply(List<InetAddress> addresses) throws UnknownHostException {
+          return Futures.immediateFuture(filter(host, addresses, family));
+        }
+      });
+    }
+
+    // each caller gets its own future, so cancellation by one caller does not affect others
+    final SettableFuture<List<InetAddress>> result = SettableFuture.create();
+    Futures.addCallback(loadSharedAsync(host, key, family, executor), new FutureCallback<Entry>() {
+      @Override
+      public void
+      onSuccess(Entry entry) {
+        try {
+          result.set(entry.get(host));
+        } catch (UnknownHostException e) {
+          result.setException(e);
+        }
+      }
+
+      @Override
+      public void
+      onFailure(Throwable t) {
+        result.setException(t);
+      }
+    }, MoreExecutors.directExecutor());
+    return result;
+  }
+
+  /**
+   * @return resolver used on cache miss
+   */
+  public HostResolver
+  getResolver() {
+    return m_resolver;
+  }
+
+  /**
+   * Discard cached result for the host
+   */
+  public void
+  invalidate(String host) {
+    m_entries.invalidate(host);
+    m_entries.invalidate(getKey(host, Inet4Address.class));
+    m_entries.invalidate(getKey(host, Inet6Address.class));
+  }
+
+  /**
+   * Discard all cached results
+   */
+  public void
+  invalidateAll() {
+    m_entries.invalidateAll();
+  }
+
+  /**
+   * @return number of cached entries, including negative and per-family entries
+   */
+  public long
+  size() {
+    return m_entries.size();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  // snapshot
+
+  /**
+   * Write successful resolution results into a snapshot file, e.g., before shutdown
+   * <p>
+   * The snapshot is written into a temporary file in the same directory, which then atomically
+   * replaces <pre>file</pre>, so readers never see a partially written snapshot.  Expiration times
+   * are stored as wall-clock time.
+   * <p>
+   * @param file snapshot file
+   * @return number of written entries
+   * @throws IOException if the snapshot cannot be written
+   */
+  public int
+  writeSnapshot(Path file) throws IOException {
+    long now = m_ticker.read();
+    long wallNow = System.currentTimeMillis();
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(SNAPSHOT_MAGIC);
+    out.writeByte(SNAPSHOT_VERSION);
+    out.writeInt(0); // number of entries, patched below
+
+    int nEntries = 0;
+    for (Map.Entry<String, Entry> cached : m_entries.asMap().entrySet()) {
+      Entry entry = cached.getValue();
+      byte[] key = cached.getKey().getBytes(Charsets.UTF_8);
+      if (entry.m_addresses == null || entry.isExpired(now) || key.length > 0xFFFF) {
+        continue;
+      }
+
+      out.writeShort(key.length);
+      out.write(key);
+      out.writeLong(wallNow + TimeUnit.NANOSECONDS.toMillis(entry.m_expiresAt - now));
+      int nAddresses = Math.min(entry.m_addresses.size(), 0xFF);
+      out.writeByte(nAddresses);
+      for (int i = 0; i < nAddresses; ++i) {
+        byte[] address = entry.m_addresses.get(i).getAddress();
+        out.writeByte(address.length);
+        out.write(address);
+      }
+      ++nEntries;
+    }
+
+    ByteBuffer snapshot = ByteBuffer.allocate(bytes.size() + 4);
+    snapshot.put(bytes.toByteArray());
+    snapshot.putInt(5, nEntries);
+    snapshot.putInt(getChecksum(snapshot, bytes.size()));
+    snapshot.flip();
+
+    Path directory = file.toAbsolutePath().getParent();
+    Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+        while (snapshot.hasRemaining()) {
+          channel.write(snapshot);
+        }
+        channel.force(true);
+      }
+      Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    finally {
+      Files.deleteIfExists(temporary);
+    }
+    return nEntries;
+  }
+
+  /**
+   * Load resolution results from a snapshot file written by writeSnapshot, e.g., at startup
+   * <p>
+   * The file is memory-mapped and validated as a whole before any entry is used; a missing,
+   * truncated, or corrupt snapshot is discarded.  Entries that have not expired are cached for
+   * their remaining TTL.  Entries that expired less than <pre>maxStale</pre> ago are served
+   * immediately and revalidated in background right away; if revalidation fails, they are served
+   * until maxStale elapses.  Older entries are discarded.  Unexpired entries already in this cache
+   * are kept.
+   * <p>
+   * @param file snapshot file
+   * @param maxStale how long after expiration an entry can still be served while being revalidated
+   * @param unit time unit of maxStale
+   * @return number of loaded entries; 0 if the snapshot does not exist, is corrupt, or all its
+   * entries are too old
+   * @throws IOException if the snapshot exists but cannot be read
+   */
+  public int
+  readSnapshot(Path file, long maxStale, TimeUnit unit) throws IOException {
+    MappedByteBuffer snapshot;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        return 0;
+      }
+      snapshot = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    catch (NoSuchFileException e) {
+      return 0;
+    }
+
+    List<SnapshotEntry> entries = parseSnapshot(snapshot);
+    if (entries == null) {
+      return 0;
+    }
+
+    long now = m_ticker.read();
+    long wallNow = System.currentTimeMillis();
+    long maxStaleMs = unit.toMillis(maxStale);
+    long positiveTtlMs = TimeUnit.NANOSECONDS.toMillis(m_positiveTtl);
+    boolean canRefreshFamily = m_resolver instanceof AsyncHostResolver;
+
+    int nLoaded = 0;
+    for (SnapshotEntry loaded : entries) {
+      String host = getHost(loaded.m_key);
+      if (InetAddresses.isInetAddress(host) || (!canRefreshFamily && getFamily(loaded.m_key) != null)) {
+        continue;
+      }
+
+      InetAddress[] addresses = new InetAddress[loaded.m_addresses.size()];
+      for (int i = 0; i < addresses.length; ++i) {
+        addresses[i] = InetAddress.getByAddress(host, loaded.m_addresses.get(i));
+      }
+
+      long remainingMs = loaded.m_expiresAt - wallNow;
+      Entry entry;
+      boolean isStale = remainingMs <= 0;
+      if (!isStale) {
+        remainingMs = Math.min(remainingMs, positiveTtlMs);
+        entry = new Entry(addresses, now + TimeUnit.MILLISECONDS.toNanos(remainingMs), m_refreshAhead);
+      }
+      else {
+        long staleMs = maxStaleMs + remainingMs;
+        if (staleMs <= 0) {
+          continue;
+        }
+        long stale = TimeUnit.MILLISECONDS.toNanos(staleMs);
+        entry = new Entry(addresses, now + stale, stale); // refresh is due immediately
+      }
+
+      Entry existing = m_entries.asMap().putIfAbsent(loaded.m_key, entry);
+      if (existing == null || (existing.isExpired(now) && m_entries.asMap().replace(loaded.m_key, existing, entry))) {
+        ++nLoaded;
+        if (isStale) {
+          scheduleRefresh(loaded.m_key, host, entry);
+        }
+      }
+    }
+    return nLoaded;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Resolve host on the calling thread, or wait for a resolution of the host already in progress
+   */
+  private Entry
+  loadShared(String host) {
+    SettableFuture<Entry> pending = SettableFuture.create();
+    SettableFuture<Entry> inProgress = m_pending.putIfAbsent(host, pending);
+    if (inProgress != null) {
+      try {
+        return Uninterruptibles.getUninterruptibly(inProgress);
+      } catch (ExecutionException e) {
+        // shared resolution was not performed (e.g., rejected by executor), resolve here
+        return load(host);
+      }
+    }
+
+    try {
+      Entry entry = getFresh(host);
+      if (entry == null) {
+        entry = load(host);
+      }
+      pending.set(entry);
+      return entry;
+    } finally {
+      m_pending.remove(host, pending);
+      if (!pending.isDone()) {
+        // waiters resolve the host themselves
+        pending.setException(new IllegalStateException("Resolution of " + host + " failed"));
+      }
+    }
+  }
+
+  /**
+   * Start resolution of host, or join a resolution of the host already in progress
+   * @param key cache key of the entry: host name, or host name with family suffix
+   * @return future that completes with positive or negative entry, or fails if the resolution
+   * was not performed
+   */
+  private ListenableFuture<Entry>
+  loadSharedAsync(final String host, final String key, Class<? extends InetAddress> family, Executor executor) {
+    final SettableFuture<Entry> pending = SettableFuture.create();
+    SettableFuture<Entry> inProgress = m_pending.putIfAbsent(key, pending);
+    if (inProgress != null) {
+      return inProgress;
+    }
+
+    Entry fresh = getFresh(key);
+    if (fresh != null) {
+      m_pending.remove(key, pending);
+      pending.set(fresh);
+      return pending;
+    }
+
+    Futures.addCallback(lookup(host, family, executor), new FutureCallback<InetAddress[]>() {
+      @Override
+      public void
+      onSuccess(InetAddress[] addresses) {
+        complete(newEntry(host, addresses));
+      }
+
+      @Override
+      public void
+      onFailure(Throwable t) {
+        if (t instanceof UnknownHostException) {
+          complete(new Entry(t.getMessage(), m_ticker.read() + m_negativeTtl));
+        }
+        else {
+          m_pending.remove(key, pending);
+          pending.setException(t);
+        }
+      }
+
+      private void
+      complete(Entry entry) {
+        // store before removing from pending, so new callers find either the entry or the resolution
+        store(key, entry);
+        m_pending.remove(key, pending);
+        pending.set(entry);
+      }
+    }, MoreExecutors.directExecutor());
+    return pending;
+  }
+
+  /**
+   * @return cached entry that has not expired, or null
+   */
+  private Entry
+  getFresh(String key) {
+    Entry entry = m_entries.getIfPresent(key);
+    return entry != null && !entry.isExpired(m_ticker.read()) ? entry : null;
+  }
+
+  private Entry
+  load(String host) {
+    boolean isTimed = FaceUriMetrics.s_isEnabled;
+    long start = isTimed ? System.nanoTime() : 0;
+    Entry entry;
+    try {
+      entry = newEntry(host, m_resolver.resolve(host));
+      if (isTimed) {
+        FaceUriMetrics.recordResolve(start, entry.m_addresses != null);
+      }
+    } catch (UnknownHostException e) {
+      entry = new Entry(e.getMessage(), m_ticker.read() + m_negativeTtl);
+      if (isTimed) {
+        FaceUriMetrics.recordResolve(start, false);
+      }
+    }
+
+    store(host, entry);
+    return entry;
+  }
+
+  private void
+  store(String host, Entry entry) {
+    if (!entry.isExpired(m_ticker.read())) {
+      m_entries.put(host, entry);
+    }
+  }
+
+  /**
+   * Start resolution using AsyncHostResolver directly, or blocking resolver on executor
+   * (family can be non-null only for AsyncHostResolver)
+   */
+  private ListenableFuture<InetAddress[]>
+  lookup(String host, Class<? extends InetAddress> family, Executor executor) {
+    if (!FaceUriMetrics.s_isEnabled) {
+      return startLookup(host, family, executor);
+    }
+
+    final long start = System.nanoTime();
+    ListenableFuture<InetAddress[]> result = startLookup(host, family, executor);
+    Futures.addCallback(result, new FutureCallback<InetAddress[]>() {
+      @Override
+      public void
+      onSuccess(InetAddress[] addresses) {
+        FaceUriMetrics.recordResolve(start, true);
+      }
+
+      @Override
+      public void
+      onFailure(Throwable t) {
+        FaceUriMetrics.recordResolve(start, false);
+      }
+    });
+    return result;
+  }
+
+  private ListenableFuture<InetAddress[]>
+  startLookup(final String host, Class<? extends InetAddress> family, Executor executor) {
+    if (m_resolver instanceof AsyncHostResolver) {
+      AsyncHostResolver resolver = (AsyncHostResolver)m_resolver;
+      return family == null ? resolver.resolveAsync(host) : resolver.resolveAsync(host, family);
+    }
+    assert family == null;
+
+    ListenableFutureTask<InetAddress[]> task = ListenableFutureTask.create(new Callable<InetAddress[]>() {
+      @Override
+      public InetAddress[]
+      call() throws UnknownHostException {
+        return m_resolver.resolve(host);
+      }
+    });
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      return Futures.immediateFailedFuture(e);
+    }
+    return task;
+  }
+
+  /**
+   * @param key cache key of the entry: host name, or host name with family suffix
+   */
+  private void
+  scheduleRefresh(final String key, String host, final Entry entry) {
+    if (!entry.m_isRefreshing.compareAndSet(false, true)) {
+      return;
+    }
+
+    Futures.addCallback(lookup(host, getFamily(key), m_refreshExecutor), new FutureCallback<InetAddress[]>() {
+      @Override
+      public void
+      onSuccess(InetAddress[] addresses) {
+        if (addresses.length > 0) {
+          m_entries.put(key, new Entry(addresses, m_ticker.read() + m_positiveTtl, m_refreshAhead));
+        }
+      }
+
+      @Override
+      public void
+      onFailure(Throwable t) {
+        if (t instanceof RejectedExecutionException) {
+          entry.m_isRefreshing.set(false);
+        }
+        // otherwise, keep serving the existing entry until it expires
+      }
+    }, MoreExecutors.directExecutor());
+  }
+
+  private static String
+  getKey(String host, Class<? extends InetAddress> family) {
+    if (family == null) {
+      return host;
+    }
+    else if (family == Inet4Address.class) {
+      return host + IPV4_SUFFIX;
+    }
+    else if (family == Inet6Address.class) {
+      return host + IPV6_SUFFIX;
+    }
+    throw new IllegalArgumentException("Unsupported address family " + family.getName());
+  }
+
+  /**
+   * @return host name of cache key
+   */
+  /**
+   * @return positive entry, or negative entry if resolver returned no addresses
+   */
+  private Entry
+  newEntry(String host, InetAddress[] addresses) {
+    if (addresses == null || addresses.length == 0) {
+      return new Entry("No addresses for " + host, m_ticker.read() + m_negativeTtl);
+    }
+    return new Entry(addresses, m_ticker.read() + m_positiveTtl, m_refreshAhead);
+  }
+
+  private static String
+  getHost(String key) {
+    return getFamily(key) == null ? key : key.substring(0, key.length() - IPV4_SUFFIX.length());
+  }
+
+  /**
+   * Validate snapshot and decode its entries
+   * @return decoded entries, or null if the snapshot is truncated or corrupt
+   */
+  private static List<SnapshotEntry>
+  parseSnapshot(ByteBuffer snapshot) {
+    try {
+      int checksumPos = snapshot.limit() - 4;
+      if (checksumPos < SNAPSHOT_HEADER_SIZE || snapshot.getInt(0) != SNAPSHOT_MAGIC ||
+          snapshot.get(4) != SNAPSHOT_VERSION || snapshot.getInt(checksumPos) != getChecksum(snapshot, checksumPos)) {
+        return null;
+      }
+
+      snapshot.position(5);
+      int nEntries = snapshot.getInt();
+      if (nEntries < 0) {
+        return null;
+      }
+      snapshot.limit(checksumPos);
+
+      List<SnapshotEntry> entries = new ArrayList<SnapshotEntry>();
+      for (int i = 0; i < nEntries; ++i) {
+        byte[] key = new byte[snapshot.getShort() & 0xFFFF];
+        snapshot.get(key);
+        long expiresAt = snapshot.getLong();
+        int nAddresses = snapshot.get() & 0xFF;
+        if (key.length == 0 || nAddresses == 0) {
+          return null;
+        }
+
+        List<byte[]> addresses = new ArrayList<byte[]>(nAddresses);
+        for (int j = 0; j < nAddresses; ++j) {
+          int length = snapshot.get();
+          if (length != 4 && length != 16) {
+            return null;
+          }
+          byte[] address = new byte[length];
+          snapshot.get(address);
+          addresses.add(address);
+        }
+        entries.add(new SnapshotEntry(new String(key, Charsets.UTF_8), expiresAt, addresses));
+      }
+      return snapshot.hasRemaining() ? null : entries;
+    }
+    catch (BufferUnderflowException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return CRC32 of snapshot[0, length)
+   */
+  private static int
+  getChecksum(ByteBuffer snapshot, int length) {
+    CRC32 crc = new CRC32();
+    if (snapshot.hasArray()) {
+      crc.update(snapshot.array(), snapshot.arrayOffset(), length);
+      return (int)crc.getValue();
+    }
+
+    ByteBuffer view = snapshot.duplicate();
+    view.position(0);
+    byte[] chunk = new byte[Math.min(length, 8192)];
+    for (int pos = 0; pos < length; pos += chunk.length) {
+      int n = Math.min(chunk.length, length - pos);
+      view.get(chunk, 0, n);
+      crc.update(chunk, 0, n);
+    }
+    return (int)crc.getValue();
+  }
+
+  private static Class<? extends InetAddress>
+  getFamily(String key) {
+    if (key.endsWith(IPV4_SUFFIX)) {
+      return Inet4Address.class;
+    }
+    else if (key.endsWith(IPV6_SUFFIX)) {
+      return Inet6Address.class;
+    }
+    return null;
+  }
+
+  private static List<InetAddress>
+  filter(String host, List<InetAddress> addresses, Class<? extends InetAddress> family)
+    throws UnknownHostException {
+    if (family == null) {
+      return addresses;
+    }
+
+    ImmutableList.Builder<InetAddress> filtered = ImmutableList.builder();
+    for (InetAddress address : addresses) {
+      if (family.isInstance(address)) {
+        filtered.add(address);
+      }
+    }
+    List<InetAddress> result = filtered.build();
+    if (result.isEmpty()) {
+      throw new UnknownHostException(host + ": no " + (family == Inet4Address.class ? "IPv4" : "IPv6") + " address");
+    }
+    return result;
+  }
+
+  /**
+   * Positive or negative resolution result with its own expiration time
+   */
+  private static class Entry {
+    Entry(InetAddress[] addresses, long expiresAt, long refreshAhead)
+    {
+      if (addresses.length == 0) {
+        throw new IllegalArgumentException("Resolver returned empty list of addresses");
+      }
+      m_addresses = ImmutableList.copyOf(addresses);
+      m_error = null;
+      m_expiresAt = expiresAt;
+      m_refreshAt = refreshAhead > 0 ? expiresAt - refreshAhead : Long.MAX_VALUE;
+    }
+
+    Entry(String error, long expiresAt)
+    {
+      m_addresses = null;
+      m_error = error;
+      m_expiresAt = expiresAt;
+      m_refreshAt = Long.MAX_VALUE;
+    }
+
+    boolean
+    isExpired(long now) {
+      return now - m_expiresAt >= 0;
+    }
+
+    boolean
+    needsRefresh(long now) {
+      return m_refreshAt != Long.MAX_VALUE && now - m_refreshAt >= 0;
+    }
+
+    List<InetAddress>
+    get(String host) throws UnknownHostException {
+      if (m_addresses == null) {
+        throw new UnknownHostException(m_error != null ? m_error : host);
+      }
+      return m_addresses;
+    }
+
+    private final ImmutableList<InetAddress> m_addresses;
+    private final String m_error;
+    private final long m_expiresAt;
+    private final long m_refreshAt;
+    private final AtomicBoolean m_isRefreshing = new AtomicBoolean(false);
+  }
+
+  /**
+   * Entry decoded from a snapshot
+   */
+  private static class SnapshotEntry {
+    SnapshotEntry(String key, long expiresAt, List<byte[]> addresses)
+    {
+      m_key = key;
+      m_expiresAt = expiresAt;
+      m_addresses = addresses;
+    }
+
+    final String m_key;
+    final long m_expiresAt; ///< wall-clock time in milliseconds
+    final List<byte[]> m_addresses;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final HostResolver m_resolver;
+  private final long m_positiveTtl;
+  private final long m_negativeTtl;
+  private final long m_refreshAhead;
+  private final Executor m_refreshExecutor;
+  private final Ticker m_ticker;
+  private final Cache<String, Entry> m_entries; ///< keyed by host name, or host name with family suffix
+  private final ConcurrentMap<String, SettableFuture<Entry>> m_pending =
+    new ConcurrentHashMap<String, SettableFuture<Entry>>(); ///< resolutions in progress, keyed as m_entries
+
+  // '/' cannot appear in a host name
+  private static final String IPV4_SUFFIX = "/4";
+  private static final String IPV6_SUFFIX = "/6";
+
+  private static final int SNAPSHOT_MAGIC = 0x4E524353; // "NRCS"
+  private static final byte SNAPSHOT_VERSION = 1;
+  private static final int SNAPSHOT_HEADER_SIZE = 9; ///< magic, version, and number of entries
+}
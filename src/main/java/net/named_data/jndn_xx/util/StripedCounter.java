@@ -0,0 +1,73 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter that spreads concurrent updates over padded cells, so threads that update it
+ * at the same time rarely contend on one cache line
+ */
+final class StripedCounter {
+  void
+  increment() {
+    add(1);
+  }
+
+  void
+  add(long value) {
+    int stripe = (int)Thread.currentThread().getId() & (N_STRIPES - 1);
+    m_cells.getAndAdd(stripe * PADDING, value);
+  }
+
+  long
+  sum() {
+    long sum = 0;
+    for (int i = 0; i < m_cells.length(); i += PADDING) {
+      sum += m_cells.get(i);
+    }
+    return sum;
+  }
+
+  void
+  reset() {
+    for (int i = 0; i < m_cells.length(); i += PADDING) {
+      m_cells.set(i, 0);
+    }
+  }
+
+  private static int
+  getStripeCount() {
+    int nStripes = 1;
+    while (nStripes < Runtime.getRuntime().availableProcessors() && nStripes < 64) {
+      nStripes <<= 1;
+    }
+    return nStripes;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final int N_STRIPES = getStripeCount();
+  private static final int PADDING = 8; ///< longs per cell, so cells are on different cache lines
+
+  private final AtomicLongArray m_cells = new AtomicLongArray(N_STRIPES * PADDING);
+}
@@ -0,0 +1,187 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import com.google.common.net.InetAddresses;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AddressPolicyTest {
+
+  private static boolean
+  isAllowed(AddressPolicy policy, String address) {
+    return policy.isAllowed(InetAddresses.forString(address));
+  }
+
+  @Test
+  public void LongestPrefix()
+  {
+    AddressPolicy policy = new AddressPolicy.Builder()
+      .deny("10.0.0.0/8")
+      .allow("10.1.0.0/16")
+      .deny("10.1.2.3")
+      .deny("2001:db8::/32")
+      .allow("2001:db8:1::/48")
+      .deny("::/0")
+      .allow("::1")
+      .build();
+
+    assertTrue(isAllowed(policy, "192.0.2.1"));
+    assertFalse(isAllowed(policy, "10.2.0.1"));
+    assertTrue(isAllowed(policy, "10.1.2.2"));
+    assertFalse(isAllowed(policy, "10.1.2.3"));
+    assertTrue(isAllowed(policy, "10.1.255.255"));
+    assertFalse(isAllowed(policy, "10.0.0.0"));
+
+    assertFalse(isAllowed(policy, "2001:db8::1"));
+    assertTrue(isAllowed(policy, "2001:db8:1:2::1"));
+    assertFalse(isAllowed(policy, "2001:db9::1"));
+    assertTrue(isAllowed(policy, "::1"));
+    assertFalse(isAllowed(policy, "::2"));
+
+    assertTrue(policy.isAllowedIpv4(0xC0000201));
+    assertFalse(policy.isAllowedIpv4(0x0A010203));
+    assertTrue(policy.isAllowedIpv6(0x20010DB800010000L, 5));
+  }
+
+  @Test
+  public void DefaultAndConflicts()
+  {
+    AddressPolicy empty = new AddressPolicy.Builder().build();
+    assertTrue(isAllowed(empty, "192.0.2.1"));
+    assertTrue(isAllowed(empty, "2001:db8::1"));
+    assertEquals(empty.getNodeCount(), 0);
+
+    AddressPolicy allowList = new AddressPolicy.Builder()
+      .setDefaultAllowed(false)
+      .allow("192.0.2.0/24")
+      .allow("198.51.100.7/24") // host bits are ignored
+      .allow("0.0.0.0/0")
+      .deny("0.0.0.0/0")
+      .build();
+    assertTrue(isAllowed(allowList, "192.0.2.200"));
+    assertTrue(isAllowed(allowList, "198.51.100.1"));
+    assertFalse(isAllowed(allowList, "203.0.113.1")); // deny wins on the same prefix
+    assertFalse(isAllowed(allowList, "2001:db8::1"));
+  }
+
+  @Test
+  public void InvalidPrefixes()
+  {
+    String[] invalid = {"", "/24", "192.0.2.0/", "192.0.2.0/33", "2001:db8::/129", "192.0.2.0/-1",
+                        "192.0.2.0/2x", "192.0.2", "example.net/24", "192.0.2.0/0024"};
+    for (String cidr : invalid) {
+      try {
+        new AddressPolicy.Builder().allow(cidr);
+        fail("Prefix " + cidr + " should have been rejected");
+      }
+      catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void MatchesLinearScan()
+  {
+    Random random = new Random(1);
+    AddressPolicy.Builder builder = new AddressPolicy.Builder();
+    List<int[]> prefixes = new ArrayList<int[]>(); // {address, length, isAllowed}
+    for (int i = 0; i < 20000; ++i) {
+      int length = 8 + random.nextInt(25);
+      int address = random.nextInt() & (int)(-1L << (32 - length));
+      boolean isAllowed = random.nextBoolean();
+      String cidr = InetAddresses.fromInteger(address).getHostAddress() + "/" + length;
+      if (isAllowed) {
+        builder.allow(cidr);
+      }
+      else {
+        builder.deny(cidr);
+      }
+      prefixes.add(new int[]{address, length, isAllowed ? 1 : 0});
+    }
+    AddressPolicy policy = builder.setDefaultAllowed(false).build();
+    assertTrue(policy.getNodeCount() < 2 * prefixes.size());
+
+    for (int i = 0; i < 20000; ++i) {
+      // half of the probes are inside a known prefix
+      int address = random.nextInt();
+      if (i % 2 == 0) {
+        int[] prefix = prefixes.get(random.nextInt(prefixes.size()));
+        address = prefix[0] | (address & (int)~(-1L << (32 - prefix[1])));
+      }
+
+      int bestLength = -1;
+      boolean expected = false;
+      for (int[] prefix : prefixes) {
+        int mask = (int)(-1L << (32 - prefix[1]));
+        if ((address & mask) == prefix[0]) {
+          if (prefix[1] > bestLength) {
+            bestLength = prefix[1];
+            expected = prefix[2] == 1;
+          }
+          else if (prefix[1] == bestLength) {
+            expected &= prefix[2] == 1;
+          }
+        }
+      }
+      assertEquals(policy.isAllowedIpv4(address), expected);
+    }
+  }
+
+  @Test
+  public void CanonizeProvider() throws Exception
+  {
+    FaceUri.IpHostCanonizeProvider provider = (FaceUri.IpHostCanonizeProvider)FaceUri.getCanonizeProvider("udp");
+    FaceUri uri = new FaceUri("udp4://192.0.2.1:6363");
+    assertTrue(uri.isCanonical());
+
+    provider.setAddressPolicy(new AddressPolicy.Builder().deny("192.0.2.0/24").build());
+    try {
+      assertFalse(uri.isCanonical());
+      assertTrue(new FaceUri("udp4://198.51.100.1:6363").isCanonical());
+      try {
+        uri.canonize();
+        fail("Canonization of denied address should have failed");
+      }
+      catch (FaceUri.CanonizeError e) {
+        // expected
+      }
+
+      FaceUri.TcpCanonizeProvider tcp = new FaceUri.TcpCanonizeProvider();
+      tcp.setAddressPolicy(new AddressPolicy.Builder().allow("224.0.0.0/4").build());
+      assertFalse(tcp.isCanonical(new FaceUri("tcp4://224.0.23.170:6363"))); // still not multicast
+    }
+    finally {
+      provider.setAddressPolicy(null);
+    }
+    assertTrue(uri.isCanonical());
+  }
+}
@@ -0,0 +1,181 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class EndpointIndexTest {
+
+  @Test
+  public void PutGetRemove() throws Exception
+  {
+    EndpointIndex index = new EndpointIndex();
+    assertEquals(index.put(new FaceUri("udp4://192.0.2.1:6363"), 1), EndpointIndex.NOT_FOUND);
+    assertEquals(index.put(new FaceUri("udp6://[2001:db8::1]:6363"), 2), EndpointIndex.NOT_FOUND);
+    assertEquals(index.put(new FaceUri("udp4://192.0.2.1:6364"), 3), EndpointIndex.NOT_FOUND);
+    assertEquals(index.size(), 3);
+
+    assertEquals(index.get(new FaceUri("udp4://192.0.2.1:6363")), 1);
+    assertEquals(index.get(new FaceUri("udp6://[2001:db8:0::1]:6363")), 2);
+    assertEquals(index.get(new FaceUri("udp4://192.0.2.1:6364")), 3);
+    assertEquals(index.get(new FaceUri("udp4://192.0.2.2:6363")), EndpointIndex.NOT_FOUND);
+    assertEquals(index.get(new FaceUri("udp6://[::c000:201]:6363")), EndpointIndex.NOT_FOUND);
+    assertEquals(index.get(new FaceUri("udp4://192.0.2.1")), EndpointIndex.NOT_FOUND);
+    assertEquals(index.get(new FaceUri("udp4://example.net:6363")), EndpointIndex.NOT_FOUND);
+
+    assertEquals(index.getIpv4(0xC0000201, 6363), 1);
+    assertEquals(index.getIpv6(0x20010DB800000000L, 1, 6363), 2);
+    assertEquals(index.get(new InetSocketAddress("192.0.2.1", 6364)), 3);
+    assertEquals(index.get(new InetSocketAddress("2001:db8::1", 6363)), 2);
+    assertEquals(index.getIpv4(0xC0000201, 70000), EndpointIndex.NOT_FOUND);
+
+    assertEquals(index.put(new FaceUri("udp4://192.0.2.1:6363"), 10), 1);
+    assertEquals(index.get(new FaceUri("udp4://192.0.2.1:6363")), 10);
+    assertEquals(index.size(), 3);
+
+    assertEquals(index.remove(new FaceUri("udp4://192.0.2.1:6363")), 10);
+    assertEquals(index.remove(new FaceUri("udp4://192.0.2.1:6363")), EndpointIndex.NOT_FOUND);
+    assertEquals(index.get(new FaceUri("udp4://192.0.2.1:6363")), EndpointIndex.NOT_FOUND);
+    assertEquals(index.removeIpv6(0x20010DB800000000L, 1, 6363), 2);
+    assertEquals(index.get(new FaceUri("udp4://192.0.2.1:6364")), 3);
+    assertEquals(index.size(), 1);
+
+    index.clear();
+    assertEquals(index.size(), 0);
+    assertEquals(index.getIpv4(0xC0000201, 6364), EndpointIndex.NOT_FOUND);
+  }
+
+  @Test
+  public void InvalidArguments() throws Exception
+  {
+    EndpointIndex index = new EndpointIndex();
+    String[] invalid = {"udp4://example.net:6363", "udp4://192.0.2.1", "dev://eth0"};
+    for (String uri : invalid) {
+      try {
+        index.put(new FaceUri(uri), 1);
+        fail("put(" + uri + ") should have failed");
+      }
+      catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+    try {
+      index.putIpv4(0, 65536, 1);
+      fail("putIpv4 with invalid port should have failed");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      index.putIpv4(0, 6363, -1);
+      fail("putIpv4 with negative face id should have failed");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+    assertEquals(index.size(), 0);
+  }
+
+  @Test
+  public void GrowAndReclaim()
+  {
+    EndpointIndex index = new EndpointIndex();
+    int n = 100000;
+    for (int i = 0; i < n; ++i) {
+      index.putIpv4(0x0A000000 + i, 6363, i);
+      index.putIpv6(0x20010DB800000000L, i, i & 0xFFFF, n + i);
+    }
+    assertEquals(index.size(), 2 * n);
+    for (int i = 0; i < n; ++i) {
+      assertEquals(index.getIpv4(0x0A000000 + i, 6363), i);
+      assertEquals(index.getIpv6(0x20010DB800000000L, i, i & 0xFFFF), n + i);
+    }
+
+    // churn leaves tombstones behind; lookups of missing keys must still terminate
+    for (int round = 0; round < 10; ++round) {
+      for (int i = 0; i < n; ++i) {
+        assertEquals(index.removeIpv4(0x0A000000 + i, 6363), i);
+        index.putIpv4(0x0A000000 + i, 6363, i);
+      }
+    }
+    for (int i = 0; i < n; ++i) {
+      index.removeIpv6(0x20010DB800000000L, i, i & 0xFFFF);
+    }
+    assertEquals(index.size(), n);
+    assertEquals(index.getIpv4(0x0B000000, 6363), EndpointIndex.NOT_FOUND);
+    for (int i = 0; i < n; ++i) {
+      assertEquals(index.getIpv4(0x0A000000 + i, 6363), i);
+    }
+  }
+
+  @Test
+  public void ConcurrentReaders() throws Exception
+  {
+    final EndpointIndex index = new EndpointIndex();
+    final int nStable = 1000;
+    for (int i = 0; i < nStable; ++i) {
+      index.putIpv4(0x0A000000 + i, 6363, i);
+    }
+
+    final AtomicBoolean isDone = new AtomicBoolean(false);
+    final AtomicReference<String> error = new AtomicReference<>();
+    Thread[] readers = new Thread[4];
+    for (int t = 0; t < readers.length; ++t) {
+      readers[t] = new Thread() {
+        @Override
+        public void
+        run() {
+          while (!isDone.get()) {
+            for (int i = 0; i < nStable; ++i) {
+              long faceId = index.getIpv4(0x0A000000 + i, 6363);
+              if (faceId != i) {
+                error.set("stable endpoint " + i + " mapped to " + faceId);
+                return;
+              }
+            }
+          }
+        }
+      };
+      readers[t].start();
+    }
+
+    // writer grows the table several times and churns entries while readers run
+    for (int i = 0; i < 200000; ++i) {
+      index.putIpv4(0x0B000000 + i, 6363, i);
+      if (i % 3 == 0) {
+        index.removeIpv4(0x0B000000 + i / 2, 6363);
+      }
+    }
+    isDone.set(true);
+    for (Thread reader : readers) {
+      reader.join();
+    }
+    assertEquals(error.get(), null);
+  }
+}
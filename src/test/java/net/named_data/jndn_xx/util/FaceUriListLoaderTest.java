@@ -0,0 +1,135 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class FaceUriListLoaderTest {
+
+  @Rule
+  public TemporaryFolder m_folder = new TemporaryFolder();
+
+  private static class Collector implements FaceUriListLoader.Callback {
+    @Override
+    public void
+    onFaceUri(long lineNumber, FaceUri uri) {
+      m_records.add(lineNumber + " " + uri.toString());
+    }
+
+    @Override
+    public void
+    onError(FaceUriListLoader.ParseError error) {
+      m_records.add(error.getLineNumber() + " error " + error.getLine());
+    }
+
+    final List<String> m_records = new ArrayList<String>();
+  }
+
+  private Path
+  writeFile(String content) throws IOException {
+    Path file = m_folder.newFile().toPath();
+    Files.write(file, content.getBytes(StandardCharsets.ISO_8859_1));
+    return file;
+  }
+
+  @Test
+  public void LoadOrderedAndUnordered() throws IOException
+  {
+    StringBuilder content = new StringBuilder();
+    List<String> expected = new ArrayList<String>();
+    for (int i = 1; i <= 200; ++i) {
+      switch (i % 5) {
+        case 0:
+          content.append("udp4://192.0.2.").append(i).append(":6363\r\n");
+          expected.add(i + " udp4://192.0.2." + i + ":6363");
+          break;
+        case 1:
+          content.append("  tcp://host").append(i).append(".example.net/path  \n");
+          expected.add(i + " tcp://host" + i + ".example.net/path");
+          break;
+        case 2:
+          content.append("\n");
+          break;
+        case 3:
+          content.append("# comment ").append(i).append("\n");
+          break;
+        default:
+          content.append("udp://bad:port").append(i).append("\n");
+          expected.add(i + " error udp://bad:port" + i);
+          break;
+      }
+    }
+    content.append("udp6://[2001:db8::1]");
+    expected.add("201 udp6://[2001:db8::1]");
+    Path file = writeFile(content.toString());
+
+    for (int chunkSize : new int[]{1, 7, 64, 1 << 20}) {
+      FaceUriListLoader loader = new FaceUriListLoader(new ForkJoinPool(4), chunkSize);
+
+      Collector ordered = new Collector();
+      assertEquals(loader.load(file, ordered, true), 81);
+      assertEquals(ordered.m_records, expected);
+
+      Collector unordered = new Collector();
+      assertEquals(loader.load(file, unordered, false), 81);
+      List<String> sorted = new ArrayList<String>(unordered.m_records);
+      Collections.sort(sorted);
+      List<String> sortedExpected = new ArrayList<String>(expected);
+      Collections.sort(sortedExpected);
+      assertEquals(sorted, sortedExpected);
+    }
+  }
+
+  @Test
+  public void EmptyAndLongLines() throws IOException
+  {
+    Collector empty = new Collector();
+    assertEquals(new FaceUriListLoader().load(writeFile(""), empty, true), 0);
+    assertEquals(empty.m_records.size(), 0);
+
+    StringBuilder longHost = new StringBuilder();
+    for (int i = 0; i < FaceUriListLoader.MAX_LINE_LENGTH + 10; ++i) {
+      longHost.append('a');
+    }
+    Path file = writeFile("udp://a\nudp://" + longHost + "\nudp://b\n");
+
+    Collector collector = new Collector();
+    assertEquals(new FaceUriListLoader(new ForkJoinPool(2), 4).load(file, collector, true), 2);
+    assertEquals(collector.m_records.size(), 3);
+    assertEquals(collector.m_records.get(0), "1 udp://a");
+    assertEquals(collector.m_records.get(1).startsWith("2 error udp://aaaa"), true);
+    assertEquals(collector.m_records.get(2), "3 udp://b");
+  }
+}
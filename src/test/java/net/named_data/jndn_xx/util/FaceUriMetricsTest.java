@@ -0,0 +1,198 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FaceUriMetricsTest {
+
+  @Before
+  public void setUp()
+  {
+    FaceUriMetrics.reset();
+    FaceUriMetrics.setEnabled(true);
+  }
+
+  @After
+  public void tearDown()
+  {
+    FaceUriMetrics.setEnabled(false);
+    FaceUriMetrics.reset();
+  }
+
+  @Test
+  public void Parse()
+  {
+    FaceUri uri = new FaceUri();
+    assertTrue(uri.parse("udp4://192.0.2.1:6363"));
+    assertTrue(uri.parse(new StringBuilder("tcp://example.net")));
+    assertFalse(uri.parse("udp4://192.0.2.1:99999"));
+
+    FaceUriMetrics.Snapshot snapshot = FaceUriMetrics.getSnapshot();
+    assertEquals(snapshot.getParseSuccessCount(), 2);
+    assertEquals(snapshot.getParseFailureCount(), 1);
+    assertEquals(snapshot.getParseLatency().getCount(), 3);
+
+    FaceUriMetrics.setEnabled(false);
+    assertTrue(uri.parse("udp4://192.0.2.1:6363"));
+    assertEquals(FaceUriMetrics.getSnapshot().getParseSuccessCount(), 2);
+
+    FaceUriMetrics.reset();
+    assertEquals(FaceUriMetrics.getSnapshot().getParseSuccessCount(), 0);
+    assertEquals(FaceUriMetrics.getSnapshot().getParseLatency().getPercentileNanos(99), 0);
+  }
+
+  @Test
+  public void Canonize() throws Exception
+  {
+    assertTrue(new FaceUri("udp4://192.0.2.1:6363").isCanonical());
+    assertEquals(new FaceUri("udp://192.0.2.1").canonize().toString(), "udp4://192.0.2.1:6363");
+    assertEquals(new FaceUri("udp6://[2001:db8::1]").canonizeAsync().get(5, TimeUnit.SECONDS).toString(),
+                 "udp6://[2001:db8::1]:6363");
+    try {
+      new FaceUri("udp4://[2001:db8::1]").canonize();
+      fail("udp4 with IPv6 address should not canonize");
+    }
+    catch (FaceUri.CanonizeError e) {
+      assertEquals(e.getReason(), FaceUri.CanonizeError.Reason.CANNOT_RESOLVE);
+    }
+    try {
+      new FaceUri("unsupported://192.0.2.1").canonize();
+      fail("unsupported scheme should not canonize");
+    }
+    catch (FaceUri.CanonizeError e) {
+      assertEquals(e.getReason(), FaceUri.CanonizeError.Reason.UNSUPPORTED_SCHEME);
+    }
+    FaceUri.CanonizeResult unsupported =
+      FaceUri.canonizeAll(Collections.singletonList(new FaceUri("unsupported://192.0.2.1"))).get(0);
+    assertEquals(unsupported.getError().getReason(), FaceUri.CanonizeError.Reason.UNSUPPORTED_SCHEME);
+
+    FaceUriMetrics.Snapshot snapshot = FaceUriMetrics.getSnapshot();
+    FaceUriMetrics.ProviderSnapshot udp = snapshot.getProviders().get("udp,udp4,udp6");
+    assertEquals(udp.getCanonizeCount(), 3);
+    assertEquals(udp.getCanonizeFailureCount(), 1);
+    assertTrue(udp.getIsCanonicalCount() >= 1);
+    assertEquals(udp.getCanonizeLatency().getCount(), 3);
+    assertEquals(snapshot.getCanonizeErrors().get(FaceUri.CanonizeError.Reason.CANNOT_RESOLVE).longValue(), 1);
+    assertEquals(snapshot.getCanonizeErrors().get(FaceUri.CanonizeError.Reason.UNSUPPORTED_SCHEME).longValue(), 2);
+    assertEquals(snapshot.getCanonizeErrors().get(FaceUri.CanonizeError.Reason.OTHER).longValue(), 0);
+  }
+
+  @Test
+  public void Resolve() throws Exception
+  {
+    ResolverCache cache = new ResolverCache(new HostResolver() {
+      @Override
+      public InetAddress[]
+      resolve(String host) throws UnknownHostException {
+        if (host.equals("good.example")) {
+          return new InetAddress[]{InetAddress.getByAddress(host, new byte[]{(byte)192, 0, 2, 1})};
+        }
+        throw new UnknownHostException(host);
+      }
+    }, 16, 1, 1, 0, TimeUnit.MINUTES, MoreExecutors.directExecutor());
+
+    cache.resolve("good.example");
+    cache.resolve("good.example"); // cached
+    try {
+      cache.resolve("bad.example");
+      fail("bad.example should not resolve");
+    }
+    catch (UnknownHostException e) {
+      // expected
+    }
+
+    FaceUriMetrics.Snapshot snapshot = FaceUriMetrics.getSnapshot();
+    assertEquals(snapshot.getResolveCount(), 2);
+    assertEquals(snapshot.getResolveFailureCount(), 1);
+  }
+
+  @Test
+  public void LatencyHistogram()
+  {
+    for (long value : new long[]{0, 1, 7, 8, 9, 15, 16, 1000, 123456789, Long.MAX_VALUE}) {
+      int bucket = LatencyHistogram.getBucket(value);
+      assertTrue(bucket < LatencyHistogram.N_BUCKETS);
+      assertTrue(value <= LatencyHistogram.getBucketUpperBound(bucket));
+      assertTrue(bucket == 0 || value > LatencyHistogram.getBucketUpperBound(bucket - 1));
+    }
+
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 100; ++i) {
+      histogram.record(i * 1000);
+    }
+    FaceUriMetrics.LatencySnapshot snapshot = histogram.snapshot();
+    assertEquals(snapshot.getCount(), 100);
+    assertEquals(snapshot.getMeanNanos(), 50500, 0);
+    long p50 = snapshot.getPercentileNanos(50);
+    assertTrue(p50 >= 50000 && p50 <= 50000 * 1.125);
+    long p99 = snapshot.getPercentileNanos(99);
+    assertTrue(p99 >= 99000 && p99 <= 99000 * 1.125);
+    assertTrue(snapshot.getMaxNanos() >= 100000);
+  }
+
+  @Test
+  public void MBean() throws Exception
+  {
+    ObjectName name = FaceUriMetrics.registerMBean();
+    assertEquals(FaceUriMetrics.registerMBean(), name); // idempotent
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      assertTrue(server.isRegistered(name));
+
+      new FaceUri("udp4://192.0.2.1:6363");
+      assertEquals(server.getAttribute(name, "Enabled"), true);
+      assertEquals(server.getAttribute(name, "ParseSuccessCount"), 1L);
+      assertTrue(server.getAttribute(name, "CanonizeErrorCounts") instanceof TabularData);
+
+      FaceUriMetricsMXBean proxy =
+        JMX.newMXBeanProxy(server, name, FaceUriMetricsMXBean.class);
+      Map<String, Long> errors = proxy.getCanonizeErrorCounts();
+      assertEquals(errors.get("CANNOT_RESOLVE").longValue(), 0);
+      proxy.setEnabled(false);
+      assertFalse(FaceUriMetrics.isEnabled());
+    }
+    finally {
+      FaceUriMetrics.unregisterMBean();
+    }
+    assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+  }
+}
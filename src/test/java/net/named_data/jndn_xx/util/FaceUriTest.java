@@ -21,11 +21,49 @@
 
 package net.named_data.jndn_xx.util;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.net.InetAddresses;
+import com.google.common.primitives.Bytes;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.junit.Test;
 
+import java.io.StringWriter;
 import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -94,6 +132,131 @@ public class FaceUriTest {
     assertEquals(uri.parse("udp6://[2001:db8:3f9:0:3025:ccc5:eeeb:86dg]:6363"), false);
   }
 
+  @Test
+  public void ParseAuthorityForms()
+  {
+    FaceUri uri = new FaceUri();
+
+    assertTrue(uri.parse("udp6://[::1]"));
+    assertEquals(uri.getHost(), "::1");
+    assertEquals(uri.getPort(), "");
+    assertEquals(uri.toString(), "udp6://[::1]");
+
+    assertTrue(uri.parse("udp4://[::ffff:192.0.2.1]"));
+    assertEquals(uri.getHost(), "192.0.2.1");
+    assertEquals(uri.getPort(), "");
+    assertEquals(uri.toString(), "udp4://192.0.2.1");
+
+    assertTrue(uri.parse("ws://host:9696/path/to"));
+    assertEquals(uri.getHost(), "host");
+    assertEquals(uri.getPort(), "9696");
+    assertEquals(uri.getPath(), "/path/to");
+
+    assertEquals(uri.parse("ws://host:9696/path?query"), false);
+    assertEquals(uri.parse("udp6://[::1]:"), false);
+    assertEquals(uri.parse("udp6://[::1]x"), false);
+    assertEquals(uri.parse("udp4://[::ffff:192.0.2]"), false);
+    assertEquals(uri.parse("udp://:6363"), false);
+    assertEquals(uri.parse("://host"), false);
+  }
+
+  @Test
+  public void PortNumber() throws FaceUri.CanonizeError
+  {
+    FaceUri uri = new FaceUri();
+
+    assertTrue(uri.parse("udp4://192.0.2.1:6363"));
+    assertEquals(uri.getPortNumber(), 6363);
+    assertTrue(uri.parse("udp4://192.0.2.1"));
+    assertEquals(uri.getPortNumber(), -1);
+    assertTrue(uri.parse("udp6://[2001:db8::1]:65535"));
+    assertEquals(uri.getPortNumber(), 65535);
+    assertTrue(uri.parse("tcp4://[::ffff:192.0.2.1]:0"));
+    assertEquals(uri.getPortNumber(), 0);
+
+    assertEquals(uri.parse("udp4://192.0.2.1:65536"), false);
+    assertEquals(uri.parse("udp6://[2001:db8::1]:99999"), false);
+    assertEquals(uri.parse("udp4://[::ffff:192.0.2.1]:100000000000"), false);
+
+    // leading zeros are preserved in text, but are not canonical
+    assertTrue(uri.parse("udp4://192.0.2.1:06363"));
+    assertEquals(uri.getPortNumber(), 6363);
+    assertEquals(uri.getPort(), "06363");
+    assertFalse(uri.equals(new FaceUri("udp4://192.0.2.1:6363")));
+    assertFalse(uri.isCanonical());
+    assertEquals(uri.canonize().toString(), "udp4://192.0.2.1:6363");
+  }
+
+  @Test
+  public void AppendTo() throws Exception
+  {
+    StringBuilder out = new StringBuilder();
+    new FaceUri("udp6://[2001:db8::1]:6363").appendTo(out).append(' ');
+    new FaceUri("udp4://[::ffff:192.0.2.1]").appendTo(out).append(' ');
+    new FaceUri("wss://hub.example.net:443/ndn").appendTo(out).append(' ');
+    FaceUri.readFrom(encode(new FaceUri("tcp4://192.0.2.1:06363"))).appendTo(out);
+    assertEquals(out.toString(), "udp6://[2001:db8::1]:6363 udp4://192.0.2.1 wss://hub.example.net:443/ndn " +
+                                 "tcp4://192.0.2.1:06363");
+
+    StringWriter writer = new StringWriter();
+    FaceUri uri = new FaceUri();
+    assertTrue(uri.parse("dev://eth0".getBytes(), 0, 10));
+    uri.appendTo(writer);
+    assertEquals(writer.toString(), "dev://eth0");
+
+    // toString is cached until the next parse
+    assertSame(uri.toString(), uri.toString());
+    assertTrue(uri.parse("internal://"));
+    assertEquals(uri.toString(), "internal://");
+    assertEquals(new FaceUri().toString(), "://");
+  }
+
+  private static ByteBuffer
+  encode(FaceUri uri) {
+    ByteBuffer buffer = ByteBuffer.allocate(uri.getEncodedSize());
+    uri.writeTo(buffer);
+    buffer.flip();
+    return buffer;
+  }
+
+  @Test
+  public void ParseWithoutString()
+  {
+    FaceUri uri = new FaceUri();
+
+    StringBuilder builder = new StringBuilder("udp6://[2001:db8::1]:6363/path");
+    assertTrue(uri.parse(builder));
+    builder.setLength(0);
+    assertEquals(uri.getScheme(), "udp6");
+    assertSame(uri.getScheme(), "udp6");
+    assertEquals(uri.getHost(), "2001:db8::1");
+    assertEquals(uri.getPort(), "6363");
+    assertEquals(uri.getPath(), "/path");
+    assertEquals(uri.toString(), "udp6://[2001:db8::1]:6363/path");
+
+    byte[] bytes = "xxtcp4://192.0.2.1:6363yy".getBytes();
+    assertTrue(uri.parse(bytes, 2, 21));
+    bytes[6] = 'x';
+    assertEquals(uri, new FaceUri("tcp4://192.0.2.1:6363"));
+    assertEquals(uri.parse(bytes, 2, 21), false);
+    assertEquals(uri.parse(bytes, 2, 23), false);
+
+    ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+    buffer.put("ether://[08:00:27:01:dd:01]".getBytes()).flip();
+    assertTrue(uri.parse(buffer));
+    assertEquals(buffer.position(), 0);
+    assertEquals(uri.getHost(), "08:00:27:01:dd:01");
+    assertEquals(uri.toString(), "ether://[08:00:27:01:dd:01]");
+
+    buffer.position(8);
+    assertEquals(uri.parse(buffer), false);
+    assertEquals(uri.getScheme(), "");
+    assertEquals(uri.getHost(), "");
+
+    assertTrue(uri.parse(ByteBuffer.wrap("xunix:///var/run/nfd.sock".getBytes(), 1, 24)));
+    assertEquals(uri.getPath(), "/var/run/nfd.sock");
+  }
+
   @Test
   public void CheckCanonicalUdp() {
    assertEquals(FaceUri.canCanonize("udp"), true);
@@ -164,6 +327,253 @@ public class FaceUriTest {
     addTest("udp6://[ff02::2]", true, "udp6://[ff02::2]:56363");
   }
 
+  @Test
+  public void CanonizeAsync() throws Exception
+  {
+    assertEquals(new FaceUri("udp://192.0.2.2:6363").canonizeAsync().get().toString(), "udp4://192.0.2.2:6363");
+    assertEquals(new FaceUri("tcp6://[2001:db8::01]").canonizeAsync().get().toString(), "tcp6://[2001:db8::1]:6363");
+
+    try {
+      new FaceUri("dev://eth1").canonizeAsync().get();
+      fail("Canonization should have failed");
+    }
+    catch (ExecutionException e) {
+      assertSame(e.getCause().getClass(), FaceUri.CanonizeError.class);
+    }
+
+    try {
+      new FaceUri("tcp4://224.0.23.170").canonizeAsync().get();
+      fail("Canonization should have failed");
+    }
+    catch (ExecutionException e) {
+      assertSame(e.getCause().getClass(), FaceUri.CanonizeError.class);
+    }
+
+    Executor rejecting = new Executor() {
+      @Override
+      public void
+      execute(Runnable command) {
+        throw new RejectedExecutionException();
+      }
+    };
+    // literals are canonized without the executor
+    assertEquals(new FaceUri("udp://192.0.2.2").canonizeAsync(rejecting).get().toString(), "udp4://192.0.2.2:6363");
+
+    try {
+      new FaceUri("udp://rejected.example.net").canonizeAsync(rejecting).get();
+      fail("Canonization should have failed");
+    }
+    catch (ExecutionException e) {
+      assertSame(e.getCause().getClass(), FaceUri.CanonizeError.class);
+    }
+  }
+
+  @Test
+  public void CanonizeWithTimeout() throws Exception
+  {
+    final SettableFuture<FaceUri> never = SettableFuture.create();
+    FaceUri.CanonizeProvider slow = new FaceUri.CanonizeProvider() {
+      @Override
+      public Set<String>
+      getSchemes() {
+        return Collections.singleton("slow");
+      }
+
+      @Override
+      public boolean
+      isCanonical(FaceUri faceUri) {
+        return false;
+      }
+
+      @Override
+      public FaceUri
+      canonize(FaceUri faceUri) throws FaceUri.CanonizeError {
+        throw new AssertionError("Blocking canonize must not be used with timeout");
+      }
+
+      @Override
+      public ListenableFuture<FaceUri>
+      canonizeAsync(FaceUri faceUri, Executor executor) {
+        return never;
+      }
+    };
+
+    FaceUri.registerCanonizeProvider(slow);
+    try {
+      long start = System.nanoTime();
+      try {
+        new FaceUri("slow://hub.example").canonize(50, TimeUnit.MILLISECONDS);
+        fail("Canonization should have timed out");
+      }
+      catch (FaceUri.CanonizeError e) {
+        assertEquals(e.getReason(), FaceUri.CanonizeError.Reason.TIMEOUT);
+      }
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+      assertTrue(never.isCancelled());
+    }
+    finally {
+      FaceUri.unregisterCanonizeProvider(slow);
+    }
+
+    assertEquals(new FaceUri("udp://192.0.2.2").canonize(1, TimeUnit.SECONDS).toString(), "udp4://192.0.2.2:6363");
+    assertEquals(new FaceUri("udp://192.0.2.2").canonize(0, TimeUnit.SECONDS).toString(), "udp4://192.0.2.2:6363");
+    try {
+      new FaceUri("tcp4://224.0.23.170").canonize(1, TimeUnit.SECONDS);
+      fail("Canonization should have failed");
+    }
+    catch (FaceUri.CanonizeError e) {
+      assertEquals(e.getReason(), FaceUri.CanonizeError.Reason.PROHIBITED_ADDRESS);
+    }
+    try {
+      new FaceUri("slow://hub.example").canonize(1, TimeUnit.SECONDS);
+      fail("Canonization should have failed");
+    }
+    catch (FaceUri.CanonizeError e) {
+      assertEquals(e.getReason(), FaceUri.CanonizeError.Reason.UNSUPPORTED_SCHEME);
+    }
+  }
+
+  @Test
+  public void CanonizeWithTimeoutStuckResolutions() throws Exception
+  {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch interrupted = new CountDownLatch(1);
+    FaceUri.CanonizeProvider stuck = new TestCanonizeProvider("stuck") {
+      @Override
+      public ListenableFuture<FaceUri>
+      canonizeAsync(final FaceUri faceUri, Executor executor) {
+        ListenableFutureTask<FaceUri> task = ListenableFutureTask.create(new Callable<FaceUri>() {
+          @Override
+          public FaceUri
+          call() throws Exception {
+            if (faceUri.getHost().equals("interruptible")) {
+              try {
+                release.await();
+              }
+              catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+              }
+            }
+            else if (!faceUri.getHost().equals("fast")) {
+              Uninterruptibles.awaitUninterruptibly(release); // like a resolver ignoring interrupts
+            }
+            return canonize(faceUri);
+          }
+        });
+        executor.execute(task);
+        return task;
+      }
+    };
+
+    FaceUri.registerCanonizeProvider(stuck);
+    try {
+      // more stuck resolutions than threads of the default executor
+      for (int i = 0; i < 8; ++i) {
+        try {
+          new FaceUri("stuck://host" + i + "/path").canonize(10, TimeUnit.MILLISECONDS);
+          fail("Canonization should have timed out");
+        }
+        catch (FaceUri.CanonizeError e) {
+          assertEquals(e.getReason(), FaceUri.CanonizeError.Reason.TIMEOUT);
+        }
+      }
+      assertEquals(new FaceUri("stuck://fast/path").canonize(5, TimeUnit.SECONDS).toString(), "stuck://fast");
+
+      // timed-out canonization is cancelled with interruption
+      try {
+        new FaceUri("stuck://interruptible/path").canonize(10, TimeUnit.MILLISECONDS);
+        fail("Canonization should have timed out");
+      }
+      catch (FaceUri.CanonizeError e) {
+        assertEquals(e.getReason(), FaceUri.CanonizeError.Reason.TIMEOUT);
+      }
+      assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+    finally {
+      release.countDown();
+      FaceUri.unregisterCanonizeProvider(stuck);
+    }
+  }
+
+  @Test
+  public void CanonizeAll() throws InterruptedException
+  {
+    List<FaceUri> uris = Arrays.asList(new FaceUri("udp4://192.0.2.1"),
+                                       new FaceUri("dev://eth1"),
+                                       new FaceUri("tcp://[2001:db8::01]:6363"),
+                                       new FaceUri("udp4://192.0.2.1:9695"),
+                                       new FaceUri("tcp4://224.0.23.170"),
+                                       new FaceUri("udp4://192.0.2.666"));
+
+    for (int parallelism : new int[]{1, 4}) {
+      List<FaceUri.CanonizeResult> results = FaceUri.canonizeAll(uris, parallelism);
+      assertEquals(results.size(), uris.size());
+      for (int i = 0; i < uris.size(); ++i) {
+        assertSame(results.get(i).getInput(), uris.get(i));
+      }
+
+      assertEquals(results.get(0).getCanonical().toString(), "udp4://192.0.2.1:6363");
+      assertFalse(results.get(1).isSuccess());
+      assertNull(results.get(1).getCanonical());
+      assertEquals(results.get(2).getCanonical().toString(), "tcp6://[2001:db8::1]:6363");
+      assertEquals(results.get(3).getCanonical().toString(), "udp4://192.0.2.1:9695");
+      assertFalse(results.get(4).isSuccess());
+      assertFalse(results.get(5).isSuccess());
+    }
+  }
+
+  @Test
+  public void CanonizeAllWithThrowingProvider() throws InterruptedException
+  {
+    FaceUri.CanonizeProvider throwing = new FaceUri.CanonizeProvider() {
+      @Override
+      public Set<String>
+      getSchemes() {
+        return Collections.singleton("throwing");
+      }
+
+      @Override
+      public boolean
+      isCanonical(FaceUri faceUri) {
+        return false;
+      }
+
+      @Override
+      public FaceUri
+      canonize(FaceUri faceUri) throws FaceUri.CanonizeError {
+        if (faceUri.getPath().equals("/bug")) {
+          throw new IllegalStateException("provider bug");
+        }
+        return new FaceUri("throwing://" + faceUri.getHost());
+      }
+
+      @Override
+      public ListenableFuture<FaceUri>
+      canonizeAsync(FaceUri faceUri, Executor executor) {
+        throw new UnsupportedOperationException();
+      }
+    };
+
+    FaceUri.registerCanonizeProvider(throwing);
+    try {
+      // all members share the same group
+      List<FaceUri> uris = Arrays.asList(new FaceUri("throwing://host/bug"),
+                                         new FaceUri("throwing://host/path"),
+                                         new FaceUri("udp4://192.0.2.1"));
+      for (int parallelism : new int[]{1, 4}) {
+        List<FaceUri.CanonizeResult> results = FaceUri.canonizeAll(uris, parallelism);
+        assertFalse(results.get(0).isSuccess());
+        assertEquals(results.get(0).getError().getReason(), FaceUri.CanonizeError.Reason.OTHER);
+        assertEquals(results.get(1).getCanonical().toString(), "throwing://host");
+        assertEquals(results.get(2).getCanonical().toString(), "udp4://192.0.2.1:6363");
+      }
+    }
+    finally {
+      FaceUri.unregisterCanonizeProvider(throwing);
+    }
+  }
+
   @Test
   public void ParseTcp()
   {
@@ -274,22 +684,31 @@ public class FaceUriTest {
     assertEquals(uri.parse("ether://[08:00:27:zz:dd:01]"), false);
   }
 
-  // @Test
-  // public void CanonizeEther()
-  // {
-  //   // not supported (yet?)
-  //   assertEquals(FaceUri.canCanonize("ether"), true);
+  @Test
+  public void CanonizeEther() throws FaceUri.CanonizeError
+  {
+    assertEquals(FaceUri.canCanonize("ether"), true);
 
-  //   assertEquals(FaceUri("ether://[08:00:27:01:01:01]").isCanonical(), true);
-  //   assertEquals(FaceUri("ether://[08:00:27:1:1:1]").isCanonical(), false);
-  //   assertEquals(FaceUri("ether://[08:00:27:01:01:01]/").isCanonical(), false);
-  //   assertEquals(FaceUri("ether://[33:33:01:01:01:01]").isCanonical(), true);
+    assertEquals(new FaceUri("ether://[08:00:27:01:01:01]").isCanonical(), true);
+    assertEquals(new FaceUri("ether://[08:00:27:1:1:1]").isCanonical(), false);
+    assertEquals(new FaceUri("ether://[08:00:27:01:01:01]/").isCanonical(), false);
+    assertEquals(new FaceUri("ether://[33:33:01:01:01:01]").isCanonical(), true);
+    assertEquals(new FaceUri("ether://[08:00:27:0A:dd:01]").isCanonical(), false);
 
-  //   addTest("ether://[08:00:27:01:01:01]", true, "ether://[08:00:27:01:01:01]");
-  //   addTest("ether://[08:00:27:1:1:1]", true, "ether://[08:00:27:01:01:01]");
-  //   addTest("ether://[08:00:27:01:01:01]/", true, "ether://[08:00:27:01:01:01]");
-  //   addTest("ether://[33:33:01:01:01:01]", true, "ether://[33:33:01:01:01:01]");
-  // }
+    addTest("ether://[08:00:27:01:01:01]", true, "ether://[08:00:27:01:01:01]");
+    addTest("ether://[08:00:27:1:1:1]", true, "ether://[08:00:27:01:01:01]");
+    addTest("ether://[08:00:27:01:01:01]/", true, "ether://[08:00:27:01:01:01]");
+    addTest("ether://[33:33:01:01:01:01]", true, "ether://[33:33:01:01:01:01]");
+    addTest("ether://[08:00:27:0A:DD:01]", true, "ether://[08:00:27:0a:dd:01]");
+    addTest("ether://[08:00:27:01:01]", false, "");
+    addTest("ether://[08:00:27:01:01:01:01]", false, "");
+    addTest("ether://[08:00:27:001:01:01]", false, "");
+    addTest("ether://[08:00:27:01:01:01]:6363", false, "");
+    addTest("ether://08-00-27-01-01-01", false, "");
+
+    assertEquals(FaceUri.EtherCanonizeProvider.parseAddress("ff:ff:ff:ff:ff:ff"), 0xFFFFFFFFFFFFL);
+    assertEquals(FaceUri.EtherCanonizeProvider.parseAddress("8:0:27:1:dd:1"), 0x08002701DD01L);
+  }
 
   @Test
   public void ParseDev()
@@ -303,6 +722,40 @@ public class FaceUriTest {
     assertEquals(uri.getPath(), "");
   }
 
+  @Test
+  public void CanonizeDev() throws Exception
+  {
+    assertEquals(FaceUri.canCanonize("dev"), true);
+
+    NetworkInterfaceCache interfaces =
+      new NetworkInterfaceCache(Suppliers.<Set<String>>ofInstance(ImmutableSet.of("eth0", "lo")), 1, TimeUnit.HOURS);
+    FaceUri.DevCanonizeProvider provider = new FaceUri.DevCanonizeProvider(interfaces);
+    try {
+      assertEquals(provider.isCanonical(new FaceUri("dev://eth0")), true);
+      assertEquals(provider.isCanonical(new FaceUri("dev://eth0/")), false);
+      assertEquals(provider.isCanonical(new FaceUri("dev://eth1")), false);
+      assertEquals(provider.isCanonical(new FaceUri("dev://eth0:6363")), false);
+
+      assertEquals(provider.canonize(new FaceUri("dev://eth0")).toString(), "dev://eth0");
+      assertEquals(provider.canonize(new FaceUri("dev://lo/")).toString(), "dev://lo");
+      assertEquals(provider.canonizeAsync(new FaceUri("dev://lo"), MoreExecutors.directExecutor()).get().toString(),
+                   "dev://lo");
+      for (String uri : new String[]{"dev://eth1", "dev://eth0:6363", "dev://[::1]"}) {
+        try {
+          provider.canonize(new FaceUri(uri));
+          fail("Canonization of " + uri + " should have failed");
+        }
+        catch (FaceUri.CanonizeError e) {
+        }
+      }
+    }
+    finally {
+      interfaces.close();
+    }
+
+    addTest("dev://no-such-interface-0", false, "");
+  }
+
   @Test
   public void CanonizeUnsupported() throws FaceUri.CanonizeError
   {
@@ -310,19 +763,528 @@ public class FaceUriTest {
     assertEquals(FaceUri.canCanonize("null"), false);
     assertEquals(FaceUri.canCanonize("unix"), false);
     assertEquals(FaceUri.canCanonize("fd"), false);
-    assertEquals(FaceUri.canCanonize("dev"), false);
 
     assertEquals(new FaceUri("internal://").isCanonical(), false);
     assertEquals(new FaceUri("null://").isCanonical(), false);
     assertEquals(new FaceUri("unix:///var/run/nfd.sock").isCanonical(), false);
     assertEquals(new FaceUri("fd://0").isCanonical(), false);
-    assertEquals(new FaceUri("dev://eth1").isCanonical(), false);
 
     addTest("internal://", false, "");
     addTest("null://", false, "");
     addTest("unix:///var/run/nfd.sock", false, "");
     addTest("fd://0", false, "");
-    addTest("dev://eth1", false, "");
+  }
+
+  @Test
+  public void EqualsAndHashCode()
+  {
+    FaceUri a = new FaceUri("udp4://192.0.2.1:6363");
+    FaceUri b = new FaceUri(new StringBuilder("udp4://").append("192.0.2.1:6363").toString());
+
+    assertTrue(a.equals(b));
+    assertTrue(a.equals((Object)b));
+    assertEquals(a.hashCode(), b.hashCode());
+    assertFalse(a.equals(new FaceUri("udp4://192.0.2.1:6364")));
+    assertFalse(a.equals(new FaceUri("udp6://[::1]:6363")));
+    assertFalse(new FaceUri("udp6://[::1]").equals(new FaceUri("udp6://[::ffff:0.0.0.1]")));
+    assertFalse(a.equals((Object)"udp4://192.0.2.1:6363"));
+
+    Map<FaceUri, Integer> faces = new HashMap<FaceUri, Integer>();
+    faces.put(a, 1);
+    assertEquals(faces.get(b), Integer.valueOf(1));
+
+    int hash = a.hashCode();
+    assertTrue(a.parse("udp4://192.0.2.2:6363"));
+    assertFalse(a.hashCode() == hash);
+    assertFalse(a.equals(b));
+  }
+
+  @Test
+  public void Intern() throws CloneNotSupportedException
+  {
+    FaceUri a = new FaceUri("tcp4://192.0.2.1:6363");
+    FaceUri b = new FaceUri("tcp4://192.0.2.1:6363");
+
+    FaceUri interned = a.intern();
+    assertSame(interned, a);
+    assertTrue(a.isInterned());
+    assertSame(b.intern(), a);
+    assertFalse(b.isInterned());
+
+    assertFalse(a.parse("tcp4://192.0.2.2:6363"));
+    assertFalse(a.parse("tcp4://192.0.2.2:6363".getBytes(), 0, 21));
+    assertFalse(a.parse(ByteBuffer.wrap("tcp4://192.0.2.2:6363".getBytes())));
+    assertFalse(a.parse(new StringBuilder("tcp4://192.0.2.2:6363")));
+    assertTrue(a.isInterned());
+    assertEquals(a.toString(), "tcp4://192.0.2.1:6363");
+    assertEquals(a.getHost(), "192.0.2.1");
+    assertSame(b.intern(), a);
+
+    FaceUri copy = (FaceUri)a.clone();
+    assertNotSame(copy, a);
+    assertFalse(copy.isInterned());
+    assertTrue(copy.parse("tcp4://192.0.2.2:6363"));
+  }
+
+  @Test
+  public void LiteralFastPath() throws Exception
+  {
+    HostResolver failing = new HostResolver() {
+      @Override
+      public InetAddress[]
+      resolve(String host) throws UnknownHostException {
+        throw new AssertionError("Resolver must not be used for " + host);
+      }
+    };
+    FaceUri.UdpCanonizeProvider provider =
+      new FaceUri.UdpCanonizeProvider(new ResolverCache(failing, 10, 60, 10, 0, TimeUnit.SECONDS,
+                                                        MoreExecutors.directExecutor()));
+
+    assertTrue(provider.isCanonical(new FaceUri("udp4://192.0.2.1:6363")));
+    assertTrue(provider.isCanonical(new FaceUri("udp6://[2001:db8::1]:6363")));
+    assertFalse(provider.isCanonical(new FaceUri("udp6://[2001:DB8::1]:6363")));
+    assertFalse(provider.isCanonical(new FaceUri("udp4://[2001:db8::1]:6363")));
+    assertFalse(provider.isCanonical(new FaceUri("udp6://192.0.2.1:6363")));
+    assertFalse(provider.isCanonical(new FaceUri("udp4://example.net:6363")));
+
+    assertEquals(provider.canonize(new FaceUri("udp://192.0.2.1")).toString(), "udp4://192.0.2.1:6363");
+    assertEquals(provider.canonize(new FaceUri("udp6://[2001:DB8:0:0::1]:7000")).toString(),
+                 "udp6://[2001:db8::1]:7000");
+    assertEquals(provider.canonizeAsync(new FaceUri("udp://[::ffff:192.0.2.2]"), MoreExecutors.directExecutor())
+                   .get().toString(), "udp4://192.0.2.2:6363");
+    try {
+      provider.canonize(new FaceUri("udp6://192.0.2.1"));
+      fail("Canonization should have failed");
+    }
+    catch (FaceUri.CanonizeError e) {
+      // expected
+    }
+
+    // canonical state is recomputed after parse
+    FaceUri uri = new FaceUri("udp4://192.0.2.1:6363");
+    assertTrue(uri.isCanonical());
+    assertTrue(uri.isCanonical());
+    uri.parse("udp4://192.0.2.1");
+    assertFalse(uri.isCanonical());
+    uri.parse("udp6://[2001:db8::1]:6363");
+    assertTrue(uri.isCanonical());
+  }
+
+  @Test
+  public void BinaryEncoding()
+  {
+    String[] uris = {
+      "udp4://192.0.2.1:6363",
+      "udp6://[2001:db8::1]:6363",
+      "udp6://[2001:db8::01]:6363",
+      "tcp://example.net",
+      "tcp4://192.0.2.01:80",
+      "udp4://[::ffff:192.0.2.1]:20",
+      "ether://[08:00:27:01:dd:01]",
+      "dev://eth0",
+      "unix:///var/run/nfd.sock",
+      "internal://",
+      "wss://hub.example.net:443/ndn",
+      "custom_scheme1://host:06363/path",
+      "ws://h\u00e9st.example:9696/caf\u00e9",
+      "dev://eth\ud83d\ude00/\u4e2d",
+    };
+
+    for (boolean isDirect : new boolean[]{false, true}) {
+      ByteBuffer buffer = isDirect ? ByteBuffer.allocateDirect(4096) : ByteBuffer.allocate(4096);
+      for (String text : uris) {
+        FaceUri uri = new FaceUri(text);
+        int position = buffer.position();
+        uri.writeTo(buffer);
+        assertEquals(buffer.position() - position, uri.getEncodedSize());
+      }
+
+      buffer.flip();
+      for (String text : uris) {
+        FaceUri decoded = FaceUri.readFrom(buffer);
+        FaceUri expected = new FaceUri(text);
+        assertEquals(decoded.getScheme(), expected.getScheme());
+        assertEquals(decoded.getHost(), expected.getHost());
+        assertEquals(decoded.getPort(), expected.getPort());
+        assertEquals(decoded.getPortNumber(), expected.getPortNumber());
+        assertEquals(decoded.getPath(), expected.getPath());
+        assertEquals(decoded, expected);
+        assertEquals(decoded.toString(), expected.toString());
+      }
+      assertEquals(buffer.remaining(), 0);
+    }
+
+    assertEquals(new FaceUri("udp4://192.0.2.1:6363").getEncodedSize(), 8);
+    assertEquals(new FaceUri("udp6://[2001:db8::1]:6363").getEncodedSize(), 20);
+
+    ByteBuffer small = ByteBuffer.allocate(4);
+    try {
+      new FaceUri("udp4://192.0.2.1:6363").writeTo(small);
+      fail("BufferOverflowException is expected");
+    }
+    catch (BufferOverflowException e) {
+    }
+    assertEquals(small.position(), 0);
+
+    ByteBuffer truncated = ByteBuffer.allocate(32);
+    new FaceUri("udp6://[2001:db8::1]:6363").writeTo(truncated);
+    truncated.flip().limit(10);
+    try {
+      FaceUri.readFrom(truncated);
+      fail("FaceUri.Error exception is expected");
+    }
+    catch (FaceUri.Error e) {
+    }
+
+    byte[][] malformed = {
+      {(byte)0x80, 1}, // unknown flags
+      {0, 0, 3, 'u', '-', 'p'}, // invalid scheme
+      {0x20, 8, 1, 'x'}, // path without leading slash
+      {0x20, 8, 2, '/', (byte)0xFF}, // invalid UTF-8
+      {0x18, 8, 2, '6', 'x'}, // invalid port text
+    };
+    for (byte[] bytes : malformed) {
+      try {
+        FaceUri.readFrom(ByteBuffer.wrap(bytes));
+        fail("FaceUri.Error exception is expected");
+      }
+      catch (FaceUri.Error e) {
+      }
+    }
+  }
+
+  @Test
+  public void SocketAddress() throws Exception
+  {
+    FaceUri uri = FaceUri.fromSocketAddress("udp", new InetSocketAddress(InetAddresses.forString("192.0.2.1"), 6363));
+    assertEquals(uri.toString(), "udp4://192.0.2.1:6363");
+    assertEquals(uri, new FaceUri("udp4://192.0.2.1:6363"));
+    assertTrue(uri.isCanonical());
+    assertEquals(uri.getAddressKind(), FaceUri.ADDRESS_IPV4);
+
+    uri = FaceUri.fromSocketAddress("tcp6", new InetSocketAddress(InetAddresses.forString("2001:DB8:0::1"), 7000));
+    assertEquals(uri.toString(), "tcp6://[2001:db8::1]:7000");
+    assertTrue(uri.isCanonical());
+    assertEquals(FaceUri.fromSocketAddress("udp", InetSocketAddress.createUnresolved("::ffff:192.0.2.2", 6363))
+                   .toString(), "udp4://192.0.2.2:6363");
+    assertEquals(FaceUri.fromSocketAddress("ws", new InetSocketAddress(InetAddresses.forString("::1"), 9696))
+                   .toString(), "ws://[::1]:9696");
+
+    // multicast is not canonical for tcp
+    assertFalse(FaceUri.fromSocketAddress("tcp", new InetSocketAddress(InetAddresses.forString("224.0.23.170"), 6363))
+                  .isCanonical());
+
+    InetSocketAddress[] invalid = {
+      new InetSocketAddress(InetAddresses.forString("192.0.2.1"), 6363), // scheme of another family
+      InetSocketAddress.createUnresolved("example.net", 6363),
+    };
+    for (InetSocketAddress endpoint : invalid) {
+      try {
+        FaceUri.fromSocketAddress("udp6", endpoint);
+        fail("FaceUri.Error exception is expected");
+      }
+      catch (FaceUri.Error e) {
+      }
+    }
+    try {
+      FaceUri.fromSocketAddress("u-dp", new InetSocketAddress(InetAddresses.forString("192.0.2.1"), 6363));
+      fail("FaceUri.Error exception is expected");
+    }
+    catch (FaceUri.Error e) {
+    }
+
+    uri = new FaceUri("udp6://[2001:db8::1]:6363");
+    InetSocketAddress endpoint = uri.toInetSocketAddress();
+    assertEquals(endpoint, new InetSocketAddress(InetAddresses.forString("2001:db8::1"), 6363));
+    assertSame(uri.toInetSocketAddress(), endpoint);
+    uri.parse("udp4://192.0.2.1:6363");
+    assertEquals(uri.toInetSocketAddress(), new InetSocketAddress(InetAddresses.forString("192.0.2.1"), 6363));
+
+    endpoint = new FaceUri("tcp://example.net:6363").toInetSocketAddress();
+    assertTrue(endpoint.isUnresolved());
+    assertEquals(endpoint.getHostString(), "example.net");
+    assertEquals(endpoint.getPort(), 6363);
+    assertNull(new FaceUri("udp4://192.0.2.1").toInetSocketAddress());
+    assertNull(new FaceUri("internal://").toInetSocketAddress());
+
+    endpoint = new InetSocketAddress(InetAddresses.forString("192.0.2.9"), 1);
+    assertEquals(FaceUri.fromSocketAddress("udp", endpoint).toInetSocketAddress(), endpoint);
+  }
+
+  @Test
+  public void TlvEncoding() throws Exception
+  {
+    String[] uris = {
+      "udp4://192.0.2.1:6363",
+      "udp6://[2001:db8::1]:06363/path",
+      "tcp://example.net",
+      "ether://[08:00:27:01:01:01]",
+      "internal://",
+      "wsclient://198.51.100.1:56789/" + Strings.repeat("x", 300), // 3-byte TLV-LENGTH
+    };
+    for (String text : uris) {
+      for (FaceUri uri : new FaceUri[]{new FaceUri(text), parseAscii(text)}) {
+        assertEquals(uri.getTextLength(), text.length());
+
+        ByteBuffer buffer = ByteBuffer.allocate(uri.getTlvSize(FaceUri.TLV_URI) + 1);
+        buffer.put((byte)0xAA);
+        uri.writeTlv(buffer, FaceUri.TLV_URI);
+        assertEquals(buffer.remaining(), 0);
+
+        buffer.flip();
+        buffer.get();
+        assertEquals(buffer.get(buffer.position()), (byte)114);
+        FaceUri decoded = FaceUri.readTlv(buffer, FaceUri.TLV_URI);
+        assertEquals(buffer.remaining(), 0);
+        assertEquals(decoded, uri);
+        assertEquals(decoded.toString(), text);
+
+        // toString() is cached afterwards, and written from the cache
+        uri.toString();
+        ByteBuffer direct = ByteBuffer.allocateDirect(uri.getTlvSize(FaceUri.TLV_LOCAL_URI));
+        uri.writeTlv(direct, FaceUri.TLV_LOCAL_URI);
+        direct.flip();
+        assertEquals(direct.get(0), (byte)129);
+        assertEquals(FaceUri.readTlv(direct, FaceUri.TLV_LOCAL_URI), uri);
+      }
+    }
+
+    ByteBuffer encoded = ByteBuffer.allocate(64);
+    new FaceUri("udp4://192.0.2.1:6363").writeTlv(encoded, FaceUri.TLV_URI);
+    assertArrayEquals(Arrays.copyOf(encoded.array(), encoded.position()),
+                      Bytes.concat(new byte[]{114, 21}, "udp4://192.0.2.1:6363".getBytes(Charsets.US_ASCII)));
+
+    // TLV-LENGTH is in network byte order regardless of buffer byte order
+    String longText = uris[uris.length - 1];
+    FaceUri longUri = new FaceUri(longText);
+    ByteBuffer littleEndian = ByteBuffer.allocate(longUri.getTlvSize(FaceUri.TLV_URI)).order(ByteOrder.LITTLE_ENDIAN);
+    longUri.writeTlv(littleEndian, FaceUri.TLV_URI);
+    assertArrayEquals(littleEndian.array(),
+                      Bytes.concat(new byte[]{114, (byte)253, (byte)(longText.length() >> 8), (byte)longText.length()},
+                                   longText.getBytes(Charsets.US_ASCII)));
+    littleEndian.flip();
+    assertEquals(FaceUri.readTlv(littleEndian, FaceUri.TLV_URI), longUri);
+
+    try {
+      new FaceUri("udp4://192.0.2.1:6363").writeTlv(ByteBuffer.allocate(22), FaceUri.TLV_URI);
+      fail("BufferOverflowException is expected");
+    }
+    catch (BufferOverflowException e) {
+    }
+
+    // TLV-VALUE is UTF-8
+    String[] nonAscii = {
+      "udp4://192.0.2.1:6363/\u4e2d",
+      "ws://h\u00e9st.example/caf\u00e9",
+      "dev://eth\ud83d\ude00",
+    };
+    for (String text : nonAscii) {
+      FaceUri uri = new FaceUri(text);
+      byte[] utf8 = text.getBytes(Charsets.UTF_8);
+      assertEquals(uri.getTlvSize(FaceUri.TLV_URI), 2 + utf8.length);
+
+      ByteBuffer heap = ByteBuffer.allocate(uri.getTlvSize(FaceUri.TLV_URI));
+      uri.writeTlv(heap, FaceUri.TLV_URI);
+      assertArrayEquals(heap.array(), Bytes.concat(new byte[]{114, (byte)utf8.length}, utf8));
+      heap.flip();
+      assertEquals(FaceUri.readTlv(heap, FaceUri.TLV_URI).toString(), text);
+
+      ByteBuffer direct = ByteBuffer.allocateDirect(uri.getTlvSize(FaceUri.TLV_URI));
+      uri.writeTlv(direct, FaceUri.TLV_URI);
+      direct.flip();
+      assertEquals(FaceUri.readTlv(direct, FaceUri.TLV_URI), uri);
+    }
+
+    // characters parsed from ISO-8859-1 bytes round-trip as well
+    FaceUri latin1 = new FaceUri();
+    byte[] latin1Bytes = "ws://host/caf\u00e9".getBytes(Charsets.ISO_8859_1);
+    assertTrue(latin1.parse(latin1Bytes, 0, latin1Bytes.length));
+    ByteBuffer latin1Tlv = ByteBuffer.allocate(latin1.getTlvSize(FaceUri.TLV_URI));
+    latin1.writeTlv(latin1Tlv, FaceUri.TLV_URI);
+    latin1Tlv.flip();
+    assertEquals(FaceUri.readTlv(latin1Tlv, FaceUri.TLV_URI).toString(), "ws://host/caf\u00e9");
+
+    try {
+      new FaceUri("ws://host/\ud83d").writeTlv(ByteBuffer.allocate(64), FaceUri.TLV_URI);
+      fail("IllegalArgumentException is expected");
+    }
+    catch (IllegalArgumentException e) {
+    }
+
+    byte[][] malformed = {
+      {114, 7, 'd', 'e', 'v', ':', '/', '/', (byte)0xE4}, // truncated UTF-8 sequence
+      {114, 7, 'd', 'e', 'v', ':', '/', '/', (byte)0xFF}, // invalid UTF-8
+      {(byte)129, 4, 'u', 'd', 'p', ':'}, // unexpected type
+      {114, 10, 'u', 'd', 'p', ':', '/', '/'}, // truncated value
+      {114, (byte)253, 0}, // truncated length
+      {114, 4, 'u', 'd', 'p', ':'}, // malformed URI
+      {114, (byte)255, (byte)0x80, 0, 0, 0, 0, 0, 0, 0}, // length overflows
+    };
+    for (byte[] bytes : malformed) {
+      ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      try {
+        FaceUri.readTlv(buffer, FaceUri.TLV_URI);
+        fail("FaceUri.Error exception is expected");
+      }
+      catch (FaceUri.Error e) {
+        assertEquals(buffer.position(), 0);
+      }
+    }
+  }
+
+  private static FaceUri
+  parseAscii(String text) {
+    FaceUri uri = new FaceUri();
+    assertTrue(uri.parse(text.getBytes(Charsets.US_ASCII), 0, text.length()));
+    return uri;
+  }
+
+  @Test
+  public void CanonizeProviderRegistry() throws Exception
+  {
+    // registered through META-INF/services
+    assertTrue(FaceUri.canCanonize("test_loaded"));
+    assertTrue(FaceUri.getCanonizeProvider("test_loaded") instanceof TestCanonizeProvider);
+    assertEquals(new FaceUri("test_loaded://host/path").canonize().toString(), "test_loaded://host");
+    assertSame(FaceUri.getCanonizeProvider("udp"), FaceUri.getCanonizeProvider("udp6"));
+    assertTrue(FaceUri.getCanonizeProvider("test_registering") instanceof SelfRegisteringCanonizeProvider);
+    assertTrue(FaceUri.canCanonize("test_registered"));
+
+    FaceUri parsedBefore = new FaceUri("null://");
+    assertFalse(parsedBefore.canCanonize());
+    assertFalse(parsedBefore.isCanonical());
+
+    TestCanonizeProvider provider = new TestCanonizeProvider("null");
+    FaceUri.registerCanonizeProvider(provider);
+    try {
+      assertTrue(FaceUri.canCanonize("null"));
+      assertTrue(parsedBefore.canCanonize());
+      assertTrue(parsedBefore.isCanonical());
+      assertTrue(new FaceUri("null://").isCanonical());
+      assertEquals(new FaceUri("null:///path").canonizeAsync().get().toString(), "null://");
+    }
+    finally {
+      assertTrue(FaceUri.unregisterCanonizeProvider(provider));
+    }
+    assertFalse(FaceUri.unregisterCanonizeProvider(provider));
+    assertFalse(FaceUri.canCanonize("null"));
+    assertFalse(parsedBefore.isCanonical());
+
+    try {
+      FaceUri.registerCanonizeProvider(new TestCanonizeProvider(new String[0]));
+      fail("IllegalArgumentException is expected");
+    }
+    catch (IllegalArgumentException e) {
+    }
+    try {
+      FaceUri.registerCanonizeProvider(new TestCanonizeProvider("not a scheme"));
+      fail("IllegalArgumentException is expected");
+    }
+    catch (IllegalArgumentException e) {
+    }
+  }
+
+  /**
+   * Provider that considers FaceUris without path canonical, listed in META-INF/services
+   */
+  @Test
+  public void CanonicalMemoizedAfterRegistryChange()
+  {
+    final AtomicInteger nChecks = new AtomicInteger();
+    TestCanonizeProvider counting = new TestCanonizeProvider("counting") {
+      @Override
+      public boolean
+      isCanonical(FaceUri faceUri) {
+        nChecks.incrementAndGet();
+        return super.isCanonical(faceUri);
+      }
+    };
+    FaceUri uri = new FaceUri("counting://host");
+    assertFalse(uri.isCanonical());
+
+    FaceUri.registerCanonizeProvider(counting);
+    try {
+      for (int i = 0; i < 3; ++i) {
+        assertTrue(uri.isCanonical());
+      }
+      assertEquals(nChecks.get(), 1);
+
+      // policy change discards memoized results once, then they are memoized again
+      FaceUri.IpHostCanonizeProvider udp = (FaceUri.IpHostCanonizeProvider)FaceUri.getCanonizeProvider("udp");
+      udp.setAddressPolicy(new AddressPolicy.Builder().deny("192.0.2.0/24").build());
+      try {
+        for (int i = 0; i < 3; ++i) {
+          assertTrue(uri.isCanonical());
+        }
+        assertEquals(nChecks.get(), 2);
+      }
+      finally {
+        udp.setAddressPolicy(null);
+      }
+      for (int i = 0; i < 3; ++i) {
+        assertTrue(uri.isCanonical());
+      }
+      assertEquals(nChecks.get(), 3);
+    }
+    finally {
+      FaceUri.unregisterCanonizeProvider(counting);
+    }
+    assertFalse(uri.isCanonical());
+    assertEquals(nChecks.get(), 3);
+  }
+
+  /**
+   * Provider loaded through META-INF/services that registers another provider from its constructor
+   */
+  public static class SelfRegisteringCanonizeProvider extends TestCanonizeProvider {
+    public SelfRegisteringCanonizeProvider()
+    {
+      super("test_registering");
+      FaceUri.registerCanonizeProvider(new TestCanonizeProvider("test_registered"));
+    }
+  }
+
+  public static class TestCanonizeProvider implements FaceUri.CanonizeProvider {
+    public TestCanonizeProvider()
+    {
+      this("test_loaded");
+    }
+
+    public TestCanonizeProvider(String... schemes)
+    {
+      m_schemes = new HashSet<String>(Arrays.asList(schemes));
+    }
+
+    @Override
+    public Set<String>
+    getSchemes() {
+      return m_schemes;
+    }
+
+    @Override
+    public boolean
+    isCanonical(FaceUri faceUri) {
+      return faceUri.getPath().isEmpty();
+    }
+
+    @Override
+    public FaceUri
+    canonize(FaceUri faceUri) throws FaceUri.CanonizeError {
+      return new FaceUri(faceUri.getScheme() + "://" + faceUri.getHost());
+    }
+
+    @Override
+    public ListenableFuture<FaceUri>
+    canonizeAsync(FaceUri faceUri, Executor executor) {
+      try {
+        return Futures.immediateFuture(canonize(faceUri));
+      }
+      catch (FaceUri.CanonizeError e) {
+        return Futures.immediateFailedFuture(e);
+      }
+    }
+
+    private final Set<String> m_schemes;
   }
 
   @Test
@@ -0,0 +1,147 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.Test;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class HappyEyeballsTest {
+
+  private static final InetAddress V4 = InetAddresses.forString("192.0.2.1");
+  private static final InetAddress V6 = InetAddresses.forString("2001:db8::1");
+  private static final InetAddress V6_MULTICAST = InetAddresses.forString("ff02::1");
+
+  private static final Predicate<InetAddress> NOT_MULTICAST = new Predicate<InetAddress>() {
+    @Override
+    public boolean
+    apply(InetAddress addr) {
+      return !addr.isMulticastAddress();
+    }
+  };
+
+  private final SettableFuture<List<InetAddress>> m_preferred = SettableFuture.create();
+  private final SettableFuture<List<InetAddress>> m_other = SettableFuture.create();
+
+  @Test
+  public void PreferredFirst() throws Exception
+  {
+    HappyEyeballs happyEyeballs = new HappyEyeballs();
+    ListenableFuture<InetAddress> winner = happyEyeballs.race(m_preferred, m_other, NOT_MULTICAST);
+    m_preferred.set(Arrays.asList(V6));
+    assertEquals(winner.get(), V6);
+  }
+
+  @Test
+  public void PreferredWithinDelay() throws Exception
+  {
+    HappyEyeballs happyEyeballs = new HappyEyeballs(Inet6Address.class, 10, TimeUnit.SECONDS);
+    ListenableFuture<InetAddress> winner = happyEyeballs.race(m_preferred, m_other, NOT_MULTICAST);
+    m_other.set(Arrays.asList(V4));
+    assertFalse(winner.isDone());
+    m_preferred.set(Arrays.asList(V6));
+    assertEquals(winner.get(), V6);
+  }
+
+  @Test
+  public void OtherAfterDelay() throws Exception
+  {
+    HappyEyeballs happyEyeballs = new HappyEyeballs(Inet6Address.class, 20, TimeUnit.MILLISECONDS);
+    ListenableFuture<InetAddress> winner = happyEyeballs.race(m_preferred, m_other, NOT_MULTICAST);
+    m_other.set(Arrays.asList(V4));
+    assertEquals(winner.get(5, TimeUnit.SECONDS), V4); // preferred family never answers
+  }
+
+  @Test
+  public void PreferredFails() throws Exception
+  {
+    HappyEyeballs happyEyeballs = new HappyEyeballs(Inet6Address.class, 10, TimeUnit.SECONDS);
+    ListenableFuture<InetAddress> winner = happyEyeballs.race(m_preferred, m_other, NOT_MULTICAST);
+    m_other.set(Arrays.asList(V4));
+    m_preferred.setException(new UnknownHostException("no AAAA"));
+    assertEquals(winner.get(), V4);
+
+    // unacceptable address of the preferred family does not win
+    SettableFuture<List<InetAddress>> preferred = SettableFuture.create();
+    SettableFuture<List<InetAddress>> other = SettableFuture.create();
+    winner = happyEyeballs.race(preferred, other, NOT_MULTICAST);
+    preferred.set(Arrays.asList(V6_MULTICAST));
+    assertFalse(winner.isDone());
+    other.set(Arrays.asList(V4));
+    assertEquals(winner.get(), V4);
+  }
+
+  @Test
+  public void NoAcceptableAddress() throws Exception
+  {
+    HappyEyeballs happyEyeballs = new HappyEyeballs();
+    ListenableFuture<InetAddress> winner = happyEyeballs.race(m_preferred, m_other, NOT_MULTICAST);
+    m_preferred.set(Arrays.asList(V6_MULTICAST));
+    m_other.setException(new UnknownHostException("no A"));
+    assertEquals(winner.get(), V6_MULTICAST);
+
+    SettableFuture<List<InetAddress>> preferred = SettableFuture.create();
+    SettableFuture<List<InetAddress>> other = SettableFuture.create();
+    winner = happyEyeballs.race(preferred, other, NOT_MULTICAST);
+    other.setException(new UnknownHostException("no A"));
+    preferred.setException(new UnknownHostException("no AAAA"));
+    try {
+      winner.get();
+      fail("Race should have failed");
+    }
+    catch (ExecutionException e) {
+      assertSame(e.getCause().getClass(), UnknownHostException.class);
+      assertEquals(e.getCause().getMessage(), "no AAAA");
+    }
+  }
+
+  @Test
+  public void Select()
+  {
+    HappyEyeballs preferV6 = new HappyEyeballs();
+    HappyEyeballs preferV4 = new HappyEyeballs(Inet4Address.class, 0, TimeUnit.MILLISECONDS);
+    List<InetAddress> addresses = Arrays.asList(V4, V6_MULTICAST, V6);
+
+    assertEquals(preferV6.select(addresses, NOT_MULTICAST), V6);
+    assertEquals(preferV4.select(addresses, NOT_MULTICAST), V4);
+    assertEquals(preferV6.select(Arrays.asList(V4, V6_MULTICAST), NOT_MULTICAST), V4);
+    assertEquals(preferV6.select(Arrays.asList(V6_MULTICAST), NOT_MULTICAST), V6_MULTICAST);
+    assertEquals(preferV6.select(addresses, Predicates.<InetAddress>alwaysTrue()), V6_MULTICAST);
+  }
+}
@@ -0,0 +1,195 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ImmutableFaceUriTest {
+
+  @Test
+  public void ParseAndCopy()
+  {
+    ImmutableFaceUri uri = ImmutableFaceUri.parse("udp6://[2001:db8::1]:06363/path");
+    assertEquals(uri.getScheme(), "udp6");
+    assertEquals(uri.getHost(), "2001:db8::1");
+    assertEquals(uri.getPort(), "06363");
+    assertEquals(uri.getPortNumber(), 6363);
+    assertEquals(uri.getPath(), "/path");
+    assertEquals(uri.toString(), "udp6://[2001:db8::1]:06363/path");
+
+    FaceUri faceUri = uri.toFaceUri();
+    assertEquals(faceUri, new FaceUri("udp6://[2001:db8::1]:06363/path"));
+    assertEquals(faceUri.toString(), uri.toString());
+    assertEquals(ImmutableFaceUri.copyOf(faceUri), uri);
+    assertEquals(ImmutableFaceUri.copyOf(faceUri).hashCode(), uri.hashCode());
+    assertNotEquals(ImmutableFaceUri.parse("udp6://[2001:db8::1]:6363/path"), uri);
+
+    assertEquals(ImmutableFaceUri.parse("internal://").toString(), "internal://");
+    assertEquals(ImmutableFaceUri.parse("udp4://[::ffff:192.0.2.1]").toString(), "udp4://192.0.2.1");
+
+    try {
+      ImmutableFaceUri.parse("udp4://192.0.2.1:99999");
+      fail("Malformed URI should not be parsed");
+    }
+    catch (FaceUri.Error e) {
+    }
+  }
+
+  @Test
+  public void Builder()
+  {
+    ImmutableFaceUri uri = ImmutableFaceUri.builder()
+      .setScheme("udp4")
+      .setHost("192.0.2.1")
+      .setPort(6363)
+      .build();
+    assertEquals(uri.toString(), "udp4://192.0.2.1:6363");
+    assertEquals(uri, ImmutableFaceUri.parse("udp4://192.0.2.1:6363"));
+    assertTrue(uri.toFaceUri().isCanonical());
+
+    assertEquals(ImmutableFaceUri.builder().setScheme("ether").setHost("08:00:27:01:01:01").build().toString(),
+                 "ether://[08:00:27:01:01:01]");
+    assertEquals(ImmutableFaceUri.builder().setScheme("dev").setHost("eth0").setPath("/x").build().toString(),
+                 "dev://eth0/x");
+    assertEquals(uri.toBuilder().setPort(-1).setPath("/").build().toString(), "udp4://192.0.2.1/");
+
+    List<ImmutableFaceUri.Builder> invalid = new ArrayList<ImmutableFaceUri.Builder>();
+    invalid.add(ImmutableFaceUri.builder().setHost("192.0.2.1"));
+    invalid.add(ImmutableFaceUri.builder().setScheme("udp-4").setHost("192.0.2.1"));
+    invalid.add(ImmutableFaceUri.builder().setScheme("udp4").setPort(6363));
+    invalid.add(ImmutableFaceUri.builder().setScheme("udp4").setHost("example/net"));
+    invalid.add(ImmutableFaceUri.builder().setScheme("udp6").setHost("2001:db8::x"));
+    invalid.add(ImmutableFaceUri.builder().setScheme("udp4").setHost("192.0.2.1").setPort(65536));
+    invalid.add(ImmutableFaceUri.builder().setScheme("udp4").setHost("192.0.2.1").setPath("path"));
+    invalid.add(ImmutableFaceUri.builder().setScheme("udp4").setHost("192.0.2.1").setPath("/path?query"));
+    for (ImmutableFaceUri.Builder builder : invalid) {
+      try {
+        builder.build();
+        fail("Invalid components should not be built");
+      }
+      catch (FaceUri.Error e) {
+      }
+    }
+  }
+
+  @Test
+  public void Derivations()
+  {
+    ImmutableFaceUri uri = ImmutableFaceUri.parse("udp://example.net:6363/path");
+    assertEquals(uri.withScheme("tcp").toString(), "tcp://example.net:6363/path");
+    assertEquals(uri.withHost("192.0.2.1").toString(), "udp://192.0.2.1:6363/path");
+    assertEquals(uri.withHost("2001:db8::1").toString(), "udp://[2001:db8::1]:6363/path");
+    assertEquals(uri.withPort(56363).toString(), "udp://example.net:56363/path");
+    assertEquals(uri.withPort(-1).toString(), "udp://example.net/path");
+    assertEquals(uri.toString(), "udp://example.net:6363/path");
+
+    assertSame(uri.withScheme("udp"), uri);
+    assertSame(uri.withHost("example.net"), uri);
+    assertSame(uri.withPort(6363), uri);
+    assertEquals(ImmutableFaceUri.parse("udp://example.net:06363").withPort(6363).toString(), "udp://example.net:6363");
+
+    assertEquals(uri.withHost("192.0.2.1").toFaceUri().getLiteralAddress().getHostAddress(), "192.0.2.1");
+    try {
+      uri.withPort(70000);
+      fail("Port out of range should be rejected");
+    }
+    catch (FaceUri.Error e) {
+    }
+  }
+
+  @Test
+  public void Canonize() throws Exception
+  {
+    ImmutableFaceUri uri = ImmutableFaceUri.parse("udp6://[2001:DB8::1]");
+    assertFalse(uri.isCanonical());
+    ImmutableFaceUri canonical = uri.canonize();
+    assertEquals(canonical.toString(), "udp6://[2001:db8::1]:6363");
+    assertTrue(canonical.isCanonical());
+
+    // canonical FaceUri is assembled from components and known to be canonical
+    FaceUri faceUri = new FaceUri("udp://192.0.2.1").canonize();
+    assertEquals(faceUri.toString(), "udp4://192.0.2.1:6363");
+    assertTrue(faceUri.isCanonical());
+    assertEquals(faceUri, new FaceUri("udp4://192.0.2.1:6363"));
+    assertEquals(faceUri.getAddressKind(), FaceUri.ADDRESS_IPV4);
+    assertEquals(new FaceUri("ether://[08:00:27:0A:DD:01]").canonize(), new FaceUri("ether://[08:00:27:0a:dd:01]"));
+
+    // repeated isCanonical() calls are memoized, but follow provider registration changes
+    ImmutableFaceUri nullUri = ImmutableFaceUri.parse("null://");
+    assertFalse(nullUri.isCanonical());
+    FaceUriTest.TestCanonizeProvider provider = new FaceUriTest.TestCanonizeProvider("null");
+    FaceUri.registerCanonizeProvider(provider);
+    try {
+      assertTrue(nullUri.isCanonical());
+      assertTrue(nullUri.isCanonical());
+    }
+    finally {
+      FaceUri.unregisterCanonizeProvider(provider);
+    }
+    assertFalse(nullUri.isCanonical());
+  }
+
+  @Test
+  public void SharedAcrossThreads() throws Exception
+  {
+    final ImmutableFaceUri uri = ImmutableFaceUri.parse("tcp4://192.0.2.1:6363");
+    final CountDownLatch done = new CountDownLatch(4);
+    final List<Throwable> errors = new ArrayList<Throwable>();
+    for (int i = 0; i < 4; ++i) {
+      final int port = 7000 + i;
+      new Thread(new Runnable() {
+        @Override
+        public void
+        run() {
+          try {
+            for (int j = 0; j < 1000; ++j) {
+              ImmutableFaceUri derived = uri.withPort(port);
+              assertEquals(derived.toString(), "tcp4://192.0.2.1:" + port);
+              assertEquals(uri.toString(), "tcp4://192.0.2.1:6363");
+            }
+          }
+          catch (Throwable t) {
+            synchronized (errors) {
+              errors.add(t);
+            }
+          }
+          finally {
+            done.countDown();
+          }
+        }
+      }).start();
+    }
+    done.await();
+    assertTrue(errors.isEmpty());
+  }
+}
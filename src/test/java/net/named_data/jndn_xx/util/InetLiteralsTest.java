@@ -0,0 +1,87 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InetLiteralsTest {
+
+  private static String
+  v6(String text) {
+    long[] address = new long[2];
+    assertTrue(InetLiterals.parseIpv6(text, 0, text.length(), address));
+    return InetLiterals.appendIpv6(new StringBuilder(), address[0], address[1]).toString();
+  }
+
+  private static boolean
+  isV6(String text) {
+    return InetLiterals.parseIpv6(text, 0, text.length(), new long[2]);
+  }
+
+  @Test
+  public void Ipv4()
+  {
+    assertEquals(InetLiterals.parseIpv4("192.0.2.1", 0, 9), 0xC0000201L);
+    assertEquals(InetLiterals.parseIpv4("255.255.255.255", 0, 15), 0xFFFFFFFFL);
+    assertEquals(InetLiterals.parseIpv4("[0.0.0.0]", 1, 8), 0);
+    assertEquals(InetLiterals.appendIpv4(new StringBuilder(), 0xE00017AAL).toString(), "224.0.23.170");
+
+    assertEquals(InetLiterals.parseIpv4("192.0.2.666", 0, 11), -1);
+    assertEquals(InetLiterals.parseIpv4("192.0.2.01", 0, 10), -1);
+    assertEquals(InetLiterals.parseIpv4("192.0.2", 0, 7), -1);
+    assertEquals(InetLiterals.parseIpv4("192.0.2.1.", 0, 10), -1);
+    assertEquals(InetLiterals.parseIpv4("a.b.c.d", 0, 7), -1);
+  }
+
+  @Test
+  public void Ipv6()
+  {
+    assertEquals(v6("2001:db8::1"), "2001:db8::1");
+    assertEquals(v6("2001:DB8:0:0:0:0:0:01"), "2001:db8::1");
+    assertEquals(v6("::"), "::");
+    assertEquals(v6("::1"), "::1");
+    assertEquals(v6("1::"), "1::");
+    assertEquals(v6("ff02::2"), "ff02::2");
+    assertEquals(v6("2001:db8:0:1:0:0:0:1"), "2001:db8:0:1::1");
+    assertEquals(v6("2001:0:0:1:0:0:0:1"), "2001:0:0:1::1");
+    assertEquals(v6("2001:db8:0:0:1:0:0:1"), "2001:db8::1:0:0:1");
+    assertEquals(v6("1:0:1:1:1:1:1:1"), "1:0:1:1:1:1:1:1");
+    assertEquals(v6("::ffff:192.0.2.1"), "::ffff:c000:201");
+    assertEquals(v6("1:2:3:4:5:6:1.2.3.4"), "1:2:3:4:5:6:102:304");
+
+    assertFalse(isV6(":1"));
+    assertFalse(isV6("1:"));
+    assertFalse(isV6(":::"));
+    assertFalse(isV6("1::2::3"));
+    assertFalse(isV6("1:2:3:4:5:6:7"));
+    assertFalse(isV6("1:2:3:4:5:6:7:8:9"));
+    assertFalse(isV6("1:2:3:4::5:6:7:8"));
+    assertFalse(isV6("12345::"));
+    assertFalse(isV6("::1.2.3.4:1"));
+    assertFalse(isV6("::zz"));
+    assertFalse(isV6("08:00:27:01:dd:01"));
+  }
+}
@@ -0,0 +1,99 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NetworkInterfaceCacheTest {
+
+  private static class StubInterfaceNames implements Supplier<Set<String>> {
+    @Override
+    public Set<String>
+    get() {
+      return m_nCalls.incrementAndGet() == 1 ? ImmutableSet.of("eth0") : ImmutableSet.of("eth0", "eth1");
+    }
+
+    final AtomicInteger m_nCalls = new AtomicInteger();
+  }
+
+  @Test
+  public void Snapshot()
+  {
+    StubInterfaceNames names = new StubInterfaceNames();
+    NetworkInterfaceCache cache = new NetworkInterfaceCache(names, 1, TimeUnit.HOURS);
+    try {
+      assertEquals(names.m_nCalls.get(), 0); // nothing is listed until the first lookup
+
+      assertTrue(cache.contains("eth0"));
+      assertFalse(cache.contains("eth1"));
+      assertEquals(names.m_nCalls.get(), 1);
+
+      cache.refresh();
+      assertTrue(cache.contains("eth1"));
+      assertEquals(names.m_nCalls.get(), 2);
+    }
+    finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  public void BackgroundRefresh() throws Exception
+  {
+    StubInterfaceNames names = new StubInterfaceNames();
+    NetworkInterfaceCache cache = new NetworkInterfaceCache(names, 10, TimeUnit.MILLISECONDS);
+    assertFalse(cache.contains("eth1"));
+    for (int i = 0; i < 500 && !cache.contains("eth1"); ++i) {
+      Thread.sleep(10);
+    }
+    assertTrue(cache.contains("eth1"));
+
+    cache.close();
+    Thread.sleep(20); // refresh that was already running may complete
+    int nCalls = names.m_nCalls.get();
+    Thread.sleep(50);
+    assertEquals(names.m_nCalls.get(), nCalls);
+  }
+
+  @Test
+  public void SystemInterfaces()
+  {
+    NetworkInterfaceCache cache = new NetworkInterfaceCache();
+    try {
+      assertEquals(cache.getNames(), cache.getNames());
+      assertFalse(cache.contains("no-such-interface-0"));
+    }
+    finally {
+      cache.close();
+    }
+  }
+}
@@ -0,0 +1,381 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NioDnsResolverTest {
+
+  /**
+   * Minimal DNS server answering A and AAAA queries from a static table
+   */
+  private static class StubDnsServer implements Runnable {
+    StubDnsServer() throws SocketException
+    {
+      m_socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+      Thread thread = new Thread(this, "StubDnsServer");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    InetSocketAddress
+    getAddress() {
+      return (InetSocketAddress)m_socket.getLocalSocketAddress();
+    }
+
+    void
+    add(String host, String address) {
+      List<InetAddress> addresses = m_records.get(host);
+      if (addresses == null) {
+        addresses = new ArrayList<InetAddress>();
+        m_records.put(host, addresses);
+      }
+      addresses.add(InetAddresses.forString(address));
+    }
+
+    @Override
+    public void
+    run() {
+      byte[] buffer = new byte[512];
+      while (!m_socket.isClosed()) {
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        try {
+          m_socket.receive(packet);
+        } catch (IOException e) {
+          return;
+        }
+        m_nQueries.incrementAndGet();
+
+        ByteBuffer query = ByteBuffer.wrap(packet.getData(), 0, packet.getLength());
+        StringBuilder host = new StringBuilder();
+        int pos = 12;
+        for (int length = query.get(pos); length != 0; length = query.get(pos)) {
+          if (host.length() > 0) {
+            host.append('.');
+          }
+          host.append(new String(packet.getData(), pos + 1, length));
+          pos += length + 1;
+        }
+        String name = host.toString().toLowerCase();
+        int type = query.getShort(pos + 1);
+        int questionEnd = pos + 5;
+
+        if (m_isSilent || type == m_silentType || m_dropOnce.remove(name + "/" + type)) {
+          continue;
+        }
+
+        List<InetAddress> matching = new ArrayList<InetAddress>();
+        List<InetAddress> addresses = m_records.get(name);
+        if (addresses != null) {
+          for (InetAddress address : addresses) {
+            if (address.getAddress().length == (type == 1 ? 4 : 16)) {
+              matching.add(address);
+            }
+          }
+        }
+
+        ByteBuffer response = ByteBuffer.allocate(512);
+        response.putShort(query.getShort(0));
+        response.putShort((short)(addresses == null ? 0x8183 : 0x8180));
+        response.putShort((short)1);
+        response.putShort((short)matching.size());
+        response.putShort((short)0);
+        response.putShort((short)0);
+        response.put(packet.getData(), 12, questionEnd - 12);
+        for (InetAddress address : matching) {
+          response.putShort((short)0xC00C); // pointer to question name
+          response.putShort((short)type);
+          response.putShort((short)1);
+          response.putInt(60);
+          response.putShort((short)address.getAddress().length);
+          response.put(address.getAddress());
+        }
+
+        try {
+          m_socket.send(new DatagramPacket(response.array(), response.position(), packet.getSocketAddress()));
+        } catch (IOException e) {
+          return;
+        }
+      }
+    }
+
+    void
+    close() {
+      m_socket.close();
+    }
+
+    final DatagramSocket m_socket;
+    final Map<String, List<InetAddress>> m_records = new ConcurrentHashMap<String, List<InetAddress>>();
+    final Set<String> m_dropOnce = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    final AtomicInteger m_nQueries = new AtomicInteger();
+    volatile boolean m_isSilent = false;
+    volatile int m_silentType = 0; ///< query type that is never answered
+  }
+
+  private StubDnsServer m_server;
+  private NioDnsResolver m_resolver;
+
+  @Before
+  public void
+  setUp() throws IOException {
+    m_server = new StubDnsServer();
+    m_server.add("router.example.net", "192.0.2.1");
+    m_server.add("router.example.net", "2001:db8::1");
+    m_server.add("v4only.example.net", "192.0.2.2");
+    m_server.add("v4only.example.net", "192.0.2.3");
+    m_resolver = new NioDnsResolver(m_server.getAddress(), 50, 1000, TimeUnit.MILLISECONDS);
+  }
+
+  @After
+  public void
+  tearDown() {
+    m_resolver.close();
+    m_server.close();
+  }
+
+  @Test
+  public void Resolve() throws UnknownHostException
+  {
+    InetAddress[] addresses = m_resolver.resolve("router.example.net");
+    assertEquals(addresses.length, 2);
+    assertEquals(InetAddresses.toAddrString(addresses[0]), "192.0.2.1");
+    assertEquals(InetAddresses.toAddrString(addresses[1]), "2001:db8::1");
+    assertEquals(addresses[0].getHostName(), "router.example.net");
+
+    addresses = m_resolver.resolve("V4ONLY.example.net.");
+    assertEquals(addresses.length, 2);
+    assertEquals(InetAddresses.toAddrString(addresses[1]), "192.0.2.3");
+
+    try {
+      m_resolver.resolve("missing.example.net");
+      fail("Resolution should have failed");
+    }
+    catch (UnknownHostException e) {
+      // expected
+    }
+
+    try {
+      m_resolver.resolve("bad..example.net");
+      fail("Resolution should have failed");
+    }
+    catch (UnknownHostException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void Literal() throws UnknownHostException
+  {
+    assertEquals(InetAddresses.toAddrString(m_resolver.resolve("192.0.2.9")[0]), "192.0.2.9");
+    assertEquals(InetAddresses.toAddrString(m_resolver.resolve("2001:db8::9")[0]), "2001:db8::9");
+    assertEquals(m_server.m_nQueries.get(), 0);
+  }
+
+  @Test
+  public void Retransmit() throws UnknownHostException
+  {
+    m_server.m_dropOnce.add("router.example.net/1");
+    m_server.m_dropOnce.add("router.example.net/28");
+
+    assertEquals(m_resolver.resolve("router.example.net").length, 2);
+    assertTrue(m_server.m_nQueries.get() >= 4);
+  }
+
+  @Test
+  public void Timeout() throws IOException
+  {
+    m_server.m_isSilent = true;
+    NioDnsResolver resolver = new NioDnsResolver(m_server.getAddress(), 20, 100, TimeUnit.MILLISECONDS);
+    try {
+      resolver.resolve("router.example.net");
+      fail("Resolution should have timed out");
+    }
+    catch (UnknownHostException e) {
+      // expected
+    }
+    finally {
+      resolver.close();
+    }
+    assertTrue(m_server.m_nQueries.get() >= 4);
+  }
+
+  @Test
+  public void Close() throws InterruptedException
+  {
+    m_server.m_isSilent = true;
+    List<ListenableFuture<InetAddress[]>> futures = new ArrayList<ListenableFuture<InetAddress[]>>();
+    futures.add(m_resolver.resolveAsync("router.example.net"));
+    m_resolver.close();
+    futures.add(m_resolver.resolveAsync("router.example.net"));
+
+    for (ListenableFuture<InetAddress[]> future : futures) {
+      try {
+        future.get();
+        fail("Resolution should have failed");
+      }
+      catch (ExecutionException e) {
+        assertSame(e.getCause().getClass(), UnknownHostException.class);
+      }
+    }
+  }
+
+  @Test
+  public void ManyConcurrent() throws InterruptedException, ExecutionException
+  {
+    int nHosts = 2000;
+    for (int i = 0; i < nHosts; ++i) {
+      m_server.add("h" + i + ".example.net", "10.0." + (i / 256) + "." + (i % 256));
+    }
+
+    List<ListenableFuture<InetAddress[]>> futures = new ArrayList<ListenableFuture<InetAddress[]>>();
+    for (int i = 0; i < nHosts; ++i) {
+      futures.add(m_resolver.resolveAsync("h" + i + ".example.net"));
+    }
+    for (int i = 0; i < nHosts; ++i) {
+      InetAddress[] addresses = futures.get(i).get();
+      assertEquals(addresses.length, 1);
+      assertEquals(InetAddresses.toAddrString(addresses[0]), "10.0." + (i / 256) + "." + (i % 256));
+    }
+  }
+
+  @Test
+  public void CanonizeWithoutThreads() throws Exception
+  {
+    Executor rejecting = new Executor() {
+      @Override
+      public void
+      execute(Runnable command) {
+        throw new RejectedExecutionException();
+      }
+    };
+
+    FaceUri.UdpCanonizeProvider provider =
+      new FaceUri.UdpCanonizeProvider(new ResolverCache(m_resolver, 10, 60, 10, 0, TimeUnit.SECONDS, rejecting));
+
+    assertEquals(provider.canonizeAsync(new FaceUri("udp://router.example.net"), rejecting).get().toString(),
+                 "udp4://192.0.2.1:6363");
+    assertEquals(provider.canonizeAsync(new FaceUri("udp6://router.example.net:7000"), rejecting).get().toString(),
+                 "udp6://[2001:db8::1]:7000");
+
+    try {
+      provider.canonizeAsync(new FaceUri("udp6://v4only.example.net"), rejecting).get();
+      fail("Canonization should have failed");
+    }
+    catch (ExecutionException e) {
+      assertSame(e.getCause().getClass(), FaceUri.CanonizeError.class);
+    }
+
+    try {
+      provider.canonizeAsync(new FaceUri("udp://missing.example.net"), MoreExecutors.directExecutor()).get();
+      fail("Canonization should have failed");
+    }
+    catch (ExecutionException e) {
+      assertSame(e.getCause().getClass(), FaceUri.CanonizeError.class);
+    }
+  }
+
+  @Test
+  public void ResolveFamily() throws Exception
+  {
+    InetAddress[] addresses = m_resolver.resolveAsync("router.example.net", Inet6Address.class).get();
+    assertEquals(addresses.length, 1);
+    assertEquals(InetAddresses.toAddrString(addresses[0]), "2001:db8::1");
+    assertEquals(m_server.m_nQueries.get(), 1);
+
+    try {
+      m_resolver.resolveAsync("v4only.example.net", Inet6Address.class).get();
+      fail("Resolution should have failed");
+    }
+    catch (ExecutionException e) {
+      assertSame(e.getCause().getClass(), UnknownHostException.class);
+    }
+
+    try {
+      m_resolver.resolveAsync("192.0.2.1", Inet6Address.class).get();
+      fail("Resolution should have failed");
+    }
+    catch (ExecutionException e) {
+      assertSame(e.getCause().getClass(), UnknownHostException.class);
+    }
+  }
+
+  @Test
+  public void CanonizeHappyEyeballs() throws Exception
+  {
+    FaceUri.UdpCanonizeProvider provider =
+      new FaceUri.UdpCanonizeProvider(new ResolverCache(m_resolver, 10, 60, 10, 0, TimeUnit.SECONDS,
+                                                        MoreExecutors.directExecutor()));
+    provider.setHappyEyeballs(new HappyEyeballs(Inet6Address.class, 20, TimeUnit.MILLISECONDS));
+    assertEquals(provider.canonize(new FaceUri("udp://router.example.net")).toString(),
+                 "udp6://[2001:db8::1]:6363");
+    assertEquals(provider.canonize(new FaceUri("udp://v4only.example.net")).toString(),
+                 "udp4://192.0.2.2:6363");
+
+    // AAAA queries are never answered; IPv4 is used after the resolution delay, long before
+    // the AAAA query times out
+    m_server.m_silentType = 28;
+    provider.getResolverCache().invalidateAll();
+    long start = System.nanoTime();
+    assertEquals(provider.canonize(new FaceUri("udp://router.example.net:7000")).toString(),
+                 "udp4://192.0.2.1:7000");
+    assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(800));
+
+    // cached result of the preferred family wins immediately
+    provider.setHappyEyeballs(new HappyEyeballs(Inet4Address.class, 0, TimeUnit.MILLISECONDS));
+    ListenableFuture<FaceUri> canonical =
+      provider.canonizeAsync(new FaceUri("udp://router.example.net"), MoreExecutors.directExecutor());
+    assertTrue(canonical.isDone());
+    assertEquals(canonical.get().toString(), "udp4://192.0.2.1:6363");
+  }
+}
@@ -0,0 +1,449 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015 Alexander Afanasyev.
+ *
+ * This file is part of jndn-xx library.
+ *
+ * jndn-xx library is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * jndn-xx library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received copies of the GNU General Public License and GNU Lesser
+ * General Public License along with jndn-xx, e.g., in COPYING.md file.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * See AUTHORS.md for complete list of jndn-xx authors and contributors.
+ */
+
+package net.named_data.jndn_xx.util;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Ticker;
+import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResolverCacheTest {
+
+  private static class FakeTicker extends Ticker {
+    @Override
+    public long
+    read() {
+      return m_now;
+    }
+
+    void
+    advance(long ms) {
+      m_now += TimeUnit.MILLISECONDS.toNanos(ms);
+    }
+
+    private long m_now = 0;
+  }
+
+  private static class CountingResolver implements HostResolver {
+    @Override
+    public InetAddress[]
+    resolve(String host) throws UnknownHostException {
+      ++m_nLookups;
+      if (host.endsWith(".invalid")) {
+        throw new UnknownHostException(host);
+      }
+      if (host.endsWith(".empty")) {
+        return new InetAddress[0];
+      }
+      return new InetAddress[]{ InetAddresses.forString(m_address) };
+    }
+
+    int m_nLookups = 0;
+    String m_address = "192.0.2.1";
+  }
+
+  private final FakeTicker m_ticker = new FakeTicker();
+  private final CountingResolver m_resolver = new CountingResolver();
+
+  private ResolverCache
+  makeCache(int maxSize) {
+    return new ResolverCache(m_resolver, maxSize, 1000, 100, 200, TimeUnit.MILLISECONDS,
+                             MoreExecutors.directExecutor(), m_ticker);
+  }
+
+  @Test
+  public void PositiveTtl() throws UnknownHostException
+  {
+    ResolverCache cache = makeCache(10);
+
+    assertEquals(cache.resolve("example.net").get(0).getHostAddress(), "192.0.2.1");
+    assertEquals(cache.resolve("example.net").get(0).getHostAddress(), "192.0.2.1");
+    assertEquals(m_resolver.m_nLookups, 1);
+
+    m_ticker.advance(1000);
+    cache.resolve("example.net");
+    assertEquals(m_resolver.m_nLookups, 2);
+  }
+
+  @Test
+  public void NegativeTtl()
+  {
+    ResolverCache cache = makeCache(10);
+
+    for (int i = 0; i < 2; ++i) {
+      try {
+        cache.resolve("host.invalid");
+        fail("UnknownHostException is expected");
+      }
+      catch (UnknownHostException e) {
+      }
+    }
+    assertEquals(m_resolver.m_nLookups, 1);
+
+    m_ticker.advance(100);
+    try {
+      cache.resolve("host.invalid");
+      fail("UnknownHostException is expected");
+    }
+    catch (UnknownHostException e) {
+    }
+    assertEquals(m_resolver.m_nLookups, 2);
+  }
+
+  @Test
+  public void RefreshAhead() throws UnknownHostException
+  {
+    ResolverCache cache = makeCache(10);
+
+    cache.resolve("example.net");
+    m_resolver.m_address = "192.0.2.2";
+
+    m_ticker.advance(700);
+    assertEquals(cache.resolve("example.net").get(0).getHostAddress(), "192.0.2.1");
+    assertEquals(m_resolver.m_nLookups, 1);
+
+    m_ticker.advance(100);
+    // refreshed in background (direct executor), the stale value is still returned
+    assertEquals(cache.resolve("example.net").get(0).getHostAddress(), "192.0.2.1");
+    assertEquals(m_resolver.m_nLookups, 2);
+
+    m_ticker.advance(500);
+    assertEquals(cache.resolve("example.net").get(0).getHostAddress(), "192.0.2.2");
+    assertEquals(m_resolver.m_nLookups, 2);
+  }
+
+  @Test
+  public void SizeAndLiterals() throws UnknownHostException
+  {
+    ResolverCache cache = makeCache(2);
+
+    cache.resolve("192.0.2.5");
+    cache.resolve("2001:db8::1");
+    assertEquals(cache.size(), 0);
+
+    cache.resolve("a.example.net");
+    cache.resolve("b.example.net");
+    cache.resolve("c.example.net");
+    assertEquals(cache.size(), 2);
+
+    ResolverCache disabled = makeCache(0);
+    disabled.resolve("example.net");
+    disabled.resolve("example.net");
+    assertEquals(disabled.size(), 0);
+    assertEquals(m_resolver.m_nLookups, 7);
+  }
+
+  @Test
+  public void ResolveAsync() throws Exception
+  {
+    ResolverCache cache = makeCache(10);
+    final List<Runnable> queued = new ArrayList<Runnable>();
+    Executor queueing = new Executor() {
+      @Override
+      public void
+      execute(Runnable command) {
+        queued.add(command);
+      }
+    };
+
+    // blocking resolver is invoked on the executor
+    ListenableFuture<List<InetAddress>> future = cache.resolveAsync("example.net", queueing);
+    assertFalse(future.isDone());
+    assertEquals(queued.size(), 1);
+    queued.get(0).run();
+    assertEquals(future.get().get(0).getHostAddress(), "192.0.2.1");
+
+    // cached results and literals complete immediately
+    assertTrue(cache.resolveAsync("example.net", queueing).isDone());
+    assertTrue(cache.resolveAsync("192.0.2.7", queueing).isDone());
+    assertEquals(queued.size(), 1);
+    assertEquals(m_resolver.m_nLookups, 2);
+
+    // negative result is cached too
+    cache.resolveAsync("missing.invalid", MoreExecutors.directExecutor());
+    future = cache.resolveAsync("missing.invalid", queueing);
+    assertTrue(future.isDone());
+    try {
+      future.get();
+      fail("Resolution should have failed");
+    }
+    catch (ExecutionException e) {
+      assertSame(e.getCause().getClass(), UnknownHostException.class);
+    }
+    assertEquals(m_resolver.m_nLookups, 3);
+  }
+
+  @Test
+  public void EmptyResult() throws Exception
+  {
+    ResolverCache cache = makeCache(10);
+
+    // empty result is cached as a negative entry
+    for (int i = 0; i < 2; ++i) {
+      try {
+        cache.resolve("host.empty");
+        fail("UnknownHostException is expected");
+      }
+      catch (UnknownHostException e) {
+      }
+    }
+    assertEquals(m_resolver.m_nLookups, 1);
+
+    try {
+      cache.resolveAsync("other.empty", MoreExecutors.directExecutor()).get();
+      fail("Resolution should have failed");
+    }
+    catch (ExecutionException e) {
+      assertSame(e.getCause().getClass(), UnknownHostException.class);
+    }
+    assertEquals(m_resolver.m_nLookups, 2);
+
+    try {
+      new FaceUri.UdpCanonizeProvider(cache).canonize(new FaceUri("udp://host.empty"));
+      fail("Canonization should have failed");
+    }
+    catch (FaceUri.CanonizeError e) {
+      assertEquals(e.getReason(), FaceUri.CanonizeError.Reason.CANNOT_RESOLVE);
+    }
+  }
+
+  @Test
+  public void CoalesceConcurrentMisses() throws Exception
+  {
+    final CountDownLatch started = new CountDownLatch(8);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger nLookups = new AtomicInteger();
+    final ResolverCache cache = new ResolverCache(new HostResolver() {
+      @Override
+      public InetAddress[]
+      resolve(String host) throws UnknownHostException {
+        nLookups.incrementAndGet();
+        Uninterruptibles.awaitUninterruptibly(release);
+        if (host.endsWith(".invalid")) {
+          throw new UnknownHostException(host);
+        }
+        return new InetAddress[]{ InetAddresses.forString("192.0.2.1") };
+      }
+    }, 10, 1000, 0, 0, TimeUnit.MILLISECONDS, MoreExecutors.directExecutor());
+
+    final List<Object> results = Collections.synchronizedList(new ArrayList<Object>());
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < 8; ++i) {
+      final String host = i % 2 == 0 ? "hub.example" : "hub.invalid";
+      threads.add(new Thread(new Runnable() {
+        @Override
+        public void
+        run() {
+          started.countDown();
+          try {
+            results.add(cache.resolve(host).get(0).getHostAddress());
+          }
+          catch (UnknownHostException e) {
+            results.add(e.getMessage());
+          }
+        }
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    // every thread is parked either in the resolver (leaders) or on the pending lookup (waiters)
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    for (Thread thread : threads) {
+      while (thread.getState() != Thread.State.WAITING) {
+        assertTrue("Thread did not block in resolve()", System.nanoTime() < deadline);
+        Thread.sleep(1);
+      }
+    }
+    assertEquals(nLookups.get(), 2);
+    release.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(nLookups.get(), 2); // one resolution per host, negative result is not cached
+    assertEquals(Collections.frequency(results, "192.0.2.1"), 4);
+    assertEquals(Collections.frequency(results, "hub.invalid"), 4);
+  }
+
+  @Test
+  public void CoalesceAsync() throws Exception
+  {
+    ResolverCache cache = makeCache(10);
+    final List<Runnable> queued = new ArrayList<Runnable>();
+    Executor queueing = new Executor() {
+      @Override
+      public void
+      execute(Runnable command) {
+        queued.add(command);
+      }
+    };
+
+    ListenableFuture<List<InetAddress>> first = cache.resolveAsync("example.net", queueing);
+    ListenableFuture<List<InetAddress>> second = cache.resolveAsync("example.net", queueing);
+    ListenableFuture<List<InetAddress>> third = cache.resolveAsync("example.net", queueing);
+    assertEquals(queued.size(), 1);
+
+    // cancellation by one caller does not affect others
+    first.cancel(false);
+    queued.get(0).run();
+    assertEquals(second.get().get(0).getHostAddress(), "192.0.2.1");
+    assertEquals(third.get().get(0).getHostAddress(), "192.0.2.1");
+    assertEquals(m_resolver.m_nLookups, 1);
+
+    // rejected resolution is not shared with later callers
+    Executor rejecting = new Executor() {
+      @Override
+      public void
+      execute(Runnable command) {
+        throw new RejectedExecutionException();
+      }
+    };
+    try {
+      cache.resolveAsync("other.example", rejecting).get();
+      fail("Resolution should have been rejected");
+    }
+    catch (ExecutionException e) {
+      assertSame(e.getCause().getClass(), RejectedExecutionException.class);
+    }
+    assertEquals(cache.resolve("other.example").get(0).getHostAddress(), "192.0.2.1");
+  }
+
+  @Test
+  public void Snapshot() throws Exception
+  {
+    Path directory = Files.createTempDirectory("resolver-cache");
+    Path file = directory.resolve("snapshot");
+    try {
+      ResolverCache cache = makeCache(10);
+      cache.resolve("a.example.net");
+      cache.resolve("b.example.net");
+      try {
+        cache.resolve("host.invalid");
+        fail("UnknownHostException is expected");
+      }
+      catch (UnknownHostException e) {
+      }
+      assertEquals(cache.writeSnapshot(file), 2);
+      assertEquals(m_resolver.m_nLookups, 3);
+
+      ResolverCache restored = makeCache(10);
+      assertEquals(restored.readSnapshot(file, 1, TimeUnit.MINUTES), 2);
+      assertEquals(restored.resolve("a.example.net").get(0).getHostAddress(), "192.0.2.1");
+      assertEquals(restored.resolve("b.example.net").get(0).getHostName(), "b.example.net");
+      assertEquals(m_resolver.m_nLookups, 3);
+
+      // loaded entries keep their remaining TTL
+      m_ticker.advance(1000);
+      restored.resolve("a.example.net");
+      assertEquals(m_resolver.m_nLookups, 4);
+
+      // unexpired cached entries are not replaced, expired ones are
+      assertEquals(restored.readSnapshot(file, 1, TimeUnit.MINUTES), 1);
+
+      // missing, corrupt, and truncated snapshots are discarded
+      assertEquals(makeCache(10).readSnapshot(directory.resolve("missing"), 1, TimeUnit.MINUTES), 0);
+
+      byte[] bytes = Files.readAllBytes(file);
+      bytes[bytes.length / 2] ^= 0x01;
+      Files.write(file, bytes);
+      assertEquals(makeCache(10).readSnapshot(file, 1, TimeUnit.MINUTES), 0);
+
+      Files.write(file, Arrays.copyOf(bytes, bytes.length - 5));
+      assertEquals(makeCache(10).readSnapshot(file, 1, TimeUnit.MINUTES), 0);
+
+      Files.write(file, "not a snapshot".getBytes(Charsets.US_ASCII));
+      assertEquals(makeCache(10).readSnapshot(file, 1, TimeUnit.MINUTES), 0);
+    }
+    finally {
+      Files.deleteIfExists(file);
+      Files.delete(directory);
+    }
+  }
+
+  @Test
+  public void SnapshotStaleEntries() throws Exception
+  {
+    Path directory = Files.createTempDirectory("resolver-cache");
+    Path file = directory.resolve("snapshot");
+    try {
+      ResolverCache cache = makeCache(10);
+      cache.resolve("example.net");
+      m_ticker.advance(999);
+      assertEquals(cache.writeSnapshot(file), 1);
+      Thread.sleep(20); // let the entry expire in wall-clock time
+
+      // too old
+      assertEquals(makeCache(10).readSnapshot(file, 0, TimeUnit.MILLISECONDS), 0);
+
+      // stale entry is served while being revalidated
+      final List<Runnable> refreshes = new ArrayList<Runnable>();
+      Executor queueing = new Executor() {
+        @Override
+        public void
+        execute(Runnable command) {
+          refreshes.add(command);
+        }
+      };
+      ResolverCache restored = new ResolverCache(m_resolver, 10, 1000, 100, 200, TimeUnit.MILLISECONDS,
+                                                 queueing, m_ticker);
+      m_resolver.m_address = "192.0.2.2";
+      assertEquals(restored.readSnapshot(file, 1, TimeUnit.MINUTES), 1);
+      assertEquals(refreshes.size(), 1);
+      assertEquals(restored.resolve("example.net").get(0).getHostAddress(), "192.0.2.1");
+      assertEquals(m_resolver.m_nLookups, 1);
+
+      refreshes.get(0).run();
+      assertEquals(restored.resolve("example.net").get(0).getHostAddress(), "192.0.2.2");
+      assertEquals(m_resolver.m_nLookups, 2);
+    }
+    finally {
+      Files.deleteIfExists(file);
+      Files.delete(directory);
+    }
+  }
+}